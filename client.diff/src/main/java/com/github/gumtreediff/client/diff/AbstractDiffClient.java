@@ -23,12 +23,19 @@ package com.github.gumtreediff.client.diff;
 import com.github.gumtreediff.client.Option;
 import com.github.gumtreediff.client.Client;
 import com.github.gumtreediff.gen.Generators;
+import com.github.gumtreediff.matchers.CompositeMatchers;
+import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.Matcher;
 import com.github.gumtreediff.matchers.Matchers;
 import com.github.gumtreediff.tree.TreeContext;
+import com.github.gumtreediff.utils.Deadline;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 
 public abstract class AbstractDiffClient<O extends AbstractDiffClient.Options> extends Client {
@@ -40,6 +47,8 @@ public abstract class AbstractDiffClient<O extends AbstractDiffClient.Options> e
 
     public static class Options implements Option.Context {
         public String matcher;
+        public long timeout = -1;
+        public boolean lineAnchors = false;
         public ArrayList<String> generators = new ArrayList<>();
         public String src;
         public String dst;
@@ -53,6 +62,19 @@ public abstract class AbstractDiffClient<O extends AbstractDiffClient.Options> e
                             matcher = args[0];
                         }
                     },
+                    new Option("-t", "Time limit of the matching in milliseconds, degrading it once exceeded.", 1) {
+                        @Override
+                        protected void process(String name, String[] args) {
+                            timeout = Long.parseLong(args[0]);
+                        }
+                    },
+                    new Option("-l", "Anchor the subtrees lying in unchanged lines before the classic matcher. "
+                            + "Cannot be used with -m.", 0) {
+                        @Override
+                        protected void process(String name, String[] args) {
+                            lineAnchors = true;
+                        }
+                    },
                     new Option("-g", "Preferred generator to use (can be used more than once).", 1) {
                         @Override
                         protected void process(String name, String[] args) {
@@ -88,6 +110,10 @@ public abstract class AbstractDiffClient<O extends AbstractDiffClient.Options> e
         opts.src = args[0];
         opts.dst = args[1];
 
+        // The line anchors come with their own matcher
+        if (opts.lineAnchors && opts.matcher != null)
+            throw new Option.OptionException("-l cannot be combined with -m. " + SYNTAX, opts);
+
         if (Option.Verbose.verbose) {
             opts.dump(System.out);
         }
@@ -101,13 +127,32 @@ public abstract class AbstractDiffClient<O extends AbstractDiffClient.Options> e
         Matchers matchers = Matchers.getInstance();
         if (matcher != null)
             return matcher;
-        matcher = (opts.matcher == null)
-                ? matchers.getMatcher(getSrcTreeContext().getRoot(), getDstTreeContext().getRoot())
-                : matchers.getMatcher(opts.matcher, getSrcTreeContext().getRoot(), getDstTreeContext().getRoot());
+        if (opts.lineAnchors)
+            matcher = newLineAnchoredMatcher();
+        else
+            matcher = (opts.matcher == null)
+                    ? matchers.getMatcher(getSrcTreeContext().getRoot(), getDstTreeContext().getRoot())
+                    : matchers.getMatcher(opts.matcher, getSrcTreeContext().getRoot(), getDstTreeContext().getRoot());
+        if (opts.timeout >= 0)
+            matcher.setDeadline(Deadline.after(opts.timeout));
         matcher.match();
+        if (matcher.getDeadline().isCut())
+            System.err.println("Matching cut short: " + matcher.getDeadline().getCutStages());
         return matcher;
     }
 
+    private Matcher newLineAnchoredMatcher() {
+        try {
+            // Same charset as the generators reading the files
+            String srcText = new String(Files.readAllBytes(Paths.get(opts.src)), Charset.defaultCharset());
+            String dstText = new String(Files.readAllBytes(Paths.get(opts.dst)), Charset.defaultCharset());
+            return new CompositeMatchers.LineAnchoredGumtree(getSrcTreeContext().getRoot(),
+                    getDstTreeContext().getRoot(), new MappingStore(), srcText, dstText);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the files to anchor the lines", e);
+        }
+    }
+
     protected TreeContext getSrcTreeContext() {
         if (src == null)
             src = getTreeContext(opts.src);
@@ -0,0 +1,383 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.client.diff;
+
+import com.github.gumtreediff.actions.ActionGenerator;
+import com.github.gumtreediff.actions.DiffStore;
+import com.github.gumtreediff.actions.model.Action;
+import com.github.gumtreediff.client.Client;
+import com.github.gumtreediff.client.Option;
+import com.github.gumtreediff.client.Register;
+import com.github.gumtreediff.gen.Generators;
+import com.github.gumtreediff.gen.TreeGenerator;
+import com.github.gumtreediff.io.ActionsIoUtils;
+import com.github.gumtreediff.io.TreeIoUtils;
+import com.github.gumtreediff.matchers.Matcher;
+import com.github.gumtreediff.matchers.Matchers;
+import com.github.gumtreediff.tree.TreeContext;
+import com.github.gumtreediff.utils.Deadline;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves parse and diff requests from a single JVM, so that the startup, the registries and the JIT are paid
+ * once rather than per diff.
+ *
+ * <p>A request is a JSON object on a line, read from the standard input or from a connection to the local
+ * port given with -p. Its fields are an optional id, echoed in the response, the command (diff, the default,
+ * or parse), the src file, the dst file for a diff, and optionally the generator and matcher ids, a timeout in
+ * milliseconds and preprocess. Each response is a line holding its length in bytes, followed by a JSON
+ * object with the id, the status (ok or error) and either the result, in the JSON format of the jsondiff and
+ * parse clients, or the error message. The requests are processed concurrently, so the responses come in
+ * the order they complete.</p>
+ *
+ * <p>The diffs are stored by the content of their files and their configuration, see {@link DiffStore}, so
+ * that a pair of files already diffed is only parsed again.</p>
+ */
+@Register(name = "server", description = "Serve parse and diff requests from a warm JVM",
+        options = DiffServer.Options.class)
+public class DiffServer extends Client {
+
+    public static final String SYNTAX = "Syntax: server [options]";
+
+    private static final String[][] WARMUP_SAMPLES = {
+            {"Sample_v0.java", "Sample_v1.java"},
+            {"sample_v0.js", "sample_v1.js"}
+    };
+
+    private static final ThreadFactory WORKERS = r -> {
+        Thread t = new Thread(r, "gumtree-server");
+        t.setDaemon(true);
+        return t;
+    };
+
+    private final Options opts;
+
+    private ThreadPoolExecutor pool;
+
+    private DiffStore cache;
+
+    public static class Options implements Option.Context {
+        public int port = -1;
+        public int threads = Runtime.getRuntime().availableProcessors();
+        public int queue = 64;
+        public int warmup = 20;
+        public long cacheSize = 64L << 20;
+        public String journal;
+
+        @Override
+        public Option[] values() {
+            return new Option[] {
+                    new Option("-p", "Listen on this local port instead of the standard input.", 1) {
+                        @Override
+                        protected void process(String name, String[] args) {
+                            port = Integer.parseInt(args[0]);
+                        }
+                    },
+                    new Option("-n", "Number of requests processed at the same time.", 1) {
+                        @Override
+                        protected void process(String name, String[] args) {
+                            threads = Integer.parseInt(args[0]);
+                        }
+                    },
+                    new Option("-q", "Number of requests waiting before reading more requests is blocked.", 1) {
+                        @Override
+                        protected void process(String name, String[] args) {
+                            queue = Integer.parseInt(args[0]);
+                        }
+                    },
+                    new Option("-w", "Number of diffs of each bundled sample run before serving (0 to skip).", 1) {
+                        @Override
+                        protected void process(String name, String[] args) {
+                            warmup = Integer.parseInt(args[0]);
+                        }
+                    },
+                    new Option("-c", "Megabytes of diffs kept in memory (0 to keep none).", 1) {
+                        @Override
+                        protected void process(String name, String[] args) {
+                            cacheSize = Long.parseLong(args[0]) << 20;
+                        }
+                    },
+                    new Option("-j", "File the diffs are appended to, and read back from.", 1) {
+                        @Override
+                        protected void process(String name, String[] args) {
+                            journal = args[0];
+                        }
+                    },
+                    new Option.Help(this) {
+                        @Override
+                        public void process(String name, String[] args) {
+                            System.out.println(SYNTAX);
+                            super.process(name, args);
+                        }
+                    }
+            };
+        }
+    }
+
+    public DiffServer(String[] args) {
+        super(args);
+        opts = new Options();
+        args = Option.processCommandLine(args, opts);
+        if (args.length > 0)
+            throw new Option.OptionException("unexpected arguments. " + SYNTAX, opts);
+    }
+
+    @Override
+    public void run() throws Exception {
+        start();
+        try {
+            if (opts.port < 0) {
+                // Nothing but the responses must be written on the standard output
+                PrintStream out = System.out;
+                System.setOut(System.err);
+                warmUp();
+                serve(System.in, out);
+            } else {
+                warmUp();
+                listen();
+            }
+        } finally {
+            stop();
+        }
+    }
+
+    /**
+     * Creates the workers and the store of the diffs.
+     */
+    void start() throws IOException {
+        // The requests in excess of the queue are run by the reading thread, which stops reading meanwhile
+        pool = new ThreadPoolExecutor(opts.threads, opts.threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(opts.queue), WORKERS, new ThreadPoolExecutor.CallerRunsPolicy());
+        if (opts.journal != null)
+            cache = new DiffStore(opts.cacheSize, new File(opts.journal));
+        else if (opts.cacheSize > 0)
+            cache = new DiffStore(opts.cacheSize);
+    }
+
+    void stop() throws IOException {
+        pool.shutdown();
+        if (cache != null) {
+            if (Option.Verbose.verbose)
+                System.err.printf("Cache: %d hits, %d misses\n", cache.getHits(), cache.getMisses());
+            cache.close();
+        }
+    }
+
+    DiffStore getCache() {
+        return cache;
+    }
+
+    private void listen() throws IOException {
+        try (ServerSocket server = new ServerSocket(opts.port, 50, InetAddress.getLoopbackAddress())) {
+            System.err.printf("Listening on port %d\n", server.getLocalPort());
+            while (true) {
+                Socket socket = server.accept();
+                Thread t = new Thread(() -> {
+                    try (Socket s = socket) {
+                        serve(s.getInputStream(), s.getOutputStream());
+                    } catch (IOException e) {
+                        System.err.printf("** Connection closed: %s\n", e);
+                    }
+                }, "gumtree-server-connection");
+                t.setDaemon(true);
+                t.start();
+            }
+        }
+    }
+
+    /**
+     * Diffs the bundled samples whose generator is available, so that the first requests do not run cold.
+     */
+    private void warmUp() {
+        long start = System.currentTimeMillis();
+        int diffs = 0;
+        for (String[] sample : WARMUP_SAMPLES) {
+            TreeGenerator generator = Generators.getInstance().get(sample[0]);
+            if (generator == null)
+                continue;
+            try {
+                for (int i = 0; i < opts.warmup; i++) {
+                    TreeContext src = generator.generateFromStream(sample(sample[0]), false);
+                    TreeContext dst = generator.generateFromStream(sample(sample[1]), false);
+                    diff(src, dst, Matchers.getInstance().getMatcher(src.getRoot(), dst.getRoot()), -1);
+                    diffs++;
+                }
+            } catch (Exception e) {
+                System.err.printf("** Warm-up failed on %s: %s\n", sample[0], e);
+            }
+        }
+        if (Option.Verbose.verbose)
+            System.err.printf("Warm-up: %d diffs in %d ms\n", diffs, System.currentTimeMillis() - start);
+    }
+
+    private static InputStream sample(String name) throws IOException {
+        InputStream in = DiffServer.class.getResourceAsStream("/warmup/" + name);
+        if (in == null)
+            throw new IOException("Missing sample: " + name);
+        return in;
+    }
+
+    /**
+     * Reads the requests until the end of the input, then waits for their responses.
+     */
+    void serve(InputStream in, OutputStream out) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        Phaser pending = new Phaser(1);
+        String line;
+        try {
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty())
+                    continue;
+                final String request = line;
+                pending.register();
+                pool.execute(() -> {
+                    try {
+                        respond(out, handle(request));
+                    } catch (IOException e) {
+                        System.err.printf("** Could not respond: %s\n", e);
+                    } finally {
+                        pending.arriveAndDeregister();
+                    }
+                });
+            }
+        } finally {
+            pending.arriveAndAwaitAdvance();
+        }
+    }
+
+    private static void respond(OutputStream out, String response) throws IOException {
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        byte[] header = (bytes.length + "\n").getBytes(StandardCharsets.UTF_8);
+        synchronized (out) {
+            out.write(header);
+            out.write(bytes);
+            out.flush();
+        }
+    }
+
+    private String handle(String line) {
+        JsonElement id = null;
+        try {
+            JsonObject request = new JsonParser().parse(line).getAsJsonObject();
+            id = request.get("id");
+            String command = string(request, "command", "diff");
+            boolean preProcess = request.has("preprocess") && request.get("preprocess").getAsBoolean();
+            String src = string(request, "src", null);
+            if (src == null)
+                throw new IllegalArgumentException("Missing src");
+            TreeGenerator generator = getGenerator(string(request, "generator", null), src);
+            String result;
+            if (command.equals("parse"))
+                result = TreeIoUtils.toJson(generator.generateFromFile(src, preProcess)).toString();
+            else if (command.equals("diff"))
+                result = diff(generator, src, string(request, "dst", null), preProcess,
+                        string(request, "matcher", null),
+                        request.has("timeout") ? request.get("timeout").getAsLong() : -1);
+            else
+                throw new IllegalArgumentException("Unknown command: " + command);
+            return String.format("{\"id\": %s, \"status\": \"ok\", \"result\": %s}", id, result);
+        } catch (Exception | StackOverflowError e) {
+            return String.format("{\"id\": %s, \"status\": \"error\", \"message\": %s}",
+                    id, new JsonPrimitive(String.valueOf(e)));
+        }
+    }
+
+    private static String string(JsonObject request, String key, String missing) {
+        JsonElement value = request.get(key);
+        return value == null || value.isJsonNull() ? missing : value.getAsString();
+    }
+
+    private static TreeGenerator getGenerator(String id, String file) {
+        if (id == null) {
+            TreeGenerator generator = Generators.getInstance().get(file);
+            if (generator == null)
+                throw new UnsupportedOperationException("No generator found for file: " + file);
+            return generator;
+        }
+        for (Generators.Entry e : Generators.getInstance().getEntries())
+            if (e.id.equals(id))
+                return e.instantiate(null);
+        throw new UnsupportedOperationException("No generator \"" + id + "\" found.");
+    }
+
+    private String diff(TreeGenerator generator, String srcFile, String dstFile, boolean preProcess,
+                        String matcherId, long timeout) throws IOException {
+        if (dstFile == null)
+            throw new IllegalArgumentException("Missing dst");
+        TreeContext src = generator.generateFromFile(srcFile, preProcess);
+        TreeContext dst = generator.generateFromFile(dstFile, preProcess);
+        Matcher m = matcherId == null
+                ? Matchers.getInstance().getMatcher(src.getRoot(), dst.getRoot())
+                : Matchers.getInstance().getMatcher(matcherId, src.getRoot(), dst.getRoot());
+        if (m == null)
+            throw new IllegalArgumentException("Unknown matcher: " + matcherId);
+        if (cache == null)
+            return diff(src, dst, m, timeout);
+
+        DiffStore.Key key = DiffStore.key(Files.readAllBytes(new File(srcFile).toPath()),
+                Files.readAllBytes(new File(dstFile).toPath()),
+                generator.getClass().getName() + (preProcess ? "+preprocess" : ""), m.getClass().getName());
+        DiffStore.Result cached = cache.get(key, src.getRoot(), dst.getRoot());
+        if (cached != null)
+            return ActionsIoUtils.toJson(src, cached.getActions(), cached.getMappings()).toString();
+        List<Action> actions = match(src, dst, m, timeout);
+        // A diff cut short by the deadline is not the diff the next request would get
+        if (!m.getDeadline().isCut())
+            cache.put(key, src.getRoot(), dst.getRoot(), m.getMappings(), actions);
+        return ActionsIoUtils.toJson(src, actions, m.getMappings()).toString();
+    }
+
+    private static String diff(TreeContext src, TreeContext dst, Matcher m, long timeout) throws IOException {
+        List<Action> actions = match(src, dst, m, timeout);
+        return ActionsIoUtils.toJson(src, actions, m.getMappings()).toString();
+    }
+
+    private static List<Action> match(TreeContext src, TreeContext dst, Matcher m, long timeout) {
+        if (timeout >= 0)
+            m.setDeadline(Deadline.after(timeout));
+        m.match();
+        ActionGenerator g = new ActionGenerator(src.getRoot(), dst.getRoot(), m.getMappings());
+        g.generate();
+        return g.getActions();
+    }
+}
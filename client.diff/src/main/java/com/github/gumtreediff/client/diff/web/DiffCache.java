@@ -0,0 +1,218 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.client.diff.web;
+
+import com.github.gumtreediff.actions.ActionGenerator;
+import com.github.gumtreediff.gen.Generators;
+import com.github.gumtreediff.io.ActionsIoUtils;
+import com.github.gumtreediff.matchers.Matcher;
+import com.github.gumtreediff.matchers.Matchers;
+import com.github.gumtreediff.tree.TreeContext;
+import com.github.gumtreediff.utils.Pair;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cache of the diffs of the modified files, so that the pages of a pair are computed once. The trees,
+ * mappings and actions of a pair are only kept in their rendered form, i.e. the spans of the texts and the
+ * edit script, which is what the pages need and is much smaller. The cache is bounded by an estimate of
+ * the memory taken by the rendered results, the least recently used ones being evicted first. The pairs
+ * can be precomputed in background.
+ */
+public class DiffCache {
+
+    public static long MAX_MEMORY = Long.parseLong(System.getProperty("gt.wd.cache", "256")) * 1024 * 1024;
+
+    public static int THREADS = Integer.parseInt(System.getProperty("gt.wd.threads",
+            Integer.toString(Math.max(1, Runtime.getRuntime().availableProcessors() - 1))));
+
+    private final List<Pair<File, File>> pairs;
+
+    private final Map<Integer, Result> results = new LinkedHashMap<>(16, 0.75F, true);
+
+    private final Map<Integer, FutureTask<Result>> pending = new ConcurrentHashMap<>();
+
+    private long memory;
+
+    private final AtomicInteger precomputed = new AtomicInteger();
+
+    private final AtomicInteger failed = new AtomicInteger();
+
+    private ExecutorService pool;
+
+    public DiffCache(List<Pair<File, File>> pairs) {
+        this.pairs = pairs;
+    }
+
+    /**
+     * Returns the result of the given pair, computing it in the calling thread if it is neither cached nor
+     * being computed.
+     */
+    public Result get(int id) throws IOException {
+        synchronized (results) {
+            Result result = results.get(id);
+            if (result != null)
+                return result;
+        }
+        FutureTask<Result> task = new FutureTask<>(() -> compute(id));
+        FutureTask<Result> running = pending.putIfAbsent(id, task);
+        if (running == null) {
+            running = task;
+            task.run();
+        }
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns the result of the given pair if it is cached, null otherwise.
+     */
+    public Result getIfPresent(int id) {
+        synchronized (results) {
+            return results.get(id);
+        }
+    }
+
+    /**
+     * Computes all the pairs in background, on {@link #THREADS} daemon threads.
+     */
+    public synchronized void precompute() {
+        if (pool != null)
+            return;
+        pool = Executors.newFixedThreadPool(THREADS, r -> {
+            Thread t = new Thread(r, "gumtree-diff-precompute");
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < pairs.size(); i++) {
+            final int id = i;
+            pool.submit(() -> {
+                try {
+                    get(id);
+                } catch (IOException | RuntimeException e) {
+                    failed.incrementAndGet();
+                } finally {
+                    precomputed.incrementAndGet();
+                }
+            });
+        }
+        pool.shutdown();
+    }
+
+    public boolean isPrecomputing() {
+        return pool != null && !pool.isTerminated();
+    }
+
+    /**
+     * Returns the number of pairs processed by the precomputation, including the failed ones.
+     */
+    public int getPrecomputed() {
+        return precomputed.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public int size() {
+        return pairs.size();
+    }
+
+    private Result compute(int id) throws IOException {
+        try {
+            Pair<File, File> pair = pairs.get(id);
+            Result result = new Result(pair.getFirst(), pair.getSecond());
+            synchronized (results) {
+                results.put(id, result);
+                memory += result.memory();
+                Iterator<Result> it = results.values().iterator();
+                while (memory > MAX_MEMORY && results.size() > 1) {
+                    memory -= it.next().memory();
+                    it.remove();
+                }
+            }
+            return result;
+        } finally {
+            pending.remove(id);
+        }
+    }
+
+    public static class Result {
+
+        private final HtmlDiffs diffs;
+
+        private final String script;
+
+        private Result(File fSrc, File fDst) throws IOException {
+            TreeContext src = Generators.getInstance().getTree(fSrc.getAbsolutePath(), false);
+            TreeContext dst = Generators.getInstance().getTree(fDst.getAbsolutePath(), false);
+            Matcher matcher = Matchers.getInstance().getMatcher(src.getRoot(), dst.getRoot());
+            matcher.match();
+            diffs = new HtmlDiffs(fSrc, fDst, src, dst, matcher);
+            diffs.produce();
+            ActionGenerator g = new ActionGenerator(src.getRoot(), dst.getRoot(), matcher.getMappings());
+            g.generate();
+            script = ActionsIoUtils.toText(src, g.getActions(), matcher.getMappings()).toString();
+        }
+
+        private long memory() {
+            return diffs.memory() + 2L * script.length();
+        }
+
+        public String getSrcText() {
+            return diffs.getSrcText();
+        }
+
+        public String getDstText() {
+            return diffs.getDstText();
+        }
+
+        /**
+         * Returns the diffs, kept as the texts and their spans, written on demand.
+         */
+        public HtmlDiffs getDiffs() {
+            return diffs;
+        }
+
+        public String getScript() {
+            return script;
+        }
+    }
+}
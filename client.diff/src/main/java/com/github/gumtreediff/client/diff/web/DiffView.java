@@ -20,10 +20,6 @@
 
 package com.github.gumtreediff.client.diff.web;
 
-import com.github.gumtreediff.gen.Generators;
-import com.github.gumtreediff.matchers.Matcher;
-import com.github.gumtreediff.matchers.Matchers;
-import com.github.gumtreediff.tree.TreeContext;
 import org.rendersnake.DocType;
 import org.rendersnake.HtmlCanvas;
 import org.rendersnake.Renderable;
@@ -36,21 +32,16 @@ import static org.rendersnake.HtmlAttributesFactory.lang;
 
 public class DiffView implements Renderable {
 
-    private HtmlDiffs diffs;
+    private DiffCache.Result diff;
 
     private File fSrc;
 
     private File fDst;
 
-    public DiffView(File fSrc, File fDst) throws IOException {
+    public DiffView(File fSrc, File fDst, DiffCache.Result diff) {
         this.fSrc = fSrc;
         this.fDst = fDst;
-        TreeContext src = Generators.getInstance().getTree(fSrc.getAbsolutePath());
-        TreeContext dst = Generators.getInstance().getTree(fDst.getAbsolutePath());
-        Matcher matcher = Matchers.getInstance().getMatcher(src.getRoot(), dst.getRoot());
-        matcher.match();
-        diffs = new HtmlDiffs(fSrc, fDst, src, dst, matcher);
-        diffs.produce();
+        this.diff = diff;
     }
 
     @Override
@@ -67,11 +58,11 @@ public class DiffView implements Renderable {
                     .div(class_("row"))
                         .div(class_("col-lg-6 max-height"))
                             .h5().content(fSrc.getName())
-                            .pre(class_("pre max-height")).content(diffs.getSrcDiff(), false)
+                            .pre(class_("pre max-height")).render(h -> diff.getDiffs().writeSrcDiff(h.getOutputWriter()))._pre()
                         ._div()
                         .div(class_("col-lg-6 max-height"))
                             .h5().content(fDst.getName())
-                            .pre(class_("pre max-height")).content(diffs.getDstDiff(), false)
+                            .pre(class_("pre max-height")).render(h -> diff.getDiffs().writeDstDiff(h.getOutputWriter()))._pre()
                         ._div()
                     ._div()
                 ._div()
@@ -38,8 +38,15 @@ public class DirectoryComparatorView implements Renderable {
 
     private DirectoryComparator comparator;
 
+    private DiffCache cache;
+
     public DirectoryComparatorView(DirectoryComparator comparator) throws IOException {
+        this(comparator, null);
+    }
+
+    public DirectoryComparatorView(DirectoryComparator comparator, DiffCache cache) throws IOException {
         this.comparator = comparator;
+        this.cache = cache;
     }
 
     @Override
@@ -60,6 +67,7 @@ public class DirectoryComparatorView implements Renderable {
                                     ._h4()
                                 ._div()
                                 .div(class_("panel-body"))
+                                    .render_if(new Progress(), cache != null && cache.isPrecomputing())
                                     .render_if(new ModifiedFiles(comparator.getModifiedFiles()), comparator.getModifiedFiles().size() > 0)
                                 ._div()
                             ._div()
@@ -104,6 +112,20 @@ public class DirectoryComparatorView implements Renderable {
         ._html();
     }
 
+    private class Progress implements Renderable {
+
+        @Override
+        public void renderOn(HtmlCanvas html) throws IOException {
+            int done = cache.getPrecomputed();
+            int percent = cache.size() == 0 ? 100 : 100 * done / cache.size();
+            html
+            .div(class_("progress"))
+                .div(class_("progress-bar").role("progressbar").style("width: " + percent + "%"))
+                    .content(String.format("%d / %d diffs computed", done, cache.size()))
+            ._div();
+        }
+    }
+
     private class ModifiedFiles implements Renderable {
 
         private List<Pair<File, File>> files;
@@ -31,20 +31,19 @@ import gnu.trove.map.TIntIntMap;
 import gnu.trove.map.hash.TIntIntHashMap;
 
 import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.List;
 
 public final class HtmlDiffs {
 
-    private static final String SRC_MV_SPAN = "<span class=\"%s\" id=\"move-src-%d\" data-title=\"%s\">";
-    private static final String DST_MV_SPAN = "<span class=\"%s\" id=\"move-dst-%d\" data-title=\"%s\">";
-    private static final String ADD_DEL_SPAN = "<span class=\"%s\" data-title=\"%s\">";
-    private static final String UPD_SPAN = "<span class=\"cupd\">";
-    private static final String ID_SPAN = "<span class=\"marker\" id=\"mapping-%d\"></span>";
-    private static final String END_SPAN = "</span>";
+    private TagIndex srcTags;
 
-    private String srcDiff;
+    private TagIndex dstTags;
 
-    private String dstDiff;
+    private String srcText;
+
+    private String dstText;
 
     private TreeContext src;
 
@@ -67,6 +66,10 @@ public final class HtmlDiffs {
         this.mappings = matcher.getMappings();
     }
 
+    /**
+     * Computes the spans of both files. Once done, the trees and the matcher are no longer referenced, only
+     * the texts and the spans are kept to write the diffs.
+     */
     public void produce() throws IOException {
         TreeClassifier c = new RootAndLeavesClassifier(src, dst, matcher);
         TIntIntMap mappingIds = new TIntIntHashMap();
@@ -78,24 +81,21 @@ public final class HtmlDiffs {
         for (ITree t: src.getRoot().getTrees()) {
             if (c.getSrcMvTrees().contains(t)) {
                 mappingIds.put(mappings.getDst(t).getId(), mId);
-                ltags.addStartTag(t.getPos(), String.format(ID_SPAN, uId++));
-                ltags.addTags(t.getPos(), String.format(
-                                SRC_MV_SPAN, "token mv", mId++, tooltip(src, t)), t.getEndPos(), END_SPAN);
+                ltags.addMarker(t.getPos(), uId++);
+                ltags.addTags(t.getPos(), TagIndex.SRC_MV, mId++, "token mv", tooltip(src, t), t.getEndPos());
             }
             if (c.getSrcUpdTrees().contains(t)) {
                 mappingIds.put(mappings.getDst(t).getId(), mId);
-                ltags.addStartTag(t.getPos(), String.format(ID_SPAN, uId++));
-                ltags.addTags(t.getPos(), String.format(
-                                SRC_MV_SPAN, "token upd", mId++, tooltip(src, t)), t.getEndPos(), END_SPAN);
+                ltags.addMarker(t.getPos(), uId++);
+                ltags.addTags(t.getPos(), TagIndex.SRC_MV, mId++, "token upd", tooltip(src, t), t.getEndPos());
                 List<int[]> hunks = StringAlgorithms.hunks(t.getLabel(), mappings.getDst(t).getLabel());
                 for (int[] hunk: hunks)
-                    ltags.addTags(t.getPos() + hunk[0], UPD_SPAN, t.getPos() + hunk[1], END_SPAN);
+                    ltags.addTags(t.getPos() + hunk[0], TagIndex.UPD, 0, null, null, t.getPos() + hunk[1]);
 
             }
             if (c.getSrcDelTrees().contains(t)) {
-                ltags.addStartTag(t.getPos(), String.format(ID_SPAN, uId++));
-                ltags.addTags(t.getPos(), String.format(
-                                ADD_DEL_SPAN, "token del", tooltip(src, t)), t.getEndPos(), END_SPAN);
+                ltags.addMarker(t.getPos(), uId++);
+                ltags.addTags(t.getPos(), TagIndex.ADD_DEL, 0, "token del", tooltip(src, t), t.getEndPos());
             }
         }
 
@@ -103,64 +103,68 @@ public final class HtmlDiffs {
         for (ITree t: dst.getRoot().getTrees()) {
             if (c.getDstMvTrees().contains(t)) {
                 int dId = mappingIds.get(t.getId());
-                rtags.addStartTag(t.getPos(), String.format(ID_SPAN, uId++));
-                rtags.addTags(t.getPos(), String.format(
-                                DST_MV_SPAN, "token mv", dId, tooltip(dst, t)), t.getEndPos(), END_SPAN);
+                rtags.addMarker(t.getPos(), uId++);
+                rtags.addTags(t.getPos(), TagIndex.DST_MV, dId, "token mv", tooltip(dst, t), t.getEndPos());
             }
             if (c.getDstUpdTrees().contains(t)) {
                 int dId = mappingIds.get(t.getId());
-                rtags.addStartTag(t.getPos(), String.format(ID_SPAN, uId++));
-                rtags.addTags(t.getPos(), String.format(
-                                DST_MV_SPAN, "token upd", dId, tooltip(dst, t)), t.getEndPos(), END_SPAN);
+                rtags.addMarker(t.getPos(), uId++);
+                rtags.addTags(t.getPos(), TagIndex.DST_MV, dId, "token upd", tooltip(dst, t), t.getEndPos());
                 List<int[]> hunks = StringAlgorithms.hunks(mappings.getSrc(t).getLabel(), t.getLabel());
                 for (int[] hunk: hunks)
-                    rtags.addTags(t.getPos() + hunk[2], UPD_SPAN, t.getPos() + hunk[3], END_SPAN);
+                    rtags.addTags(t.getPos() + hunk[2], TagIndex.UPD, 0, null, null, t.getPos() + hunk[3]);
             }
             if (c.getDstAddTrees().contains(t)) {
-                rtags.addStartTag(t.getPos(), String.format(ID_SPAN, uId++));
-                rtags.addTags(t.getPos(), String.format(
-                                ADD_DEL_SPAN, "token add", tooltip(dst, t)), t.getEndPos(), END_SPAN);
+                rtags.addMarker(t.getPos(), uId++);
+                rtags.addTags(t.getPos(), TagIndex.ADD_DEL, 0, "token add", tooltip(dst, t), t.getEndPos());
             }
         }
 
-        StringWriter w1 = new StringWriter();
-        BufferedReader r = new BufferedReader(new FileReader(fSrc));
-        int cursor = 0;
+        ltags.freeze();
+        rtags.freeze();
+        srcTags = ltags;
+        dstTags = rtags;
+        srcText = readFile(fSrc);
+        dstText = readFile(fDst);
+        src = null;
+        dst = null;
+        matcher = null;
+        mappings = null;
+    }
 
-        while (r.ready()) {
-            char cr = (char) r.read();
-            w1.append(ltags.getEndTags(cursor));
-            w1.append(ltags.getStartTags(cursor));
-            append(cr, w1);
-            cursor++;
-        }
-        w1.append(ltags.getEndTags(cursor));
-        r.close();
-        srcDiff = w1.toString();
-
-        StringWriter w2 = new StringWriter();
-        r = new BufferedReader(new FileReader(fDst));
-        cursor = 0;
-
-        while (r.ready()) {
-            char cr = (char) r.read();
-            w2.append(rtags.getEndTags(cursor));
-            w2.append(rtags.getStartTags(cursor));
-            append(cr, w2);
-            cursor++;
-        }
-        w2.append(rtags.getEndTags(cursor));
-        r.close();
+    public void writeSrcDiff(Writer w) throws IOException {
+        srcTags.write(srcText, w);
+    }
+
+    public void writeDstDiff(Writer w) throws IOException {
+        dstTags.write(dstText, w);
+    }
+
+    public String getSrcDiff() throws IOException {
+        StringWriter w = new StringWriter();
+        writeSrcDiff(w);
+        return w.toString();
+    }
+
+    public String getDstDiff() throws IOException {
+        StringWriter w = new StringWriter();
+        writeDstDiff(w);
+        return w.toString();
+    }
 
-        dstDiff = w2.toString();
+    public String getSrcText() {
+        return srcText;
     }
 
-    public String getSrcDiff() {
-        return srcDiff;
+    public String getDstText() {
+        return dstText;
     }
 
-    public String getDstDiff() {
-        return dstDiff;
+    /**
+     * Returns an estimate of the memory taken by the texts and the spans, in bytes.
+     */
+    public long memory() {
+        return 2L * (srcText.length() + dstText.length()) + srcTags.memory() + dstTags.memory();
     }
 
     private static String tooltip(TreeContext ctx, ITree t) {
@@ -168,10 +172,8 @@ public final class HtmlDiffs {
                 ? ctx.getTypeLabel(t.getParent()) + "/" + ctx.getTypeLabel(t) : ctx.getTypeLabel(t);
     }
 
-    private static void append(char cr, Writer w) throws IOException {
-        if (cr == '<') w.append("&lt;");
-        else if (cr == '>') w.append("&gt;");
-        else if (cr == '&') w.append("&amp;");
-        else w.append(cr);
+    private static String readFile(File file) throws IOException {
+        // Same charset as the generators, so that the positions match
+        return new String(Files.readAllBytes(file.toPath()), Charset.defaultCharset());
     }
 }
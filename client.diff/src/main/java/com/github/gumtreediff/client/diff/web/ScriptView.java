@@ -20,50 +20,28 @@
 
 package com.github.gumtreediff.client.diff.web;
 
-import com.github.gumtreediff.actions.ActionGenerator;
-import com.github.gumtreediff.actions.model.Action;
-import com.github.gumtreediff.gen.Generators;
-import com.github.gumtreediff.io.ActionsIoUtils;
-import com.github.gumtreediff.matchers.MappingStore;
-import com.github.gumtreediff.matchers.Matcher;
-import com.github.gumtreediff.matchers.Matchers;
-import com.github.gumtreediff.tree.TreeContext;
 import org.rendersnake.DocType;
 import org.rendersnake.HtmlCanvas;
 import org.rendersnake.Renderable;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.List;
 
 import static org.rendersnake.HtmlAttributesFactory.class_;
 import static org.rendersnake.HtmlAttributesFactory.lang;
 
 public class ScriptView implements Renderable {
 
-    private final MappingStore mappings;
-
-    private final TreeContext src;
-
-    private final TreeContext dst;
-
     private File fSrc;
 
     private File fDst;
 
-    private List<Action> script;
+    private DiffCache.Result diff;
 
-    public ScriptView(File fSrc, File fDst) throws IOException {
+    public ScriptView(File fSrc, File fDst, DiffCache.Result diff) {
         this.fSrc = fSrc;
         this.fDst = fDst;
-        src = Generators.getInstance().getTree(fSrc.getAbsolutePath());
-        dst = Generators.getInstance().getTree(fDst.getAbsolutePath());
-        Matcher matcher = Matchers.getInstance().getMatcher(src.getRoot(), dst.getRoot());
-        matcher.match();
-        mappings = matcher.getMappings();
-        ActionGenerator g = new ActionGenerator(src.getRoot(), dst.getRoot(), mappings);
-        g.generate();
-        this.script = g.getActions();
+        this.diff = diff;
     }
 
     @Override
@@ -80,7 +58,7 @@ public class ScriptView implements Renderable {
                                     .write("Script ")
                                     .small().content(String.format("%s -> %s", fSrc.getName(), fDst.getName()))
                                 ._h3()
-                                .pre().content(ActionsIoUtils.toText(src, this.script, mappings).toString())
+                                .pre().content(diff.getScript())
                             ._div()
                         ._div()
                     ._div()
@@ -20,51 +20,205 @@
 
 package com.github.gumtreediff.client.diff.web;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * The spans to insert in a text, stored in primitive arrays sorted by offset, so that the text can be
+ * written in one pass with its spans, without formatting the tags beforehand. The index is sorted once all
+ * the spans are added, by {@link #freeze()}, after which it is only read and can be written concurrently.
+ */
 public class TagIndex {
 
-    private Map<Integer, List<String>> startTags;
+    /** Empty span marking a position of the text, numbered. */
+    public static final int MARKER = 0;
+
+    /** Span of a moved or updated source node, numbered to be linked with its destination. */
+    public static final int SRC_MV = 1;
+
+    /** Span of a moved or updated destination node, numbered as its source. */
+    public static final int DST_MV = 2;
+
+    /** Span of an added or deleted node. */
+    public static final int ADD_DEL = 3;
+
+    /** Span of an updated part of a label. */
+    public static final int UPD = 4;
+
+    private static final String END_SPAN = "</span>";
+
+    private long[] starts = new long[16];
+
+    private int[] kinds = new int[16];
+
+    private int[] numbers = new int[16];
+
+    private int[] classes = new int[16];
+
+    private int[] tooltips = new int[16];
+
+    private int size;
+
+    private int[] ends = new int[16];
 
-    private Map<Integer, List<String>> endTags;
+    private int endSize;
 
-    public TagIndex() {
-        startTags = new HashMap<Integer, List<String>>();
-        endTags = new HashMap<Integer, List<String>>();
+    private boolean frozen;
+
+    private final List<String> strings = new ArrayList<>();
+
+    private final Map<String, Integer> stringIds = new HashMap<>();
+
+    public void addMarker(int pos, int number) {
+        addStartTag(pos, MARKER, number, null, null);
+    }
+
+    public void addTags(int pos, int kind, int number, String cssClass, String tooltip, int endPos) {
+        addStartTag(pos, kind, number, cssClass, tooltip);
+        addEndTag(endPos);
+    }
+
+    private void addStartTag(int pos, int kind, int number, String cssClass, String tooltip) {
+        checkNotFrozen();
+        if (size == starts.length) {
+            int capacity = size * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+            classes = Arrays.copyOf(classes, capacity);
+            tooltips = Arrays.copyOf(tooltips, capacity);
+        }
+        // The tags at a same offset keep their insertion order
+        starts[size] = ((long) pos << 32) | size;
+        kinds[size] = kind;
+        numbers[size] = number;
+        classes[size] = stringId(cssClass);
+        tooltips[size] = stringId(tooltip);
+        size++;
+    }
+
+    private void addEndTag(int pos) {
+        if (endSize == ends.length)
+            ends = Arrays.copyOf(ends, endSize * 2);
+        ends[endSize++] = pos;
     }
 
-    public void addTags(int pos, String startTag, int endPos, String endTag) {
-        addStartTag(pos, startTag);
-        addEndTag(endPos, endTag);
+    private void checkNotFrozen() {
+        if (frozen)
+            throw new IllegalStateException("No span can be added once the index is frozen");
     }
 
-    public void addStartTag(int pos, String tag) {
-        if (!startTags.containsKey(pos)) startTags.put(pos, new ArrayList<String>());
-        startTags.get(pos).add(tag);
+    /**
+     * Sorts the spans. No span can be added afterwards.
+     */
+    public void freeze() {
+        if (frozen)
+            return;
+        Arrays.sort(starts, 0, size);
+        Arrays.sort(ends, 0, endSize);
+        frozen = true;
     }
 
-    public void addEndTag(int pos, String tag) {
-        if (!endTags.containsKey(pos)) endTags.put(pos, new ArrayList<String>());
-        endTags.get(pos).add(tag);
+    private int stringId(String s) {
+        if (s == null)
+            return -1;
+        Integer id = stringIds.get(s);
+        if (id == null) {
+            id = strings.size();
+            strings.add(s);
+            stringIds.put(s, id);
+        }
+        return id;
     }
 
-    public String getEndTags(int pos) {
-        if (!endTags.containsKey(pos)) return "";
-        StringBuffer b = new StringBuffer();
-        for (String s: endTags.get(pos)) b.append(s);
-        return b.toString();
+    /**
+     * Writes the text, escaped, with its spans. As for the tags added, positions are offsets in the text. The
+     * index must be frozen.
+     */
+    public void write(String text, Writer w) throws IOException {
+        if (!frozen)
+            throw new IllegalStateException("The index must be frozen before being written");
+        int s = 0;
+        int e = 0;
+        while (s < size && (starts[s] >> 32) < 0)
+            s++;
+        while (e < endSize && ends[e] < 0)
+            e++;
+        int cursor = 0;
+        while (true) {
+            for (; e < endSize && ends[e] == cursor; e++)
+                w.write(END_SPAN);
+            if (cursor >= text.length())
+                break;
+            for (; s < size && (starts[s] >> 32) == cursor; s++)
+                writeStartTag((int) starts[s], w);
+            int next = text.length();
+            if (s < size)
+                next = (int) Math.min(next, starts[s] >> 32);
+            if (e < endSize)
+                next = Math.min(next, ends[e]);
+            writeEscaped(text, cursor, next, w);
+            cursor = next;
+        }
     }
 
-    public String getStartTags(int pos) {
-        if (!startTags.containsKey(pos))
-            return "";
-        StringBuffer b = new StringBuffer();
-        for (String s: startTags.get(pos))
-            b.append(s);
-        return b.toString();
+    /**
+     * Returns an estimate of the memory taken by the index, in bytes.
+     */
+    public long memory() {
+        long memory = 28L * starts.length + 4L * ends.length;
+        for (String s : strings)
+            memory += 2L * s.length();
+        return memory;
     }
 
+    private void writeStartTag(int i, Writer w) throws IOException {
+        switch (kinds[i]) {
+            case MARKER:
+                w.write("<span class=\"marker\" id=\"mapping-");
+                w.write(Integer.toString(numbers[i]));
+                w.write("\"></span>");
+                break;
+            case SRC_MV:
+            case DST_MV:
+                w.write("<span class=\"");
+                w.write(strings.get(classes[i]));
+                w.write(kinds[i] == SRC_MV ? "\" id=\"move-src-" : "\" id=\"move-dst-");
+                w.write(Integer.toString(numbers[i]));
+                w.write("\" data-title=\"");
+                w.write(strings.get(tooltips[i]));
+                w.write("\">");
+                break;
+            case ADD_DEL:
+                w.write("<span class=\"");
+                w.write(strings.get(classes[i]));
+                w.write("\" data-title=\"");
+                w.write(strings.get(tooltips[i]));
+                w.write("\">");
+                break;
+            default:
+                w.write("<span class=\"cupd\">");
+        }
+    }
+
+    private static void writeEscaped(String text, int from, int to, Writer w) throws IOException {
+        int run = from;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            String entity;
+            if (c == '<') entity = "&lt;";
+            else if (c == '>') entity = "&gt;";
+            else if (c == '&') entity = "&amp;";
+            else continue;
+            w.write(text, run, i - run);
+            w.write(entity);
+            run = i + 1;
+        }
+        w.write(text, run, to - run);
+    }
 }
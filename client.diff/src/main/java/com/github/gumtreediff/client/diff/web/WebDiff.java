@@ -28,19 +28,30 @@ import com.github.gumtreediff.io.DirectoryComparator;
 import com.github.gumtreediff.utils.Pair;
 import org.rendersnake.HtmlCanvas;
 import org.rendersnake.Renderable;
+import spark.Request;
+import spark.Response;
 import spark.Spark;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.zip.GZIPOutputStream;
 
 import static spark.Spark.*;
 
 @Register(description = "a web diff client", options = WebDiff.Options.class, priority = Registry.Priority.HIGH)
 public class WebDiff extends AbstractDiffClient<WebDiff.Options> {
 
+    private static final int STREAM_BUFFER_SIZE = 16 * 1024;
+
     public WebDiff(String[] args) {
         super(args);
     }
@@ -81,12 +92,19 @@ public class WebDiff extends AbstractDiffClient<WebDiff.Options> {
     public void run() {
         DirectoryComparator comparator = new DirectoryComparator(opts.src, opts.dst);
         comparator.compare();
-        configureSpark(comparator, opts.defaultPort);
+        DiffCache cache = new DiffCache(comparator.getModifiedFiles());
+        if (comparator.isDirMode())
+            cache.precompute();
+        configureSpark(comparator, cache, opts.defaultPort);
         Spark.awaitInitialization();
         System.out.println(String.format("Starting server: %s:%d", "http://127.0.0.1", opts.defaultPort));
     }
 
     public static void configureSpark(final DirectoryComparator comparator, int port) {
+        configureSpark(comparator, new DiffCache(comparator.getModifiedFiles()), port);
+    }
+
+    public static void configureSpark(final DirectoryComparator comparator, final DiffCache cache, int port) {
         port(port);
         staticFiles.location("/web/");
         get("/", (request, response) -> {
@@ -97,14 +115,14 @@ public class WebDiff extends AbstractDiffClient<WebDiff.Options> {
             return "";
         });
         get("/list", (request, response) -> {
-            Renderable view = new DirectoryComparatorView(comparator);
+            Renderable view = new DirectoryComparatorView(comparator, cache);
             return render(view);
         });
         get("/diff/:id", (request, response) -> {
             int id = Integer.parseInt(request.params(":id"));
             Pair<File, File> pair = comparator.getModifiedFiles().get(id);
-            Renderable view = new DiffView(pair.getFirst(), pair.getSecond());
-            return render(view);
+            Renderable view = new DiffView(pair.getFirst(), pair.getSecond(), cache.get(id));
+            return stream(request, response, view);
         });
         get("/mergely/:id", (request, response) -> {
             int id = Integer.parseInt(request.params(":id"));
@@ -113,18 +131,24 @@ public class WebDiff extends AbstractDiffClient<WebDiff.Options> {
         });
         get("/left/:id", (request, response) -> {
             int id = Integer.parseInt(request.params(":id"));
+            DiffCache.Result diff = cache.getIfPresent(id);
+            if (diff != null)
+                return diff.getSrcText();
             Pair<File, File> pair = comparator.getModifiedFiles().get(id);
             return readFile(pair.getFirst().getAbsolutePath(), Charset.defaultCharset());
         });
         get("/right/:id", (request, response) -> {
             int id = Integer.parseInt(request.params(":id"));
+            DiffCache.Result diff = cache.getIfPresent(id);
+            if (diff != null)
+                return diff.getDstText();
             Pair<File, File> pair = comparator.getModifiedFiles().get(id);
             return readFile(pair.getSecond().getAbsolutePath(), Charset.defaultCharset());
         });
         get("/script/:id", (request, response) -> {
             int id = Integer.parseInt(request.params(":id"));
             Pair<File, File> pair = comparator.getModifiedFiles().get(id);
-            Renderable view = new ScriptView(pair.getFirst(), pair.getSecond());
+            Renderable view = new ScriptView(pair.getFirst(), pair.getSecond(), cache.get(id));
             return render(view);
         });
         get("/quit", (request, response) -> {
@@ -143,6 +167,31 @@ public class WebDiff extends AbstractDiffClient<WebDiff.Options> {
         return c.toHtml();
     }
 
+    /**
+     * Renders the view directly in the response, gzipped when the client accepts it. The response has no
+     * length, so it is sent in chunks as the view is rendered, and the browser can start displaying it
+     * before the end.
+     */
+    private static String stream(Request request, Response response, Renderable r) throws IOException {
+        HttpServletResponse raw = response.raw();
+        raw.setContentType("text/html; charset=utf-8");
+        String encodings = request.headers("Accept-Encoding");
+        boolean gzip = encodings != null && encodings.contains("gzip");
+        OutputStream out = raw.getOutputStream();
+        if (gzip) {
+            raw.setHeader("Content-Encoding", "gzip");
+            out = new GZIPOutputStream(out, STREAM_BUFFER_SIZE);
+        }
+        Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), STREAM_BUFFER_SIZE);
+        r.renderOn(new HtmlCanvas(w));
+        w.flush();
+        if (gzip)
+            ((GZIPOutputStream) out).finish();
+        // The response being committed, spark does not write the returned body
+        raw.flushBuffer();
+        return "";
+    }
+
     private static String readFile(String path, Charset encoding)  throws IOException {
         byte[] encoded = Files.readAllBytes(Paths.get(path));
         return new String(encoded, encoding);
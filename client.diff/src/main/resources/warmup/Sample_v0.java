@@ -0,0 +1,34 @@
+import java.util.ArrayList;
+import java.util.List;
+
+public class Sample {
+
+    private final List<String> names = new ArrayList<>();
+
+    private int count;
+
+    public void add(String name) {
+        if (name == null)
+            throw new IllegalArgumentException("name");
+        names.add(name);
+        count++;
+    }
+
+    public String get(int i) {
+        return names.get(i);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public String join(String separator) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < names.size(); i++) {
+            if (i > 0)
+                b.append(separator);
+            b.append(names.get(i));
+        }
+        return b.toString();
+    }
+}
@@ -0,0 +1,29 @@
+import java.util.ArrayList;
+import java.util.List;
+
+public class Sample {
+
+    private final List<String> names = new ArrayList<>();
+
+    public void add(String name) {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException("Invalid name: " + name);
+        names.add(name.trim());
+    }
+
+    public String get(int index) {
+        return names.get(index);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    public String join(String separator) {
+        return String.join(separator, names);
+    }
+
+    public boolean contains(String name) {
+        return names.contains(name);
+    }
+}
@@ -0,0 +1,31 @@
+var http = require('http');
+
+function Cache(size) {
+    this.size = size;
+    this.entries = {};
+    this.keys = [];
+}
+
+Cache.prototype.get = function (key) {
+    return this.entries[key];
+};
+
+Cache.prototype.put = function (key, value) {
+    if (this.keys.length >= this.size) {
+        var oldest = this.keys.shift();
+        delete this.entries[oldest];
+    }
+    this.keys.push(key);
+    this.entries[key] = value;
+};
+
+var cache = new Cache(10);
+
+http.createServer(function (req, res) {
+    var body = cache.get(req.url);
+    if (!body) {
+        body = 'Hello ' + req.url;
+        cache.put(req.url, body);
+    }
+    res.end(body);
+}).listen(8080);
@@ -0,0 +1,29 @@
+var http = require('http');
+
+function Cache(size) {
+    this.size = size || 100;
+    this.entries = {};
+    this.keys = [];
+}
+
+Cache.prototype.get = function (key) {
+    return this.entries.hasOwnProperty(key) ? this.entries[key] : null;
+};
+
+Cache.prototype.put = function (key, value) {
+    if (!this.entries.hasOwnProperty(key)) {
+        if (this.keys.length >= this.size)
+            delete this.entries[this.keys.shift()];
+        this.keys.push(key);
+    }
+    this.entries[key] = value;
+};
+
+var cache = new Cache();
+
+http.createServer(function (req, res) {
+    var body = cache.get(req.url) || 'Hello ' + req.url;
+    cache.put(req.url, body);
+    res.statusCode = req.method === 'GET' ? 200 : 405;
+    res.end(body);
+}).listen(process.env.PORT || 8080);
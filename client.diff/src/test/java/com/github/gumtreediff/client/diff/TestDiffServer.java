@@ -0,0 +1,246 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.client.diff;
+
+import com.github.gumtreediff.gen.Generators;
+import com.github.gumtreediff.gen.Register;
+import com.github.gumtreediff.gen.TreeGenerator;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class TestDiffServer {
+
+    /**
+     * Parses a node per line, a line "slow" taking a while to parse.
+     */
+    @Register(id = "test-lines", accept = "\\.lines$")
+    public static class LinesTreeGenerator extends TreeGenerator {
+
+        static final Set<String> THREADS = ConcurrentHashMap.newKeySet();
+
+        @Override
+        protected TreeContext generate(Reader r, boolean preProcess) throws IOException {
+            THREADS.add(Thread.currentThread().getName());
+            TreeContext ctx = new TreeContext();
+            ITree root = ctx.createTree(0, ITree.NO_LABEL, null);
+            BufferedReader reader = new BufferedReader(r);
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.equals("slow")) {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+                root.addChild(ctx.createTree(1, line, null));
+            }
+            ctx.setRoot(root);
+            return ctx;
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void installGenerator() {
+        Generators.getInstance().install(LinesTreeGenerator.class,
+                LinesTreeGenerator.class.getAnnotation(Register.class));
+    }
+
+    private String file(String name, String content) throws IOException {
+        File f = folder.newFile(name);
+        Files.write(f.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return f.getAbsolutePath();
+    }
+
+    /**
+     * Serves the requests, and returns the responses by id, checking that each one is framed by its length.
+     */
+    private static Map<String, JsonObject> serve(DiffServer server, String... requests) throws IOException {
+        String input = String.join("\n", requests) + "\n";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        server.serve(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), out);
+        byte[] bytes = out.toByteArray();
+        Map<String, JsonObject> responses = new HashMap<>();
+        int pos = 0;
+        while (pos < bytes.length) {
+            int eol = pos;
+            while (bytes[eol] != '\n')
+                eol++;
+            int length = Integer.parseInt(new String(bytes, pos, eol - pos, StandardCharsets.US_ASCII));
+            String response = new String(bytes, eol + 1, length, StandardCharsets.UTF_8);
+            JsonObject o = new JsonParser().parse(response).getAsJsonObject();
+            responses.put(o.get("id").isJsonNull() ? null : o.get("id").getAsString(), o);
+            pos = eol + 1 + length;
+        }
+        assertEquals(bytes.length, pos);
+        return responses;
+    }
+
+    private static DiffServer start(String... args) throws IOException {
+        DiffServer server = new DiffServer(args);
+        server.start();
+        return server;
+    }
+
+    private static String request(String id, String command, String src, String dst, String matcher) {
+        JsonObject o = new JsonObject();
+        o.addProperty("id", id);
+        if (command != null)
+            o.addProperty("command", command);
+        if (src != null)
+            o.addProperty("src", src);
+        if (dst != null)
+            o.addProperty("dst", dst);
+        if (matcher != null)
+            o.addProperty("matcher", matcher);
+        return o.toString();
+    }
+
+    private static Set<JsonElement> elements(JsonArray array) {
+        Set<JsonElement> elements = new HashSet<>();
+        array.forEach(elements::add);
+        return elements;
+    }
+
+    private static void assertError(JsonObject response, String message) {
+        assertEquals("error", response.get("status").getAsString());
+        assertTrue(response.get("message").getAsString(), response.get("message").getAsString().contains(message));
+    }
+
+    @Test
+    public void testRequests() throws IOException {
+        String a = file("a.lines", "x\ny\n");
+        String b = file("b.lines", "x\nz\ny\n");
+        DiffServer server = start("-c", "0");
+        try {
+            Map<String, JsonObject> responses = serve(server,
+                    request("parse", "parse", a, null, null),
+                    "",
+                    request("diff", null, a, b, null),
+                    request("xy", "diff", a, b, "xy"));
+            assertEquals(3, responses.size());
+            JsonObject parse = responses.get("parse");
+            assertEquals("ok", parse.get("status").getAsString());
+            assertEquals(2, parse.getAsJsonObject("result").getAsJsonObject("root")
+                    .getAsJsonArray("children").size());
+            JsonObject diff = responses.get("diff");
+            assertEquals("ok", diff.get("status").getAsString());
+            assertEquals(1, diff.getAsJsonObject("result").getAsJsonArray("actions").size());
+            assertEquals("ok", responses.get("xy").get("status").getAsString());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testErrors() throws IOException {
+        String a = file("a.lines", "x\n");
+        String c = file("c.unknown", "x\n");
+        DiffServer server = start("-c", "0");
+        try {
+            Map<String, JsonObject> responses = serve(server,
+                    request("src", "diff", null, a, null),
+                    request("dst", "diff", a, null, null),
+                    request("command", "patch", a, a, null),
+                    request("matcher", "diff", a, a, "unknown"),
+                    request("generator", "parse", c, null, null),
+                    "{not json");
+            assertEquals(6, responses.size());
+            assertError(responses.get("src"), "Missing src");
+            assertError(responses.get("dst"), "Missing dst");
+            assertError(responses.get("command"), "Unknown command: patch");
+            assertError(responses.get("matcher"), "Unknown matcher: unknown");
+            assertError(responses.get("generator"), "No generator found");
+            // The id of a request that cannot be read is null
+            assertEquals("error", responses.get(null).get("status").getAsString());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testCacheHit() throws IOException {
+        String a = file("a.lines", "x\ny\n");
+        String b = file("b.lines", "x\nz\ny\n");
+        DiffServer server = start("-c", "1", "-n", "1");
+        try {
+            JsonObject first = serve(server, request("1", "diff", a, b, null)).get("1");
+            assertEquals(0, server.getCache().getHits());
+            JsonObject second = serve(server, request("2", "diff", a, b, null)).get("2");
+            assertEquals(1, server.getCache().getHits());
+            // The mappings of a stored diff are rebuilt in another order
+            assertEquals(first.getAsJsonObject("result").get("actions"),
+                    second.getAsJsonObject("result").get("actions"));
+            assertEquals(elements(first.getAsJsonObject("result").getAsJsonArray("matches")),
+                    elements(second.getAsJsonObject("result").getAsJsonArray("matches")));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testBackPressure() throws IOException {
+        // With one worker and one waiting request, the reading thread runs the third request itself
+        String slow = file("slow.lines", "slow\n");
+        DiffServer server = start("-c", "0", "-n", "1", "-q", "1");
+        LinesTreeGenerator.THREADS.clear();
+        try {
+            Map<String, JsonObject> responses = serve(server,
+                    request("1", "parse", slow, null, null),
+                    request("2", "parse", slow, null, null),
+                    request("3", "parse", slow, null, null),
+                    request("4", "parse", slow, null, null));
+            assertEquals(4, responses.size());
+            for (JsonObject response : responses.values())
+                assertEquals("ok", response.get("status").getAsString());
+            assertTrue(LinesTreeGenerator.THREADS.contains("gumtree-server"));
+            assertTrue(LinesTreeGenerator.THREADS.contains(Thread.currentThread().getName()));
+        } finally {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.client.diff.web;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TestTagIndex {
+
+    private static final String SRC_MV_SPAN = "<span class=\"%s\" id=\"move-src-%d\" data-title=\"%s\">";
+    private static final String DST_MV_SPAN = "<span class=\"%s\" id=\"move-dst-%d\" data-title=\"%s\">";
+    private static final String ADD_DEL_SPAN = "<span class=\"%s\" data-title=\"%s\">";
+    private static final String UPD_SPAN = "<span class=\"cupd\">";
+    private static final String ID_SPAN = "<span class=\"marker\" id=\"mapping-%d\"></span>";
+    private static final String END_SPAN = "</span>";
+
+    /**
+     * Fills a tag index and the former lookup, where the formatted tags are looked up at each offset of
+     * the text.
+     */
+    private static class Tags {
+
+        final TagIndex index = new TagIndex();
+
+        final Map<Integer, List<String>> startTags = new HashMap<>();
+
+        final Map<Integer, List<String>> endTags = new HashMap<>();
+
+        void marker(int pos, int number) {
+            index.addMarker(pos, number);
+            add(startTags, pos, String.format(ID_SPAN, number));
+        }
+
+        void span(int pos, int kind, int number, String cssClass, String tooltip, int endPos) {
+            index.addTags(pos, kind, number, cssClass, tooltip, endPos);
+            String tag;
+            if (kind == TagIndex.SRC_MV)
+                tag = String.format(SRC_MV_SPAN, cssClass, number, tooltip);
+            else if (kind == TagIndex.DST_MV)
+                tag = String.format(DST_MV_SPAN, cssClass, number, tooltip);
+            else if (kind == TagIndex.ADD_DEL)
+                tag = String.format(ADD_DEL_SPAN, cssClass, tooltip);
+            else
+                tag = UPD_SPAN;
+            add(startTags, pos, tag);
+            add(endTags, endPos, END_SPAN);
+        }
+
+        private static void add(Map<Integer, List<String>> tags, int pos, String tag) {
+            if (!tags.containsKey(pos)) tags.put(pos, new ArrayList<>());
+            tags.get(pos).add(tag);
+        }
+
+        String previous(String text) {
+            StringBuilder b = new StringBuilder();
+            for (int cursor = 0; cursor < text.length(); cursor++) {
+                append(endTags, cursor, b);
+                append(startTags, cursor, b);
+                char cr = text.charAt(cursor);
+                if (cr == '<') b.append("&lt;");
+                else if (cr == '>') b.append("&gt;");
+                else if (cr == '&') b.append("&amp;");
+                else b.append(cr);
+            }
+            append(endTags, text.length(), b);
+            return b.toString();
+        }
+
+        private static void append(Map<Integer, List<String>> tags, int pos, StringBuilder b) {
+            if (tags.containsKey(pos))
+                for (String tag : tags.get(pos))
+                    b.append(tag);
+        }
+
+        String current(String text) throws IOException {
+            StringWriter w = new StringWriter();
+            index.freeze();
+            index.write(text, w);
+            return w.toString();
+        }
+    }
+
+    @Test
+    public void testSampleDiff() throws IOException {
+        String src = "class A {\n    int foo(int a) { return a < 1 && a > -1 ? 0 : a; }\n    void bar() {}\n}\n";
+        int foo = src.indexOf("int foo");
+        int fooName = src.indexOf("foo");
+        int cond = src.indexOf("a < 1");
+        int bar = src.indexOf("void bar");
+        Tags tags = new Tags();
+        // Moved method, holding an updated name and a deleted condition
+        tags.marker(foo, 1);
+        tags.span(foo, TagIndex.SRC_MV, 1, "token mv", "TypeDeclaration/MethodDeclaration", bar - 5);
+        tags.marker(fooName, 2);
+        tags.span(fooName, TagIndex.SRC_MV, 2, "token upd", "MethodDeclaration/SimpleName", fooName + 3);
+        tags.span(fooName + 1, TagIndex.UPD, 0, null, null, fooName + 3);
+        tags.marker(cond, 3);
+        tags.span(cond, TagIndex.ADD_DEL, 0, "token del", "ConditionalExpression/InfixExpression",
+                src.indexOf(" ? "));
+        // Added method, up to the end of the text
+        tags.marker(bar, 4);
+        tags.span(bar, TagIndex.DST_MV, 2, "token add", "TypeDeclaration/MethodDeclaration", src.length());
+        tags.marker(src.length() - 1, 5);
+        assertEquals(tags.previous(src), tags.current(src));
+    }
+
+    @Test
+    public void testRandomSpans() throws IOException {
+        Random random = new Random(42);
+        String alphabet = "ab <>&\n";
+        for (int i = 0; i < 200; i++) {
+            StringBuilder b = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int j = 0; j < length; j++)
+                b.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            String text = b.toString();
+            Tags tags = new Tags();
+            int spans = random.nextInt(10);
+            for (int j = 0; j < spans; j++) {
+                int pos = random.nextInt(length + 1);
+                int endPos = pos + random.nextInt(length + 1 - pos);
+                int kind = random.nextInt(5);
+                if (kind == TagIndex.MARKER)
+                    tags.marker(pos, j);
+                else if (kind == TagIndex.UPD)
+                    tags.span(pos, kind, 0, null, null, endPos);
+                else
+                    tags.span(pos, kind, j, "token c" + random.nextInt(3), "T/t" + random.nextInt(3), endPos);
+            }
+            assertEquals(tags.previous(text), tags.current(text));
+        }
+    }
+
+    @Test
+    public void testFrozen() throws IOException {
+        TagIndex index = new TagIndex();
+        index.addTags(0, TagIndex.ADD_DEL, 0, "token add", "T", 1);
+        try {
+            index.write("a", new StringWriter());
+            fail();
+        } catch (IllegalStateException e) {
+            // The spans are not sorted yet
+        }
+        index.freeze();
+        try {
+            index.addMarker(0, 1);
+            fail();
+        } catch (IllegalStateException e) {
+            // The spans are already sorted
+        }
+        StringWriter w = new StringWriter();
+        index.write("ab", w);
+        assertEquals("<span class=\"token add\" data-title=\"T\">a</span>b", w.toString());
+    }
+}
@@ -26,6 +26,7 @@ import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.tree.AbstractTree;
 import com.github.gumtreediff.tree.ITree;
 import com.github.gumtreediff.tree.TreeUtils;
+import com.github.gumtreediff.utils.Deadline;
 import gnu.trove.map.TIntObjectMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
 
@@ -58,6 +59,8 @@ public class ActionGenerator {
 
     private TIntObjectMap<ITree> cpySrcTrees;
 
+    private Deadline deadline = Deadline.NONE;
+
     public ActionGenerator(ITree src, ITree dst, MappingStore mappings) {
         this.origSrc = src;
         this.newSrc = this.origSrc.deepCopy();
@@ -80,7 +83,28 @@ public class ActionGenerator {
         return actions;
     }
 
+    /**
+     * Set the deadline checked while generating the actions.
+     */
+    public void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * @throws Deadline.ExceededException if the deadline expires before the actions are generated. In that
+     *     case there are no actions, and the destination tree is restored.
+     */
     public List<Action> generate() {
+        try {
+            return generateActions();
+        } catch (Deadline.ExceededException e) {
+            actions = null;
+            origDst.setParent(null);
+            throw e;
+        }
+    }
+
+    private List<Action> generateActions() {
         ITree srcFakeRoot = new AbstractTree.FakeTree(newSrc);
         ITree dstFakeRoot = new AbstractTree.FakeTree(origDst);
         newSrc.setParent(srcFakeRoot);
@@ -95,6 +119,7 @@ public class ActionGenerator {
 
         List<ITree> bfsDst = TreeUtils.breadthFirst(origDst);
         for (ITree x: bfsDst) {
+            deadline.check("ActionGenerator");
             ITree w = null;
             ITree y = x.getParent();
             ITree z = newMappings.getSrc(y);
@@ -0,0 +1,543 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.actions;
+
+import com.github.gumtreediff.actions.model.Action;
+import com.github.gumtreediff.actions.model.Addition;
+import com.github.gumtreediff.actions.model.Delete;
+import com.github.gumtreediff.actions.model.Insert;
+import com.github.gumtreediff.actions.model.Move;
+import com.github.gumtreediff.actions.model.Update;
+import com.github.gumtreediff.matchers.Mapping;
+import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.tree.ITree;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A store of diff results, so that a pair of files already diffed with the same generator, matcher and
+ * configuration is not matched again.
+ *
+ * <p>A result is stored as the post-order indexes of the mapped and modified trees, with the labels of the
+ * updates, and is rebuilt against the trees of a new parse of the same files. The results are kept in memory
+ * up to a given size, the least recently used being evicted first. When a journal file is given, the results
+ * are also appended to it, and the results of the journal are read back from it when they are not in
+ * memory.</p>
+ *
+ * <p>The methods of the store are synchronized, so that it can be shared between threads.</p>
+ */
+public class DiffStore implements AutoCloseable {
+
+    private static final int MAGIC = 0x47544443;
+
+    private static final int VERSION = 1;
+
+    private static final int INSERT = 0;
+
+    private static final int MOVE = 1;
+
+    private static final int UPDATE = 2;
+
+    private static final int DELETE = 3;
+
+    private static final int NONE = Integer.MIN_VALUE;
+
+    private static final String[] PROPERTY_PREFIXES = {"gumtree.", "gt."};
+
+    private final long capacity;
+
+    private long size;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Map<Key, Long> journalIndex = new HashMap<>();
+
+    private RandomAccessFile journal;
+
+    private DataOutputStream appender;
+
+    private int hits;
+
+    private int misses;
+
+    /**
+     * Creates a store kept in memory only.
+     *
+     * @param capacity the approximate number of bytes taken by the results kept in memory
+     */
+    public DiffStore(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Creates a store appending its results to the given journal, the results of which are readable from the
+     * store. A journal whose last result was not fully written is truncated before the result.
+     *
+     * @param capacity the approximate number of bytes taken by the results kept in memory
+     * @throws IOException if the journal could not be read or is not a journal
+     */
+    public DiffStore(long capacity, File journalFile) throws IOException {
+        this(capacity);
+        journal = new RandomAccessFile(journalFile, "rw");
+        try {
+            long end = readJournal();
+            journal.setLength(end);
+            appender = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, true)));
+            if (end == 0) {
+                appender.writeInt(MAGIC);
+                appender.writeInt(VERSION);
+                appender.flush();
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the key of the diff of the given contents with the given generator and matcher, under the
+     * current gumtree.* and gt.* system properties.
+     */
+    public static Key key(byte[] src, byte[] dst, String generator, String matcher) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        update(digest, src);
+        update(digest, dst);
+        update(digest, String.valueOf(generator).getBytes(StandardCharsets.UTF_8));
+        update(digest, String.valueOf(matcher).getBytes(StandardCharsets.UTF_8));
+        Map<String, String> properties = new TreeMap<>();
+        for (String name : System.getProperties().stringPropertyNames())
+            for (String prefix : PROPERTY_PREFIXES)
+                if (name.startsWith(prefix))
+                    properties.put(name, System.getProperty(name));
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            update(digest, property.getKey().getBytes(StandardCharsets.UTF_8));
+            update(digest, property.getValue().getBytes(StandardCharsets.UTF_8));
+        }
+        StringBuilder b = new StringBuilder();
+        for (byte x : digest.digest())
+            b.append(String.format("%02x", x));
+        return new Key(b.toString());
+    }
+
+    private static void update(MessageDigest digest, byte[] bytes) {
+        int length = bytes.length;
+        digest.update(new byte[] {(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8),
+                (byte) length});
+        digest.update(bytes);
+    }
+
+    /**
+     * Returns the result stored under the key, rebuilt against the given trees, or null if there is none or
+     * if it does not fit the trees.
+     *
+     * @throws IOException if the result could not be read from the journal
+     */
+    public synchronized Result get(Key key, ITree src, ITree dst) throws IOException {
+        Entry e = entries.get(key);
+        if (e == null) {
+            Long offset = journalIndex.get(key);
+            if (offset != null) {
+                e = readEntry(offset);
+                keep(key, e);
+            }
+        }
+        Result result = e == null ? null : e.decode(src, dst);
+        if (result == null)
+            misses++;
+        else
+            hits++;
+        return result;
+    }
+
+    /**
+     * Stores the result of the diff of the given trees under the key, unless an action refers to a tree of
+     * neither of them.
+     *
+     * @return whether the result was stored
+     * @throws IOException if the result could not be appended to the journal
+     */
+    public synchronized boolean put(Key key, ITree src, ITree dst, MappingStore mappings, List<Action> actions)
+            throws IOException {
+        Entry e = Entry.encode(src, dst, mappings, actions);
+        if (e == null)
+            return false;
+        keep(key, e);
+        if (appender != null && !journalIndex.containsKey(key)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            e.write(new DataOutputStream(bytes));
+            final long offset = journal.length();
+            appender.writeUTF(key.digest);
+            appender.writeInt(bytes.size());
+            bytes.writeTo(appender);
+            appender.flush();
+            journalIndex.put(key, offset + 2 + key.digest.length() + 4);
+        }
+        return true;
+    }
+
+    private void keep(Key key, Entry e) {
+        Entry previous = entries.remove(key);
+        if (previous != null)
+            size -= previous.bytes();
+        if (e.bytes() > capacity)
+            return;
+        entries.put(key, e);
+        size += e.bytes();
+        Iterator<Entry> i = entries.values().iterator();
+        while (size > capacity) {
+            size -= i.next().bytes();
+            i.remove();
+        }
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the approximate number of bytes taken by the results kept in memory.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (appender != null)
+                appender.close();
+        } finally {
+            appender = null;
+            if (journal != null)
+                journal.close();
+            journal = null;
+        }
+    }
+
+    /**
+     * Indexes the results of the journal, and returns the end of the last complete one.
+     */
+    private long readJournal() throws IOException {
+        if (journal.length() == 0)
+            return 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(journal.getChannel())));
+        long position;
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Not a diff journal, or of another version");
+            position = 8;
+        } catch (EOFException e) {
+            throw new IOException("Not a diff journal");
+        }
+        while (true) {
+            try {
+                String digest = in.readUTF();
+                int length = in.readInt();
+                long offset = position + 2 + digest.length() + 4;
+                if (in.skipBytes(length) != length)
+                    break;
+                journalIndex.put(new Key(digest), offset);
+                position = offset + length;
+            } catch (EOFException e) {
+                break;
+            }
+        }
+        return position;
+    }
+
+    private Entry readEntry(long offset) throws IOException {
+        journal.seek(offset - 4);
+        byte[] bytes = new byte[journal.readInt()];
+        journal.readFully(bytes);
+        return Entry.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * The key of a diff, a digest of the contents of the files and of the configuration of the diff.
+     */
+    public static final class Key {
+
+        private final String digest;
+
+        Key(String digest) {
+            this.digest = digest;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).digest.equals(digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return digest.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return digest;
+        }
+    }
+
+    /**
+     * The mappings and actions of a stored diff, rebuilt against new trees.
+     */
+    public static class Result {
+
+        private final MappingStore mappings;
+
+        private final List<Action> actions;
+
+        Result(MappingStore mappings, List<Action> actions) {
+            this.mappings = mappings;
+            this.actions = actions;
+        }
+
+        public MappingStore getMappings() {
+            return mappings;
+        }
+
+        public List<Action> getActions() {
+            return actions;
+        }
+    }
+
+    /**
+     * A stored diff. The trees are referred to by their post-order index, the trees of the source being
+     * numbered from zero, and the trees of the destination from minus one downwards.
+     */
+    private static class Entry {
+
+        private final int srcSize;
+
+        private final int dstSize;
+
+        /** The source and destination reference of each mapping. */
+        private final int[] mappings;
+
+        /** The kind, tree, parent and position of each action. */
+        private final int[] actions;
+
+        /** The label of each update. */
+        private final String[] labels;
+
+        Entry(int srcSize, int dstSize, int[] mappings, int[] actions, String[] labels) {
+            this.srcSize = srcSize;
+            this.dstSize = dstSize;
+            this.mappings = mappings;
+            this.actions = actions;
+            this.labels = labels;
+        }
+
+        static Entry encode(ITree src, ITree dst, MappingStore mappings, List<Action> actions) {
+            Map<ITree, Integer> refs = new IdentityHashMap<>();
+            int srcSize = 0;
+            for (ITree t : src.postOrder())
+                refs.put(t, srcSize++);
+            int dstSize = 0;
+            for (ITree t : dst.postOrder())
+                refs.put(t, -1 - dstSize++);
+
+            List<Integer> m = new ArrayList<>();
+            for (Mapping mapping : mappings) {
+                Integer first = refs.get(mapping.getFirst());
+                Integer second = refs.get(mapping.getSecond());
+                if (first == null || second == null || first < 0 || second >= 0)
+                    return null;
+                m.add(first);
+                m.add(second);
+            }
+
+            int[] a = new int[actions.size() * 4];
+            List<String> labels = new ArrayList<>();
+            int i = 0;
+            for (Action action : actions) {
+                int kind;
+                if (action instanceof Insert)
+                    kind = INSERT;
+                else if (action instanceof Move)
+                    kind = MOVE;
+                else if (action instanceof Update)
+                    kind = UPDATE;
+                else if (action instanceof Delete)
+                    kind = DELETE;
+                else
+                    return null;
+                Integer node = refs.get(action.getNode());
+                if (node == null)
+                    return null;
+                int parent = NONE;
+                int position = 0;
+                if (action instanceof Addition) {
+                    Addition addition = (Addition) action;
+                    if (addition.getParent() != null) {
+                        Integer p = refs.get(addition.getParent());
+                        if (p == null)
+                            return null;
+                        parent = p;
+                    }
+                    position = addition.getPosition();
+                } else if (action instanceof Update)
+                    labels.add(((Update) action).getValue());
+                a[i++] = kind;
+                a[i++] = node;
+                a[i++] = parent;
+                a[i++] = position;
+            }
+
+            int[] ms = new int[m.size()];
+            for (int j = 0; j < ms.length; j++)
+                ms[j] = m.get(j);
+            return new Entry(srcSize, dstSize, ms, a, labels.toArray(new String[labels.size()]));
+        }
+
+        Result decode(ITree src, ITree dst) {
+            ITree[] srcTrees = new ITree[srcSize];
+            int i = 0;
+            for (ITree t : src.postOrder()) {
+                if (i == srcSize)
+                    return null;
+                srcTrees[i++] = t;
+            }
+            if (i != srcSize)
+                return null;
+            ITree[] dstTrees = new ITree[dstSize];
+            i = 0;
+            for (ITree t : dst.postOrder()) {
+                if (i == dstSize)
+                    return null;
+                dstTrees[i++] = t;
+            }
+            if (i != dstSize)
+                return null;
+
+            MappingStore ms = new MappingStore();
+            for (int j = 0; j < mappings.length; j += 2)
+                ms.link(srcTrees[mappings[j]], dstTrees[-1 - mappings[j + 1]]);
+
+            List<Action> result = new ArrayList<>(actions.length / 4);
+            int label = 0;
+            for (int j = 0; j < actions.length; j += 4) {
+                ITree node = tree(srcTrees, dstTrees, actions[j + 1]);
+                ITree parent = tree(srcTrees, dstTrees, actions[j + 2]);
+                switch (actions[j]) {
+                    case INSERT:
+                        result.add(new Insert(node, parent, actions[j + 3]));
+                        break;
+                    case MOVE:
+                        result.add(new Move(node, parent, actions[j + 3]));
+                        break;
+                    case UPDATE:
+                        result.add(new Update(node, labels[label++]));
+                        break;
+                    default:
+                        result.add(new Delete(node));
+                }
+            }
+            return new Result(ms, result);
+        }
+
+        private static ITree tree(ITree[] srcTrees, ITree[] dstTrees, int ref) {
+            if (ref == NONE)
+                return null;
+            return ref >= 0 ? srcTrees[ref] : dstTrees[-1 - ref];
+        }
+
+        long bytes() {
+            long bytes = 64 + 4L * (mappings.length + actions.length);
+            for (String l : labels)
+                bytes += 48 + 2L * l.length();
+            return bytes;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(srcSize);
+            out.writeInt(dstSize);
+            writeInts(out, mappings);
+            writeInts(out, actions);
+            out.writeInt(labels.length);
+            for (String l : labels) {
+                byte[] bytes = l.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        static Entry read(DataInputStream in) throws IOException {
+            int srcSize = in.readInt();
+            int dstSize = in.readInt();
+            int[] mappings = readInts(in);
+            int[] actions = readInts(in);
+            String[] labels = new String[in.readInt()];
+            for (int i = 0; i < labels.length; i++) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                labels[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return new Entry(srcSize, dstSize, mappings, actions, labels);
+        }
+
+        private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+            out.writeInt(values.length);
+            for (int v : values)
+                out.writeInt(v);
+        }
+
+        private static int[] readInts(DataInputStream in) throws IOException {
+            int[] values = new int[in.readInt()];
+            for (int i = 0; i < values.length; i++)
+                values[i] = in.readInt();
+            return values;
+        }
+    }
+}
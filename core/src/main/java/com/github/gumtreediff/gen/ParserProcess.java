@@ -0,0 +1,94 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.gen;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs an external parser, the output of which is read while the parser writes it. A parser that does not
+ * exit within its timeout is killed, so that a hung parser does not block the generator.
+ */
+public final class ParserProcess {
+
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "gumtree-parser-watchdog");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private ParserProcess() {
+    }
+
+    /**
+     * Starts the given parser and has its output read by the given reader. The parser is killed if it does
+     * not exit, output reading included, within the timeout.
+     *
+     * @param timeout the time given to the parser, in milliseconds
+     * @throws IOException if the parser could not be started, timed out or exited with an error
+     */
+    public static <T> T run(ProcessBuilder b, long timeout, OutputReader<T> reader) throws IOException {
+        String name = b.command().get(0);
+        Process p = b.start();
+        AtomicBoolean killed = new AtomicBoolean();
+        ScheduledFuture<?> timer = WATCHDOG.schedule(() -> {
+            killed.set(true);
+            p.destroyForcibly();
+        }, timeout, TimeUnit.MILLISECONDS);
+        try {
+            T result;
+            try (InputStream output = p.getInputStream()) {
+                result = reader.read(output);
+            } catch (IOException | RuntimeException e) {
+                if (killed.get())
+                    throw timedOut(name, timeout, e);
+                throw e;
+            }
+            int status = p.waitFor();
+            if (killed.get())
+                throw timedOut(name, timeout, null);
+            if (status != 0)
+                throw new IOException(String.format("%s Error [%d]", name, status));
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("Interrupted while waiting for %s", name));
+        } finally {
+            timer.cancel(false);
+            p.destroyForcibly();
+        }
+    }
+
+    private static IOException timedOut(String name, long timeout, Exception cause) {
+        return new IOException(String.format("%s timed out after %d ms", name, timeout), cause);
+    }
+
+    @FunctionalInterface
+    public interface OutputReader<T> {
+        T read(InputStream output) throws IOException;
+    }
+}
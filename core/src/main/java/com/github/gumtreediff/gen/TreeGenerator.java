@@ -23,23 +23,84 @@ package com.github.gumtreediff.gen;
 import com.github.gumtreediff.tree.TreeContext;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 public abstract class TreeGenerator {
 
+    /**
+     * Size in bytes from which the files are memory mapped rather than read.
+     */
+    public static long MAP_THRESHOLD = Long.parseLong(System.getProperty("gt.tg.mmap", "16777216"));
+
     protected abstract TreeContext generate(Reader r, boolean preProcess) throws IOException;
 
+    /**
+     * Generates the tree of a decoded content. By default, the content is read through a reader, without
+     * copying it when it is backed by an array. Generators able to use the buffer directly override it.
+     */
+    protected TreeContext generate(CharBuffer chars, boolean preProcess) throws IOException {
+        if (chars.hasArray())
+            return generate(new CharArrayReader(chars.array(), chars.arrayOffset() + chars.position(),
+                    chars.remaining()), preProcess);
+        return generate(new StringReader(chars.toString()), preProcess);
+    }
+
     public TreeContext generateFromReader(Reader r, boolean preProcess) throws IOException {
         TreeContext ctx = generate(r, preProcess);
         ctx.validate();
         return ctx;
     }
 
+    public TreeContext generateFromChars(CharBuffer chars, boolean preProcess) throws IOException {
+        TreeContext ctx = generate(chars, preProcess);
+        ctx.validate();
+        return ctx;
+    }
+
+    public TreeContext generateFromBytes(byte[] bytes, Charset charset, boolean preProcess) throws IOException {
+        return generateFromBytes(ByteBuffer.wrap(bytes), charset, preProcess);
+    }
+
+    public TreeContext generateFromBytes(ByteBuffer bytes, Charset charset, boolean preProcess) throws IOException {
+        return generateFromChars(decode(bytes, charset), preProcess);
+    }
+
+    /**
+     * Reads the file through NIO, mapping it in memory if larger than {@link #MAP_THRESHOLD}, and decodes it
+     * with the given charset in a single buffer.
+     */
+    public TreeContext generateFromPath(Path path, Charset charset, boolean preProcess) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer bytes;
+            if (size >= MAP_THRESHOLD)
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            else {
+                bytes = ByteBuffer.allocate((int) size);
+                while (bytes.hasRemaining() && channel.read(bytes) != -1)
+                    continue;
+                bytes.flip();
+            }
+            return generateFromBytes(bytes, charset, preProcess);
+        }
+    }
+
     public TreeContext generateFromFile(String path, boolean preProcess) throws IOException {
-        return generateFromReader(new FileReader(path), preProcess);
+        return generateFromFile(new File(path), preProcess);
     }
 
     public TreeContext generateFromFile(File file, boolean preProcess) throws IOException {
-        return generateFromReader(new FileReader(file), preProcess);
+        // Same charset as a FileReader
+        return generateFromPath(file.toPath(), Charset.defaultCharset(), preProcess);
     }
 
     public TreeContext generateFromStream(InputStream stream, boolean preProcess) throws IOException {
@@ -49,4 +110,23 @@ public abstract class TreeGenerator {
     public TreeContext generateFromString(String content, boolean preProcess) throws IOException {
         return generateFromReader(new StringReader(content), preProcess);
     }
+
+    /**
+     * Decodes the bytes in a buffer allocated once, from the maximum number of chars per byte of the
+     * charset. Malformed input is replaced, as by the readers.
+     */
+    private static CharBuffer decode(ByteBuffer bytes, Charset charset) throws CharacterCodingException {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer.allocate((int) Math.ceil(bytes.remaining() * (double) decoder.maxCharsPerByte()));
+        CoderResult result = decoder.decode(bytes, chars, true);
+        if (!result.isUnderflow())
+            result.throwException();
+        result = decoder.flush(chars);
+        if (!result.isUnderflow())
+            result.throwException();
+        chars.flip();
+        return chars;
+    }
 }
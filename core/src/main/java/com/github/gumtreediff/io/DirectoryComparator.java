@@ -22,19 +22,36 @@ package com.github.gumtreediff.io;
 
 import com.github.gumtreediff.utils.Pair;
 
-import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 public class DirectoryComparator {
 
+    public static int THREADS = Integer.parseInt(System.getProperty("gt.dc.threads",
+            Integer.toString(Runtime.getRuntime().availableProcessors())));
+
+    public static int BUFFER_SIZE = Integer.parseInt(System.getProperty("gt.dc.buffer", "65536"));
+
     private Path src;
 
     public Path getSrc() {
@@ -55,6 +72,8 @@ public class DirectoryComparator {
 
     private boolean dirMode = true;
 
+    private boolean trustTimestamps = false;
+
     public DirectoryComparator(String src, String dst) {
         modifiedFiles = new ArrayList<>();
         addedFiles = new HashSet<>();
@@ -76,33 +95,80 @@ public class DirectoryComparator {
         }
     }
 
+    /**
+     * When set, the common files having the same size and the same modification time are considered
+     * unchanged without reading them, as rsync does by default. It is only safe when the modification
+     * times are preserved, e.g. in snapshots of a same repository.
+     */
+    public void setTrustTimestamps(boolean trustTimestamps) {
+        this.trustTimestamps = trustTimestamps;
+    }
+
     public void compare() {
+        compare(null);
+    }
+
+    /**
+     * Compare the directories, walking both trees in parallel. The common files are compared on
+     * {@link #THREADS} threads (at least one) as soon as both walks have found them. The files are compared
+     * by size, then by modification time if trusted, and finally by content, block by block. The given
+     * listener, if any, receives the modified files as soon as they are found, from the comparing threads.
+     * Once done, the modified files are available sorted by path from {@link #getModifiedFiles()}.
+     */
+    public void compare(Consumer<Pair<File, File>> listener) {
         if (!dirMode) return;
-        AllFilesVisitor vSrc = new AllFilesVisitor(src);
-        AllFilesVisitor vDst = new AllFilesVisitor(dst);
+        int threads = Math.max(1, THREADS);
+        ExecutorService pool = Executors.newFixedThreadPool(threads + 2, r -> {
+            Thread t = new Thread(r, "gumtree-directory-comparator");
+            t.setDaemon(true);
+            return t;
+        });
         try {
-            Files.walkFileTree(src, vSrc);
-            Files.walkFileTree(dst, vDst);
-
-            Set<String> addedFiles = new HashSet<>();
-            addedFiles.addAll(vDst.files);
-            addedFiles.removeAll(vSrc.files);
-            for (String file : addedFiles) this.addedFiles.add(toDstFile(file));
-
-            Set<String> deletedFiles = new HashSet<>();
-            deletedFiles.addAll(vSrc.files);
-            deletedFiles.removeAll(vDst.files);
-            for (String file : deletedFiles) this.deletedFiles.add(toSrcFile(file));
-
-            Set<String> commonFiles = new HashSet<>();
-            commonFiles.addAll(vSrc.files);
-            commonFiles.retainAll(vDst.files);
-
-            for (String file : commonFiles)
-                if (hasChanged(file, file))
-                    modifiedFiles.add(new Pair<File, File>(toSrcFile(file), toDstFile(file)));
-        } catch (IOException e) {
-            e.printStackTrace();
+            Pairing pairing = new Pairing();
+            List<Pair<File, File>> modified = Collections.synchronizedList(new ArrayList<>());
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                workers.add(pool.submit(() -> {
+                    ByteBuffer b1 = ByteBuffer.allocateDirect(BUFFER_SIZE);
+                    ByteBuffer b2 = ByteBuffer.allocateDirect(BUFFER_SIZE);
+                    for (CommonFile f = pairing.common.take(); f != CommonFile.END; f = pairing.common.take()) {
+                        if (hasChanged(f.file, f.src, f.dst, b1, b2)) {
+                            Pair<File, File> pair = new Pair<>(toSrcFile(f.file), toDstFile(f.file));
+                            modified.add(pair);
+                            if (listener != null)
+                                listener.accept(pair);
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            AllFilesVisitor vSrc = new AllFilesVisitor(src, pairing::foundSrc);
+            AllFilesVisitor vDst = new AllFilesVisitor(dst, pairing::foundDst);
+            Future<Path> walkSrc = pool.submit(() -> Files.walkFileTree(src, vSrc));
+            Future<Path> walkDst = pool.submit(() -> Files.walkFileTree(dst, vDst));
+            try {
+                walkSrc.get();
+                walkDst.get();
+            } finally {
+                for (int i = 0; i < threads; i++)
+                    pairing.common.add(CommonFile.END);
+            }
+            for (Future<?> worker : workers)
+                worker.get();
+
+            for (String file : pairing.srcOnly.keySet())
+                deletedFiles.add(toSrcFile(file));
+            for (String file : pairing.dstOnly.keySet())
+                addedFiles.add(toDstFile(file));
+            modified.sort(Comparator.comparing(p -> p.getFirst().getPath()));
+            modifiedFiles.addAll(modified);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        } finally {
+            pool.shutdownNow();
         }
     }
 
@@ -131,39 +197,120 @@ public class DirectoryComparator {
     }
 
     public boolean hasChanged(String s1, String s2) throws IOException {
-        File f1 = toSrcFile(s1);
-        File f2 = toDstFile(s2);
-        long l1 = Files.size(f1.toPath());
-        long l2 = Files.size(f2.toPath());
-        if (l1 != l2) return true;
-        else {
-            try (DataInputStream dis1 = new DataInputStream(new FileInputStream(f1));
-                 DataInputStream dis2 = new DataInputStream(new FileInputStream(f2))) {
-                int c1, c2;
-                while ((c1 = dis1.read()) != -1) {
-                    c2 = dis2.read();
-                    if (c1 != c2)
-                        return true;
-                }
-                return false;
+        Path p1 = toSrcFile(s1).toPath();
+        Path p2 = toDstFile(s2).toPath();
+        if (Files.size(p1) != Files.size(p2)) return true;
+        return contentDiffers(p1, p2, ByteBuffer.allocate(BUFFER_SIZE), ByteBuffer.allocate(BUFFER_SIZE));
+    }
+
+    private boolean hasChanged(String file, BasicFileAttributes a1, BasicFileAttributes a2,
+                               ByteBuffer b1, ByteBuffer b2) {
+        if (a1.size() != a2.size())
+            return true;
+        if (trustTimestamps && a1.lastModifiedTime().equals(a2.lastModifiedTime()))
+            return false;
+        try {
+            return contentDiffers(toSrcFile(file).toPath(), toDstFile(file).toPath(), b1, b2);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return true;
+        }
+    }
+
+    private static boolean contentDiffers(Path p1, Path p2, ByteBuffer b1, ByteBuffer b2) throws IOException {
+        try (FileChannel c1 = FileChannel.open(p1, StandardOpenOption.READ);
+             FileChannel c2 = FileChannel.open(p2, StandardOpenOption.READ)) {
+            while (true) {
+                int r1 = fill(c1, b1);
+                int r2 = fill(c2, b2);
+                if (r1 != r2 || !b1.equals(b2))
+                    return true;
+                if (r1 < b1.capacity())
+                    return false;
             }
         }
     }
 
+    /**
+     * Reads the channel until the buffer is full or the end of the file is reached, and flips the buffer.
+     */
+    private static int fill(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining() && channel.read(buffer) != -1)
+            continue;
+        buffer.flip();
+        return buffer.limit();
+    }
+
+    /**
+     * Pairs the files found by the two walks, queuing the common files for comparison as soon as the
+     * second walk finds them.
+     */
+    private static class Pairing {
+
+        private final Map<String, BasicFileAttributes> srcOnly = new HashMap<>();
+
+        private final Map<String, BasicFileAttributes> dstOnly = new HashMap<>();
+
+        private final BlockingQueue<CommonFile> common = new LinkedBlockingQueue<>();
+
+        synchronized void foundSrc(String file, BasicFileAttributes attrs) {
+            BasicFileAttributes other = dstOnly.remove(file);
+            if (other == null)
+                srcOnly.put(file, attrs);
+            else
+                common.add(new CommonFile(file, attrs, other));
+        }
+
+        synchronized void foundDst(String file, BasicFileAttributes attrs) {
+            BasicFileAttributes other = srcOnly.remove(file);
+            if (other == null)
+                dstOnly.put(file, attrs);
+            else
+                common.add(new CommonFile(file, other, attrs));
+        }
+
+    }
+
+    private static class CommonFile {
+
+        /**
+         * Tells a comparing thread that the walks are done.
+         */
+        static final CommonFile END = new CommonFile(null, null, null);
+
+        final String file;
+
+        final BasicFileAttributes src;
+
+        final BasicFileAttributes dst;
+
+        CommonFile(String file, BasicFileAttributes src, BasicFileAttributes dst) {
+            this.file = file;
+            this.src = src;
+            this.dst = dst;
+        }
+
+    }
+
     public static class AllFilesVisitor extends SimpleFileVisitor<Path> {
 
-        private Set<String> files = new HashSet<>();
+        private final BiConsumer<String, BasicFileAttributes> listener;
 
         private Path root;
 
-        public AllFilesVisitor(Path root) {
+        /**
+         * @param listener receives the path of each file relative to the root, with its attributes.
+         */
+        public AllFilesVisitor(Path root, BiConsumer<String, BasicFileAttributes> listener) {
             this.root = root;
+            this.listener = listener;
         }
 
         @Override
         public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
             if (!file.getFileName().startsWith("."))
-                files.add(root.relativize(file).toString());
+                listener.accept(root.relativize(file).toString(), attrs);
             return FileVisitResult.CONTINUE;
         }
 
@@ -20,18 +20,24 @@
 
 package com.github.gumtreediff.io;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
-import java.util.ArrayList;
 import java.util.Arrays;
 
+/**
+ * Reader recording the offsets of the line breaks of what is read, to convert positions between
+ * (line, column) and offsets. The table is kept once the reader is consumed, so conversions do not
+ * require the text anymore.
+ */
 public class LineReader extends Reader {
     private Reader reader;
 
     private int currentPos = 0;
 
-    private ArrayList<Integer> lines = new ArrayList<>(Arrays.asList(0));
+    // The first entry is the start of the text, the following ones the offsets of the '\n'
+    private int[] lines = new int[64];
+
+    private int size = 1;
 
     public LineReader(Reader parent) {
         reader = parent;
@@ -40,21 +46,42 @@ public class LineReader extends Reader {
     @Override
     public int read(char[] cbuf, int off, int len) throws IOException {
         int r = reader.read(cbuf, off, len);
-        for (int i = 0; i < len; i ++)
-            if (cbuf[off + i] == '\n')
-                lines.add(currentPos + i);
-        currentPos += len;
+        for (int i = 0; i < r; i++) {
+            if (cbuf[off + i] == '\n') {
+                if (size == lines.length)
+                    lines = Arrays.copyOf(lines, size * 2);
+                lines[size++] = currentPos + i;
+            }
+        }
+        if (r > 0)
+            currentPos += r;
         return r;
     }
 
     // Line and column starts at 1
     public int positionFor(int line, int column) {
-        return lines.get(line - 1) + column - 1;
+        if (line < 1 || line > size)
+            throw new IndexOutOfBoundsException("Line: " + line + ", lines: " + size);
+        return lines[line - 1] + column - 1;
     }
 
-    // public int[] positionFor(int offset) { // TODO write this method
-    // Arrays.binarySearch(lines., null, null)
-    // }
+    /**
+     * Returns the {line, column} pair of an offset, the inverse of {@link #positionFor(int, int)}, found by
+     * binary search in the line table.
+     */
+    public int[] positionFor(int offset) {
+        int i = Arrays.binarySearch(lines, 0, size, offset);
+        if (i < 0)
+            i = Math.max(0, -i - 2);
+        return new int[] {i + 1, offset - lines[i] + 1};
+    }
+
+    /**
+     * Returns the number of lines read so far.
+     */
+    public int getLineCount() {
+        return size;
+    }
 
     @Override
     public void close() throws IOException {
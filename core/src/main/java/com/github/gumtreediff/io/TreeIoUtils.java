@@ -24,6 +24,7 @@ import com.github.gumtreediff.gen.Register;
 import com.github.gumtreediff.gen.TreeGenerator;
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.MetadataTable;
 import com.github.gumtreediff.tree.TreeContext;
 import com.github.gumtreediff.tree.TreeContext.MetadataSerializers;
 import com.github.gumtreediff.tree.TreeContext.MetadataUnserializers;
@@ -38,6 +39,7 @@ import javax.xml.stream.events.StartElement;
 import javax.xml.stream.events.XMLEvent;
 import java.io.*;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Stack;
 import java.util.regex.Pattern;
@@ -179,6 +181,11 @@ public final class TreeIoUtils {
             formatter.startSerialization();
             writeAttributes(formatter, context.getMetadata());
             formatter.endProlog();
+            MetadataTable table = context.getMetadataTable();
+            List<MetadataTable.Key<?>> keys = table.getKeys();
+            MetadataSerializer[] columns = new MetadataSerializer[keys.size()];
+            for (int i = 0; i < columns.length; i++)
+                columns[i] = serializers.get(keys.get(i).getName());
             try {
                 TreeUtils.visitTree(root, new TreeUtils.TreeVisitor() {
 
@@ -187,7 +194,10 @@ public final class TreeIoUtils {
                         try {
                             assert tree != null;
                             formatter.startTree(tree);
-                            writeAttributes(formatter, tree.getMetadata());
+                            if (table.contains(tree))
+                                writeAttributes(formatter, tree, keys, columns);
+                            else
+                                writeAttributes(formatter, tree.getMetadata());
                             formatter.endTreeProlog(tree);
                         } catch (Exception e) {
                             forwardException(e);
@@ -216,6 +226,21 @@ public final class TreeIoUtils {
             }
         }
 
+        /**
+         * Writes the metadata of a tree held by the table of the context, the serializer of each key being
+         * resolved once for all the trees.
+         */
+        private void writeAttributes(TreeFormatter formatter, ITree tree, List<MetadataTable.Key<?>> keys,
+                                     MetadataSerializer[] columns) throws Exception {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i] == null)
+                    continue;
+                Object value = keys.get(i).get(tree);
+                if (value != null)
+                    formatter.serializeAttribute(keys.get(i).getName(), columns[i].toString(value));
+            }
+        }
+
         public TreeSerializer export(String name, MetadataSerializer serializer) {
             serializers.add(name, serializer);
             return this;
@@ -20,21 +20,124 @@
 
 package com.github.gumtreediff.matchers;
 
+import com.github.gumtreediff.matchers.heuristic.gt.AbstractSubtreeMatcher;
 import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.utils.Deadline;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
 
 public class CompositeMatcher extends Matcher {
 
+    /**
+     * Whether the composite matchers having a pre-pass run it.
+     */
+    public static boolean PRE_PASS = Boolean.parseBoolean(System.getProperty("gt.cm.pp", "true"));
+
     protected final Matcher[] matchers;
 
+    private final boolean withPrePass;
+
+    private int prePassResolved;
+
     public CompositeMatcher(ITree src, ITree dst, MappingStore store, Matcher[] matchers) {
+        this(src, dst, store, matchers, false);
+    }
+
+    /**
+     * @param withPrePass whether the identical parts of the trees are mapped before applying the matchers,
+     *     see {@link #prePass()}. It changes the mappings of matchers that do not start by mapping the
+     *     isomorphic subtrees.
+     */
+    public CompositeMatcher(ITree src, ITree dst, MappingStore store, Matcher[] matchers, boolean withPrePass) {
         super(src, dst, store);
         this.matchers = matchers;
+        this.withPrePass = withPrePass;
+    }
+
+    @Override
+    public void setDeadline(Deadline deadline) {
+        super.setDeadline(deadline);
+        for (Matcher matcher : matchers)
+            matcher.setDeadline(deadline);
     }
 
+    /**
+     * Apply the matchers in order, after the pre-pass. Once the deadline has expired, the remaining matchers
+     * are skipped, so the mappings are the ones found by the first stages, e.g. the top-down ones.
+     */
     public void match() {
+        if (PRE_PASS && withPrePass && !deadline.isExpired() && prePass())
+            return;
         for (Matcher matcher : matchers) {
+            if (deadline.isExpired()) {
+                deadline.cut(matcher.getClass().getSimpleName());
+                LOGGER.warning("Deadline exceeded, skipping " + matcher.getClass().getSimpleName());
+                continue;
+            }
             matcher.match();
         }
     }
 
+    /**
+     * Map the identical parts of the trees before applying the matchers. If the roots are isomorphic,
+     * the trees are mapped entirely. Otherwise, the isomorphic children of the roots are mapped, when
+     * their hash occurs as many times among the source and the destination children, in order. As for
+     * the subtree matchers, children smaller than {@link AbstractSubtreeMatcher#MIN_HEIGHT} are ignored.
+     *
+     * @return true if the trees are mapped entirely.
+     */
+    protected boolean prePass() {
+        prePassResolved = 0;
+        if (src.isIsomorphicTo(dst)) {
+            addMappingRecursively(src, dst);
+            prePassResolved = src.getSize();
+            LOGGER.fine(String.format("Pre-pass: identical trees, %d nodes resolved", prePassResolved));
+            return true;
+        }
+
+        TIntObjectMap<List<ITree>> srcChildren = childrenByHash(src);
+        TIntObjectMap<List<ITree>> dstChildren = childrenByHash(dst);
+        for (int hash : srcChildren.keys()) {
+            List<ITree> srcTrees = srcChildren.get(hash);
+            List<ITree> dstTrees = dstChildren.get(hash);
+            if (dstTrees == null || srcTrees.size() != dstTrees.size())
+                continue;
+            for (int i = 0; i < srcTrees.size(); i++) {
+                ITree s = srcTrees.get(i);
+                ITree d = dstTrees.get(i);
+                if (s.isIsomorphicTo(d)) {
+                    addMappingRecursively(s, d);
+                    prePassResolved += s.getSize();
+                }
+            }
+        }
+        LOGGER.fine(String.format("Pre-pass: %d nodes resolved", prePassResolved));
+        return false;
+    }
+
+    private static TIntObjectMap<List<ITree>> childrenByHash(ITree root) {
+        TIntObjectMap<List<ITree>> children = new TIntObjectHashMap<>();
+        for (ITree child : root.getChildren()) {
+            if (child.getHeight() < AbstractSubtreeMatcher.MIN_HEIGHT)
+                continue;
+            List<ITree> trees = children.get(child.getHash());
+            if (trees == null) {
+                trees = new ArrayList<>();
+                children.put(child.getHash(), trees);
+            }
+            trees.add(child);
+        }
+        return children;
+    }
+
+    /**
+     * @return the number of source nodes mapped by the last pre-pass.
+     */
+    public int getPrePassResolved() {
+        return prePassResolved;
+    }
+
 }
@@ -24,6 +24,7 @@ import com.github.gumtreediff.gen.Registry;
 import com.github.gumtreediff.matchers.heuristic.cd.ChangeDistillerBottomUpMatcher;
 import com.github.gumtreediff.matchers.heuristic.cd.ChangeDistillerLeavesMatcher;
 import com.github.gumtreediff.matchers.heuristic.gt.CompleteBottomUpMatcher;
+import com.github.gumtreediff.matchers.heuristic.LineAnchorMatcher;
 import com.github.gumtreediff.matchers.heuristic.XyBottomUpMatcher;
 import com.github.gumtreediff.matchers.heuristic.gt.CliqueSubtreeMatcher;
 import com.github.gumtreediff.matchers.heuristic.gt.GreedyBottomUpMatcher;
@@ -39,7 +40,7 @@ public class CompositeMatchers {
             super(src, dst, store, new Matcher[]{
                     new GreedySubtreeMatcher(src, dst, store),
                     new GreedyBottomUpMatcher(src, dst, store)
-            });
+            }, true);
         }
     }
 
@@ -50,7 +51,7 @@ public class CompositeMatchers {
             super(src, dst, store, new Matcher[]{
                     new CliqueSubtreeMatcher(src, dst, store),
                     new CompleteBottomUpMatcher(src, dst, store)
-            });
+            }, true);
         }
     }
 
@@ -75,4 +76,19 @@ public class CompositeMatchers {
             });
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * The classic GumTree matcher, preceded by an anchoring of the subtrees lying in unchanged lines.
+     * It is not registered since it needs the source texts.
+     */
+    public static class LineAnchoredGumtree extends CompositeMatcher {
+
+        public LineAnchoredGumtree(ITree src, ITree dst, MappingStore store, String srcText, String dstText) {
+            super(src, dst, store, new Matcher[]{
+                    new LineAnchorMatcher(src, dst, store, srcText, dstText),
+                    new GreedySubtreeMatcher(src, dst, store),
+                    new GreedyBottomUpMatcher(src, dst, store)
+            }, true);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.matchers;
+
+import com.github.gumtreediff.matchers.heuristic.gt.AbstractBottomUpMatcher;
+import com.github.gumtreediff.matchers.heuristic.gt.AbstractSubtreeMatcher;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Estimate the time and the peak memory of a diff before running it, from simple statistics of the two
+ * trees: sizes, heights, label diversity, same-height buckets of the subtree matchers, and the sizes of
+ * the matrices allocated by the optimal algorithms (ZS in the last chance match, RTED).
+ *
+ * <p>The estimates are coarse: they count the dominant operations and allocations of each matcher and
+ * scale them with the constants below. They are meant to compare and schedule diffs, e.g. to run the
+ * largest ones first or to refuse the ones exceeding the heap, not to predict exact figures.</p>
+ */
+public class CostEstimator {
+
+    public static double NANOS_PER_NODE = 500D;
+
+    public static double NANOS_PER_ISOMORPHISM_TEST = 50D;
+
+    public static double NANOS_PER_MATRIX_CELL = 5D;
+
+    public static double NANOS_PER_LABEL_CHAR = 20D;
+
+    public static long BYTES_PER_NODE = 256L;
+
+    /**
+     * The identifiers of the matchers registered in {@link Matchers}, and of the optimal algorithms run by
+     * {@link DiffScheduler}, that have a cost model.
+     */
+    private static final Set<String> ESTIMATED = new HashSet<>(Arrays.asList(
+            "gumtree", "xy", "change-distiller", "zs", "rted"));
+
+    private final Statistics src;
+
+    private final Statistics dst;
+
+    private final long sameHeightBuckets;
+
+    private final long isomorphismTests;
+
+    private final long sameTypeInnerPairs;
+
+    public CostEstimator(TreeContext src, TreeContext dst) {
+        this(src.getRoot(), dst.getRoot());
+    }
+
+    public CostEstimator(ITree src, ITree dst) {
+        this.src = new Statistics(src);
+        this.dst = new Statistics(dst);
+
+        long buckets = 0;
+        long tests = 0;
+        for (int height : this.src.heights.keys()) {
+            if (height >= AbstractSubtreeMatcher.MIN_HEIGHT && this.dst.heights.containsKey(height)) {
+                buckets++;
+                tests += (long) this.src.heights.get(height) * (long) this.dst.heights.get(height);
+            }
+        }
+        sameHeightBuckets = buckets;
+        isomorphismTests = tests;
+
+        long pairs = 0;
+        for (int type : this.src.innerTypes.keys())
+            pairs += (long) this.src.innerTypes.get(type) * (long) this.dst.innerTypes.get(type);
+        sameTypeInnerPairs = pairs;
+    }
+
+    public Statistics getSrcStatistics() {
+        return src;
+    }
+
+    public Statistics getDstStatistics() {
+        return dst;
+    }
+
+    /**
+     * @return the number of heights shared by source and destination subtrees considered by the subtree
+     *     matchers.
+     */
+    public long getSameHeightBuckets() {
+        return sameHeightBuckets;
+    }
+
+    /**
+     * @return the number of isomorphism tests of a subtree matcher, in the worst case where no subtree
+     *     is matched before reaching the smallest height.
+     */
+    public long getIsomorphismTests() {
+        return isomorphismTests;
+    }
+
+    /**
+     * @return the number of cells of the ZS matrices of the two trees.
+     */
+    public long getZsMatrixCells() {
+        return ((long) src.size + 1L) * ((long) dst.size + 1L);
+    }
+
+    /**
+     * @return the number of cells of the largest ZS matrices allocated by a last chance match.
+     *     Only the subtrees smaller than {@link AbstractBottomUpMatcher#SIZE_THRESHOLD} are given to ZS, and
+     *     the root pair is the largest one.
+     */
+    public long getLastChanceMatrixCells() {
+        long threshold = AbstractBottomUpMatcher.SIZE_THRESHOLD;
+        if (src.size < threshold || dst.size < threshold)
+            return getZsMatrixCells();
+        else
+            return (threshold + 1L) * ((long) Math.max(src.size, dst.size) + 1L);
+    }
+
+    /**
+     * @return the number of cells of the n x m matrices allocated by RTED.
+     */
+    public long getRtedMatrixCells() {
+        return (long) src.size * (long) dst.size;
+    }
+
+    /**
+     * @return the estimates of the registered matchers having a cost model, by identifier.
+     */
+    public Map<String, Cost> estimateRegistered() {
+        Map<String, Cost> costs = new LinkedHashMap<>();
+        for (Matchers.Entry entry : Matchers.getInstance().getEntries())
+            if (isEstimated(entry.id))
+                costs.put(entry.id, estimate(entry.id));
+        return costs;
+    }
+
+    public static boolean isEstimated(String matcher) {
+        return ESTIMATED.contains(matcher);
+    }
+
+    /**
+     * @param matcher the identifier of a registered matcher, or zs or rted for the optimal ones.
+     * @throws IllegalArgumentException if no estimate is known for the given matcher.
+     */
+    public Cost estimate(String matcher) {
+        long nodes = (long) src.size + (long) dst.size;
+        double traversals = (double) nodes * (double) (Math.max(src.height, dst.height) + 1);
+        long lastChanceCells = getLastChanceMatrixCells();
+        switch (matcher) {
+            case "gumtree":
+                return new Cost(
+                        isomorphismTests * NANOS_PER_ISOMORPHISM_TEST + traversals * NANOS_PER_NODE
+                                + zsOperations(lastChanceCells) * NANOS_PER_MATRIX_CELL,
+                        nodes * BYTES_PER_NODE + 2L * Double.BYTES * lastChanceCells);
+            case "xy":
+                return new Cost(
+                        isomorphismTests * NANOS_PER_ISOMORPHISM_TEST + traversals * NANOS_PER_NODE,
+                        nodes * BYTES_PER_NODE);
+            case "change-distiller":
+                double labelLength = (src.labelLength + dst.labelLength) / (double) Math.max(1L, nodes);
+                double descendants = (src.descendants + dst.descendants)
+                        / (double) Math.max(1L, (long) src.inner + (long) dst.inner);
+                return new Cost(
+                        (double) src.leaves * (double) dst.leaves * labelLength * NANOS_PER_LABEL_CHAR
+                                + sameTypeInnerPairs * descendants * NANOS_PER_NODE,
+                        nodes * BYTES_PER_NODE + (long) src.leaves * (long) dst.leaves * BYTES_PER_NODE / 8L);
+            case "zs":
+                return new Cost(zsOperations(getZsMatrixCells()) * NANOS_PER_MATRIX_CELL,
+                        nodes * BYTES_PER_NODE + 2L * Double.BYTES * getZsMatrixCells());
+            case "rted":
+                // delta, deltaBit, costV, str, and the tree and forest distances of the edit mapping.
+                long cellBytes = Double.BYTES + Byte.BYTES + 3L * Long.BYTES + Integer.BYTES + 2L * Double.BYTES;
+                long ij = (long) Math.max(src.size, dst.size);
+                return new Cost(zsOperations(getRtedMatrixCells()) * NANOS_PER_MATRIX_CELL,
+                        nodes * BYTES_PER_NODE + cellBytes * getRtedMatrixCells() + Integer.BYTES * ij * ij);
+            default:
+                throw new IllegalArgumentException("No cost estimate for matcher " + matcher);
+        }
+    }
+
+    /**
+     * ZS fills each cell once per pair of key roots containing it, i.e. at most the product of the
+     * number of key roots containing a node, which is bounded by the height and by the number of leaves.
+     */
+    private double zsOperations(long cells) {
+        double src = Math.min(this.src.height + 1, this.src.leaves);
+        double dst = Math.min(this.dst.height + 1, this.dst.leaves);
+        return (double) cells * src * dst;
+    }
+
+    /**
+     * Statistics of a tree used by the estimates.
+     */
+    public static class Statistics {
+
+        private int size;
+
+        private int height;
+
+        private int leaves;
+
+        private int inner;
+
+        private long descendants;
+
+        private long labelLength;
+
+        private final Set<String> labels = new HashSet<>();
+
+        private final TIntIntMap heights = new TIntIntHashMap();
+
+        private final TIntIntMap innerTypes = new TIntIntHashMap();
+
+        Statistics(ITree root) {
+            for (ITree t : root.postOrder()) {
+                size++;
+                height = Math.max(height, t.getHeight());
+                heights.adjustOrPutValue(t.getHeight(), 1, 1);
+                if (t.isLeaf())
+                    leaves++;
+                else {
+                    inner++;
+                    descendants += t.getSize() - 1;
+                    innerTypes.adjustOrPutValue(t.getType(), 1, 1);
+                }
+                labelLength += t.getLabel().length();
+                labels.add(t.getLabel());
+            }
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getLeaves() {
+            return leaves;
+        }
+
+        /**
+         * @return the number of distinct labels.
+         */
+        public int getLabelDiversity() {
+            return labels.size();
+        }
+
+        /**
+         * @return the number of distinct heights of the subtrees.
+         */
+        public int getHeights() {
+            return heights.size();
+        }
+    }
+
+    /**
+     * Estimated time and peak memory of a diff.
+     */
+    public static class Cost implements Comparable<Cost> {
+
+        private final long nanos;
+
+        private final long bytes;
+
+        public Cost(double nanos, long bytes) {
+            this.nanos = (long) Math.min(nanos, (double) Long.MAX_VALUE);
+            this.bytes = bytes;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public long getMillis() {
+            return nanos / 1000000L;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Order the costs by time, then by memory.
+         */
+        @Override
+        public int compareTo(Cost o) {
+            int cmp = Long.compare(nanos, o.nanos);
+            return (cmp == 0) ? Long.compare(bytes, o.bytes) : cmp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d ms, %d MB", getMillis(), bytes / (1024L * 1024L));
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.matchers;
+
+import com.github.gumtreediff.matchers.optimal.rted.RtedMatcher;
+import com.github.gumtreediff.matchers.optimal.zs.ZsMatcher;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
+import com.github.gumtreediff.utils.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Plan a batch of diffs with the estimates of {@link CostEstimator}. Each pair of trees is given the
+ * first matcher of the preference list whose estimated peak memory fits in the heap budget, or is
+ * refused if none fits. The admitted pairs are ordered by decreasing estimated time, so that the
+ * largest diffs do not end up last in a parallel batch.
+ */
+public class DiffScheduler {
+
+    private final long budget;
+
+    private final List<String> matchers;
+
+    /**
+     * @param budget the heap budget of a single diff, in bytes.
+     * @param matchers the identifiers of the matchers to try, by order of preference: registered
+     *     matchers, zs or rted.
+     */
+    public DiffScheduler(long budget, String... matchers) {
+        if (matchers.length == 0)
+            throw new IllegalArgumentException("At least one matcher is required.");
+        for (String matcher : matchers) {
+            if (!CostEstimator.isEstimated(matcher))
+                throw new IllegalArgumentException("No cost estimate for matcher " + matcher);
+            if (!isOptimal(matcher) && Matchers.getInstance().getFactory(matcher) == null)
+                throw new IllegalArgumentException("Unregistered matcher " + matcher);
+        }
+        this.budget = budget;
+        this.matchers = Arrays.asList(matchers);
+    }
+
+    /**
+     * Schedule with a budget of three quarters of the maximum heap, preferring gumtree and downgrading
+     * to xy, which does not run ZS.
+     */
+    public DiffScheduler() {
+        this(Runtime.getRuntime().maxMemory() / 4L * 3L, "gumtree", "xy");
+    }
+
+    private static boolean isOptimal(String matcher) {
+        return "zs".equals(matcher) || "rted".equals(matcher);
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return the tasks of the given pairs, the admitted ones by decreasing estimated time, followed
+     *     by the refused ones in the given order.
+     */
+    public List<Task> schedule(List<Pair<TreeContext, TreeContext>> pairs) {
+        List<Task> admitted = new ArrayList<>();
+        List<Task> refused = new ArrayList<>();
+        for (Pair<TreeContext, TreeContext> pair : pairs) {
+            Task task = plan(pair);
+            if (task.isRefused())
+                refused.add(task);
+            else
+                admitted.add(task);
+        }
+        Collections.sort(admitted, Comparator.comparing(Task::getCost).reversed());
+        admitted.addAll(refused);
+        return admitted;
+    }
+
+    /**
+     * @return the task of the given pair.
+     */
+    public Task plan(Pair<TreeContext, TreeContext> pair) {
+        CostEstimator estimator = new CostEstimator(pair.getFirst(), pair.getSecond());
+        CostEstimator.Cost first = null;
+        for (String matcher : matchers) {
+            CostEstimator.Cost cost = estimator.estimate(matcher);
+            if (first == null)
+                first = cost;
+            if (cost.getBytes() <= budget)
+                return new Task(pair, matcher, cost, !matcher.equals(matchers.get(0)));
+        }
+        return new Task(pair, null, first, false);
+    }
+
+    public static class Task {
+
+        private final Pair<TreeContext, TreeContext> pair;
+
+        private final String matcher;
+
+        private final CostEstimator.Cost cost;
+
+        private final boolean downgraded;
+
+        private Task(Pair<TreeContext, TreeContext> pair, String matcher, CostEstimator.Cost cost,
+                     boolean downgraded) {
+            this.pair = pair;
+            this.matcher = matcher;
+            this.cost = cost;
+            this.downgraded = downgraded;
+        }
+
+        public Pair<TreeContext, TreeContext> getPair() {
+            return pair;
+        }
+
+        /**
+         * @return the identifier of the matcher to use, or null if the task is refused.
+         */
+        public String getMatcher() {
+            return matcher;
+        }
+
+        /**
+         * @return the estimated cost with the chosen matcher, or with the preferred one if the task is
+         *     refused.
+         */
+        public CostEstimator.Cost getCost() {
+            return cost;
+        }
+
+        public boolean isRefused() {
+            return matcher == null;
+        }
+
+        /**
+         * @return true if the task uses another matcher than the preferred one.
+         */
+        public boolean isDowngraded() {
+            return downgraded;
+        }
+
+        /**
+         * @return a new matcher of the pair, or null if the task is refused.
+         */
+        public Matcher newMatcher() {
+            if (isRefused())
+                return null;
+            ITree src = pair.getFirst().getRoot();
+            ITree dst = pair.getSecond().getRoot();
+            if ("zs".equals(matcher))
+                return new ZsMatcher(src, dst, new MappingStore());
+            else if ("rted".equals(matcher))
+                return new RtedMatcher(src, dst, new MappingStore());
+            else
+                return Matchers.getInstance().getMatcher(matcher, src, dst);
+        }
+    }
+}
@@ -21,6 +21,7 @@
 package com.github.gumtreediff.matchers;
 
 import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.utils.Deadline;
 
 import java.util.HashSet;
 import java.util.List;
@@ -37,6 +38,8 @@ public abstract class Matcher {
 
     protected final MappingStore mappings;
 
+    protected Deadline deadline = Deadline.NONE;
+
     public Matcher(ITree src, ITree dst, MappingStore mappings) {
         this.src = src;
         this.dst = dst;
@@ -45,6 +48,18 @@ public abstract class Matcher {
 
     public abstract void match();
 
+    /**
+     * Set the deadline checked by the matcher. Once it has expired, the matcher stops or falls back
+     * to a cheaper strategy, and records the stages it has cut short in the deadline.
+     */
+    public void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
+
+    public Deadline getDeadline() {
+        return deadline;
+    }
+
     public MappingStore getMappings() {
         return mappings;
     }
@@ -0,0 +1,351 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.matchers;
+
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.Tree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Match two trees partitioned into independent parts, e.g. the functions of a script. The partitions
+ * of the two trees are first anchored to each other: isomorphic partitions by hash, then partitions
+ * having the same name, then the remaining anonymous partitions of anchored parents by position. Each
+ * anchored pair, and the pair of roots, is then matched on its own, without the partitions it contains,
+ * by a registered matcher. These sub-diffs run in parallel and their mappings are stitched into the
+ * mapping store of this matcher. The nodes of unanchored partitions are left unmapped, hence become
+ * insertions and deletions in the edit script.
+ */
+public class PartitionedMatcher extends Matcher {
+
+    public static int THREADS = Integer.parseInt(System.getProperty("gt.pm.threads",
+            Integer.toString(Runtime.getRuntime().availableProcessors())));
+
+    private final List<ITree> srcPartitions;
+
+    private final List<ITree> dstPartitions;
+
+    private final Function<ITree, String> namer;
+
+    private final String matcher;
+
+    private final Set<ITree> srcCuts = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private final Set<ITree> dstCuts = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private final Map<ITree, ITree> anchors = new IdentityHashMap<>();
+
+    private final Set<ITree> anchoredDst = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private int hashAnchors;
+
+    private int nameAnchors;
+
+    private int positionAnchors;
+
+    /**
+     * @param srcPartitions the roots of the partitions of the source tree, proper descendants of it.
+     * @param dstPartitions the roots of the partitions of the destination tree, proper descendants of it.
+     * @param namer the name of a partition, or null if it is anonymous.
+     * @param matcher the identifier of the registered matcher used for the sub-diffs.
+     */
+    public PartitionedMatcher(ITree src, ITree dst, MappingStore store, List<ITree> srcPartitions,
+                              List<ITree> dstPartitions, Function<ITree, String> namer, String matcher) {
+        super(src, dst, store);
+        this.srcPartitions = inPreOrder(src, srcPartitions);
+        this.dstPartitions = inPreOrder(dst, dstPartitions);
+        srcCuts.addAll(this.srcPartitions);
+        dstCuts.addAll(this.dstPartitions);
+        this.namer = namer;
+        this.matcher = matcher;
+    }
+
+    private static List<ITree> inPreOrder(ITree root, List<ITree> partitions) {
+        Set<ITree> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        set.addAll(partitions);
+        set.remove(root);
+        List<ITree> ordered = new ArrayList<>();
+        for (ITree t : root.preOrder())
+            if (set.contains(t))
+                ordered.add(t);
+        return ordered;
+    }
+
+    @Override
+    public void match() {
+        anchors.clear();
+        anchoredDst.clear();
+        anchorByHash();
+        anchorByName();
+        anchorByPosition();
+
+        List<SubDiff> subDiffs = new ArrayList<>();
+        subDiffs.add(new SubDiff(src, dst));
+        for (ITree s : srcPartitions) {
+            ITree d = anchors.get(s);
+            if (d != null && !mappings.hasSrc(s))
+                subDiffs.add(new SubDiff(s, d));
+        }
+
+        for (List<Mapping> found : run(subDiffs))
+            for (Mapping m : found)
+                if (!(mappings.hasSrc(m.getFirst()) || mappings.hasDst(m.getSecond())))
+                    addMapping(m.getFirst(), m.getSecond());
+
+        LOGGER.fine(String.format("Partitions anchored: %d by hash, %d by name, %d by position, %d sub-diffs",
+                hashAnchors, nameAnchors, positionAnchors, subDiffs.size()));
+    }
+
+    /**
+     * Anchor the isomorphic partitions, outermost first, and map them entirely.
+     */
+    private void anchorByHash() {
+        Map<Integer, List<ITree>> dstByHash = new HashMap<>();
+        for (ITree d : dstPartitions)
+            dstByHash.computeIfAbsent(d.getHash(), h -> new ArrayList<>()).add(d);
+
+        for (ITree s : srcPartitions) {
+            if (isAnchored(s, true))
+                continue;
+            List<ITree> candidates = dstByHash.get(s.getHash());
+            if (candidates == null)
+                continue;
+            for (ITree d : candidates) {
+                if (!isAnchored(d, false) && s.isIsomorphicTo(d)) {
+                    anchor(s, d);
+                    addMappingRecursively(s, d);
+                    hashAnchors++;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Anchor the partitions having the same name. Partitions sharing a name are anchored in order.
+     */
+    private void anchorByName() {
+        Map<String, List<ITree>> dstByName = new HashMap<>();
+        for (ITree d : dstPartitions) {
+            String name = namer.apply(d);
+            if (name != null && !isAnchored(d, false))
+                dstByName.computeIfAbsent(name, n -> new ArrayList<>()).add(d);
+        }
+
+        for (ITree s : srcPartitions) {
+            String name = namer.apply(s);
+            if (name == null || isAnchored(s, true))
+                continue;
+            List<ITree> candidates = dstByName.get(name);
+            if (candidates != null && !candidates.isEmpty() && candidates.get(0).getType() == s.getType()) {
+                anchor(s, candidates.remove(0));
+                nameAnchors++;
+            }
+        }
+    }
+
+    /**
+     * Anchor the remaining anonymous partitions of anchored parents when both parents have the same
+     * number of them, in order.
+     */
+    private void anchorByPosition() {
+        Map<ITree, List<ITree>> srcChildren = anonymousByParent(srcPartitions, src, true);
+        Map<ITree, List<ITree>> dstChildren = anonymousByParent(dstPartitions, dst, false);
+        List<ITree> parents = new ArrayList<>();
+        parents.add(src);
+        parents.addAll(srcPartitions);
+        for (ITree s : parents) {
+            ITree d = (s == src) ? dst : anchors.get(s);
+            if (d == null)
+                continue;
+            List<ITree> srcAnonymous = srcChildren.get(s);
+            List<ITree> dstAnonymous = dstChildren.get(d);
+            if (srcAnonymous == null || dstAnonymous == null || srcAnonymous.size() != dstAnonymous.size())
+                continue;
+            for (int i = 0; i < srcAnonymous.size(); i++) {
+                if (srcAnonymous.get(i).getType() == dstAnonymous.get(i).getType()) {
+                    anchor(srcAnonymous.get(i), dstAnonymous.get(i));
+                    positionAnchors++;
+                }
+            }
+        }
+    }
+
+    private Map<ITree, List<ITree>> anonymousByParent(List<ITree> partitions, ITree root, boolean isSrc) {
+        Set<ITree> cuts = isSrc ? srcCuts : dstCuts;
+        Map<ITree, List<ITree>> byParent = new IdentityHashMap<>();
+        for (ITree t : partitions) {
+            if (isAnchored(t, isSrc) || namer.apply(t) != null)
+                continue;
+            ITree parent = t.getParent();
+            while (parent != root && !cuts.contains(parent))
+                parent = parent.getParent();
+            byParent.computeIfAbsent(parent, p -> new ArrayList<>()).add(t);
+        }
+        return byParent;
+    }
+
+    private void anchor(ITree src, ITree dst) {
+        anchors.put(src, dst);
+        anchoredDst.add(dst);
+    }
+
+    /**
+     * @return true if the given partition is anchored, or is mapped because it is nested in an isomorphic
+     *     anchored partition.
+     */
+    private boolean isAnchored(ITree partition, boolean isSrc) {
+        if (isSrc)
+            return anchors.containsKey(partition) || mappings.hasSrc(partition);
+        else
+            return anchoredDst.contains(partition) || mappings.hasDst(partition);
+    }
+
+    private List<List<Mapping>> run(List<SubDiff> subDiffs) {
+        try {
+            List<Future<List<Mapping>>> futures = Pool.INSTANCE.invokeAll(subDiffs);
+            List<List<Mapping>> results = new ArrayList<>(futures.size());
+            for (Future<List<Mapping>> future : futures)
+                results.add(future.get());
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while matching partitions", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Unable to match partitions", e.getCause());
+        }
+    }
+
+    /**
+     * The pool running the sub-diffs of all the partitioned matchers, created on first use. A fork/join
+     * pool lets a matcher running in one of its threads wait for its own sub-diffs.
+     */
+    private static class Pool {
+        static final ForkJoinPool INSTANCE = new ForkJoinPool(Math.max(1, THREADS));
+    }
+
+    /**
+     * @return the number of anchored partitions.
+     */
+    public int getAnchors() {
+        return anchors.size();
+    }
+
+    public int getHashAnchors() {
+        return hashAnchors;
+    }
+
+    public int getNameAnchors() {
+        return nameAnchors;
+    }
+
+    public int getPositionAnchors() {
+        return positionAnchors;
+    }
+
+    /**
+     * Matching of an anchored pair of partitions, without their nested partitions, on copies of the trees
+     * so that sub-diffs can run concurrently. Copies are made in the calling thread.
+     */
+    private class SubDiff implements Callable<List<Mapping>> {
+
+        private final Map<ITree, ITree> srcOrigins = new IdentityHashMap<>();
+
+        private final Map<ITree, ITree> dstOrigins = new IdentityHashMap<>();
+
+        private final Matcher subMatcher;
+
+        private final ITree src;
+
+        private final ITree dst;
+
+        SubDiff(ITree src, ITree dst) {
+            this.src = src;
+            this.dst = dst;
+            ITree srcCopy = copy(src, srcCuts, srcOrigins);
+            ITree dstCopy = copy(dst, dstCuts, dstOrigins);
+            srcCopy.refresh();
+            dstCopy.refresh();
+            subMatcher = Matchers.getInstance().getMatcher(matcher, srcCopy, dstCopy);
+            if (subMatcher == null)
+                throw new IllegalArgumentException("Unregistered matcher " + matcher);
+            subMatcher.setDeadline(deadline);
+        }
+
+        @Override
+        public List<Mapping> call() {
+            subMatcher.match();
+            List<Mapping> found = new ArrayList<>();
+            if (src.hasSameType(dst))
+                found.add(new Mapping(src, dst));
+            for (Mapping m : subMatcher.getMappings())
+                found.add(new Mapping(srcOrigins.get(m.getFirst()), dstOrigins.get(m.getSecond())));
+            return found;
+        }
+    }
+
+    /**
+     * Copy the given tree without the given subtrees, keeping the identifiers of the nodes. The copy is
+     * iterative, so that deep trees do not overflow the stack.
+     */
+    private static ITree copy(ITree tree, Set<ITree> cuts, Map<ITree, ITree> origins) {
+        ITree root = copyNode(tree, origins);
+        Deque<ITree> originals = new ArrayDeque<>();
+        Deque<ITree> copies = new ArrayDeque<>();
+        originals.push(tree);
+        copies.push(root);
+        while (!originals.isEmpty()) {
+            ITree original = originals.pop();
+            ITree copy = copies.pop();
+            for (ITree child : original.getChildren()) {
+                if (!cuts.contains(child)) {
+                    ITree childCopy = copyNode(child, origins);
+                    copy.addChild(childCopy);
+                    originals.push(child);
+                    copies.push(childCopy);
+                }
+            }
+        }
+        return root;
+    }
+
+    private static ITree copyNode(ITree tree, Map<ITree, ITree> origins) {
+        ITree copy = new Tree(tree.getType(), tree.getLabel());
+        copy.setId(tree.getId());
+        copy.setPos(tree.getPos());
+        copy.setLength(tree.getLength());
+        origins.put(copy, tree);
+        return copy;
+    }
+}
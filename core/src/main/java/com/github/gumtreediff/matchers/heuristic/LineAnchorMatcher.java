@@ -0,0 +1,207 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.matchers.heuristic;
+
+import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.matchers.Matcher;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.utils.StringAlgorithms;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Anchors the parts of the trees that are in unchanged regions of the source texts. A line diff
+ * (see {@link StringAlgorithms#myers(int[], int[], int)}) is computed between the two texts, and the
+ * source subtrees whose positions fall entirely in a run of unchanged lines are mapped to the isomorphic
+ * destination subtree at the translated position. The remaining nodes are left to the next matchers,
+ * see {@link com.github.gumtreediff.matchers.CompositeMatchers.LineAnchoredGumtree}.
+ * The trees must have their positions set by the generator against the given texts.
+ */
+public class LineAnchorMatcher extends Matcher {
+
+    public static int MAX_EDITS = Integer.parseInt(System.getProperty("gt.lam.me", "2000"));
+
+    private final String srcText;
+
+    private final String dstText;
+
+    private int[] runStarts;
+
+    private int[] runEnds;
+
+    private int[] runDeltas;
+
+    private int anchored;
+
+    public LineAnchorMatcher(ITree src, ITree dst, MappingStore store, String srcText, String dstText) {
+        super(src, dst, store);
+        this.srcText = srcText;
+        this.dstText = dstText;
+    }
+
+    @Override
+    public void match() {
+        anchored = 0;
+        if (!computeRuns()) {
+            LOGGER.fine("Too many line edits, no anchoring");
+            return;
+        }
+
+        Map<Long, List<ITree>> dstIndex = new HashMap<>();
+        for (ITree t : dst.preOrder())
+            if (t.getPos() != ITree.NO_VALUE && t.getLength() != ITree.NO_VALUE)
+                dstIndex.computeIfAbsent(key(t.getPos(), t.getLength()), k -> new ArrayList<>()).add(t);
+
+        Deque<ITree> stack = new ArrayDeque<>();
+        pushChildren(stack, src);
+        while (!stack.isEmpty()) {
+            if (deadline.isExpired()) {
+                deadline.cut(getClass().getSimpleName());
+                break;
+            }
+            ITree t = stack.pop();
+            ITree anchor = findAnchor(t, dstIndex);
+            if (anchor != null) {
+                addMappingRecursively(t, anchor);
+                anchored += t.getSize();
+            } else
+                pushChildren(stack, t);
+        }
+        LOGGER.fine(String.format("%d nodes anchored on %d unchanged line runs", anchored, runStarts.length));
+    }
+
+    /**
+     * Returns the number of source nodes mapped by the last call to {@link #match()}.
+     */
+    public int getAnchored() {
+        return anchored;
+    }
+
+    private static void pushChildren(Deque<ITree> stack, ITree t) {
+        List<ITree> children = t.getChildren();
+        for (int i = children.size() - 1; i >= 0; i--)
+            stack.push(children.get(i));
+    }
+
+    private ITree findAnchor(ITree t, Map<Long, List<ITree>> dstIndex) {
+        if (t.getPos() == ITree.NO_VALUE || t.getLength() == ITree.NO_VALUE)
+            return null;
+        int run = Arrays.binarySearch(runStarts, t.getPos());
+        if (run < 0)
+            run = -run - 2;
+        if (run < 0 || t.getEndPos() > runEnds[run])
+            return null;
+        List<ITree> candidates = dstIndex.get(key(t.getPos() + runDeltas[run], t.getLength()));
+        if (candidates == null)
+            return null;
+        for (ITree candidate : candidates)
+            if (candidate.getType() == t.getType() && !mappings.hasDst(candidate) && t.isIsomorphicTo(candidate))
+                return candidate;
+        return null;
+    }
+
+    private static long key(int pos, int length) {
+        return ((long) pos << 32) | (length & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Computes the runs of unchanged lines, as source character ranges with the offset to add to
+     * translate them in the destination text.
+     *
+     * @return false if the texts differ by more than {@link #MAX_EDITS} lines.
+     */
+    private boolean computeRuns() {
+        Map<String, Integer> symbols = new HashMap<>();
+        int[] srcLines = lineStarts(srcText);
+        int[] dstLines = lineStarts(dstText);
+        int[] srcSymbols = symbols(srcText, srcLines, symbols);
+        int[] dstSymbols = symbols(dstText, dstLines, symbols);
+        List<int[]> matches = StringAlgorithms.myers(srcSymbols, dstSymbols, MAX_EDITS);
+        if (matches == null) {
+            runStarts = runEnds = runDeltas = new int[0];
+            return false;
+        }
+
+        List<int[]> runs = new ArrayList<>();
+        int[] current = null;
+        int last0 = -2;
+        int last1 = -2;
+        for (int[] match : matches) {
+            if (current == null || match[0] != last0 + 1 || match[1] != last1 + 1) {
+                current = new int[] {srcLines[match[0]], 0, dstLines[match[1]] - srcLines[match[0]]};
+                runs.add(current);
+            }
+            current[1] = srcLines[match[0] + 1];
+            last0 = match[0];
+            last1 = match[1];
+        }
+        runStarts = new int[runs.size()];
+        runEnds = new int[runs.size()];
+        runDeltas = new int[runs.size()];
+        for (int i = 0; i < runs.size(); i++) {
+            runStarts[i] = runs.get(i)[0];
+            runEnds[i] = runs.get(i)[1];
+            runDeltas[i] = runs.get(i)[2];
+        }
+        return true;
+    }
+
+    /**
+     * Returns the start offsets of the lines, followed by the length of the text. The line terminators
+     * belong to the lines, so that matched lines have the same length in both texts.
+     */
+    private static int[] lineStarts(String text) {
+        int[] starts = new int[16];
+        int lines = 0;
+        starts[lines++] = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n' && i + 1 < text.length()) {
+                if (lines == starts.length)
+                    starts = Arrays.copyOf(starts, lines * 2);
+                starts[lines++] = i + 1;
+            }
+        }
+        if (lines == starts.length)
+            starts = Arrays.copyOf(starts, lines + 1);
+        starts[lines++] = text.length();
+        return Arrays.copyOf(starts, lines);
+    }
+
+    private static int[] symbols(String text, int[] lineStarts, Map<String, Integer> symbols) {
+        int[] result = new int[lineStarts.length - 1];
+        for (int i = 0; i < result.length; i++) {
+            String line = text.substring(lineStarts[i], lineStarts[i + 1]);
+            Integer symbol = symbols.get(line);
+            if (symbol == null) {
+                symbol = symbols.size();
+                symbols.put(line, symbol);
+            }
+            result[i] = symbol;
+        }
+        return result;
+    }
+}
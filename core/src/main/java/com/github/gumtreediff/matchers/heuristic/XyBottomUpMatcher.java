@@ -22,6 +22,7 @@ package com.github.gumtreediff.matchers.heuristic;
 
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.Matcher;
+import com.github.gumtreediff.matchers.heuristic.gt.CandidateIndex;
 import com.github.gumtreediff.tree.ITree;
 import com.github.gumtreediff.tree.TreeMap;
 
@@ -38,8 +39,11 @@ public class XyBottomUpMatcher extends Matcher {
 
     private static final double SIM_THRESHOLD = Double.parseDouble(System.getProperty("gumtree.match.xy.sim", "0.5"));
 
+    private final CandidateIndex index;
+
     public XyBottomUpMatcher(ITree src, ITree dst, MappingStore store) {
         super(src, dst, store);
+        index = new CandidateIndex(dst, store, store::hasDst);
     }
 
     public void match() {
@@ -48,47 +52,21 @@ public class XyBottomUpMatcher extends Matcher {
                 addMapping(src, this.dst);
                 lastChanceMatch(src, this.dst);
             } else if (!(mappings.hasSrc(src) || src.isLeaf())) {
-                Set<ITree> candidates = getDstCandidates(src);
-                ITree best = null;
-                double max = -1D;
-
-                for (ITree cand: candidates ) {
-                    double sim = jaccardSimilarity(src, cand);
-                    if (sim > max && sim >= SIM_THRESHOLD) {
-                        max = sim;
-                        best = cand;
-                    }
-                }
-
+                List<ITree> candidates = getDstCandidates(src);
+                ITree best = index.bestCandidate(candidates, SIM_THRESHOLD, -1D);
                 if (best != null) {
                     lastChanceMatch(src, best);
                     addMapping(src, best);
                 }
             }
         }
+        LOGGER.fine(String.format("Bottom-up similarities: %d computed, %d avoided",
+                index.getComputedSimilarities(), index.getAvoidedSimilarities()));
     }
 
-    private Set<ITree> getDstCandidates(ITree src) {
-        Set<ITree> seeds = new HashSet<>();
-        for (ITree c: src.getDescendants()) {
-            ITree m = mappings.getDst(c);
-            if (m != null) seeds.add(m);
-        }
-        Set<ITree> candidates = new HashSet<>();
-        Set<ITree> visited = new HashSet<>();
-        for (ITree seed: seeds) {
-            while (seed.getParent() != null) {
-                ITree parent = seed.getParent();
-                if (visited.contains(parent))
-                    break;
-                visited.add(parent);
-                if (parent.getType() == src.getType() && !mappings.hasDst(parent))
-                    candidates.add(parent);
-                seed = parent;
-            }
-        }
-
-        return candidates;
+    private List<ITree> getDstCandidates(ITree src) {
+        index.index(src);
+        return index.getCandidates(src.getType());
     }
 
     private void lastChanceMatch(ITree src, ITree dst) {
@@ -27,10 +27,7 @@ import com.github.gumtreediff.matchers.optimal.zs.ZsMatcher;
 import com.github.gumtreediff.tree.ITree;
 import com.github.gumtreediff.tree.TreeMap;
 
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 public abstract class AbstractBottomUpMatcher extends Matcher {
     public static int SIZE_THRESHOLD =
@@ -44,6 +41,8 @@ public abstract class AbstractBottomUpMatcher extends Matcher {
     protected TreeMap mappedSrc;
     protected TreeMap mappedDst;
 
+    private CandidateIndex candidateIndex;
+
     public AbstractBottomUpMatcher(ITree src, ITree dst, MappingStore store) {
         super(src, dst, store);
         srcIds = new TreeMap(src);
@@ -57,31 +56,40 @@ public abstract class AbstractBottomUpMatcher extends Matcher {
         }
     }
 
+    /**
+     * @return the index of the destination candidates, the last indexed node being the last one
+     *     given to {@link #getDstCandidates(ITree)}.
+     */
+    protected CandidateIndex getCandidateIndex() {
+        if (candidateIndex == null)
+            candidateIndex = new CandidateIndex(dst, mappings, t -> isDstMatched(t) || t.isRoot());
+        return candidateIndex;
+    }
+
+    /**
+     * @return the candidates of the given node, which are only valid until another node is indexed.
+     */
     protected List<ITree> getDstCandidates(ITree src) {
-        List<ITree> seeds = new ArrayList<>();
-        for (ITree c: src.getDescendants()) {
-            ITree m = mappings.getDst(c);
-            if (m != null) seeds.add(m);
-        }
-        List<ITree> candidates = new ArrayList<>();
-        Set<ITree> visited = new HashSet<>();
-        for (ITree seed: seeds) {
-            while (seed.getParent() != null) {
-                ITree parent = seed.getParent();
-                if (visited.contains(parent))
-                    break;
-                visited.add(parent);
-                if (parent.getType() == src.getType() && !isDstMatched(parent) && !parent.isRoot())
-                    candidates.add(parent);
-                seed = parent;
-            }
-        }
+        CandidateIndex index = getCandidateIndex();
+        index.index(src);
+        return index.getCandidates(src.getType());
+    }
 
-        return candidates;
+    protected void logSimilarities() {
+        CandidateIndex index = getCandidateIndex();
+        LOGGER.fine(String.format("Bottom-up similarities: %d computed, %d avoided",
+                index.getComputedSimilarities(), index.getAvoidedSimilarities()));
     }
 
     //FIXME checks if it is better or not to remove the already found mappings.
     protected void lastChanceMatch(ITree src, ITree dst) {
+        if (deadline.isExpired()) {
+            deadline.cut(getClass().getSimpleName() + ".lastChanceMatch");
+            mappedSrc.putTrees(src);
+            mappedDst.putTrees(dst);
+            return;
+        }
+
         ITree cSrc = src.deepCopy();
         ITree cDst = dst.deepCopy();
         removeMatched(cSrc, true);
@@ -90,6 +98,7 @@ public abstract class AbstractBottomUpMatcher extends Matcher {
         if (cSrc.getSize() < AbstractBottomUpMatcher.SIZE_THRESHOLD
                 || cDst.getSize() < AbstractBottomUpMatcher.SIZE_THRESHOLD) {
             Matcher m = new ZsMatcher(cSrc, cDst, new MappingStore());
+            m.setDeadline(deadline);
             m.match();
             for (Mapping candidate: m.getMappings()) {
                 ITree left = srcIds.getTree(candidate.getFirst().getId());
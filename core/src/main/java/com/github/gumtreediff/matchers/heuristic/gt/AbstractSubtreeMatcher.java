@@ -25,9 +25,12 @@ import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.MultiMappingStore;
 import com.github.gumtreediff.tree.ITree;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Predicate;
 
 public abstract class AbstractSubtreeMatcher extends Matcher {
 
@@ -47,10 +50,17 @@ public abstract class AbstractSubtreeMatcher extends Matcher {
     public void match() {
         MultiMappingStore multiMappings = new MultiMappingStore();
 
-        PriorityTreeList srcTrees = new PriorityTreeList(src);
-        PriorityTreeList dstTrees = new PriorityTreeList(dst);
+        // Subtrees already mapped, e.g. by a pre-pass, are left out.
+        PriorityTreeList srcTrees = new PriorityTreeList(src, mappings::hasSrc);
+        PriorityTreeList dstTrees = new PriorityTreeList(dst, mappings::hasDst);
 
         while (srcTrees.peekHeight() != -1 && dstTrees.peekHeight() != -1) {
+            if (deadline.isExpired()) {
+                // Keep the isomorphic subtrees found so far, the smaller ones are left to the next stages.
+                deadline.cut(getClass().getSimpleName());
+                break;
+            }
+
             while (srcTrees.peekHeight() != dstTrees.peekHeight())
                 popLarger(srcTrees, dstTrees);
 
@@ -123,8 +133,11 @@ public abstract class AbstractSubtreeMatcher extends Matcher {
 
         private int currentIdx;
 
+        private final Predicate<ITree> mapped;
+
         @SuppressWarnings("unchecked")
-        public PriorityTreeList(ITree tree) {
+        public PriorityTreeList(ITree tree, Predicate<ITree> mapped) {
+            this.mapped = mapped;
             int listSize = tree.getHeight() - MIN_HEIGHT + 1;
             if (listSize < 0)
                 listSize = 0;
@@ -133,6 +146,8 @@ public abstract class AbstractSubtreeMatcher extends Matcher {
             trees = (List<ITree>[]) new ArrayList[listSize];
             maxHeight = tree.getHeight();
             addTree(tree);
+            // The tree itself is left out when it is already mapped.
+            updateHeight();
         }
 
         private int idx(ITree tree) {
@@ -148,11 +163,30 @@ public abstract class AbstractSubtreeMatcher extends Matcher {
         }
 
         private void addTree(ITree tree) {
-            if (tree.getHeight() >= MIN_HEIGHT) {
-                int idx = idx(tree);
-                if (trees[idx] == null) trees[idx] = new ArrayList<>();
-                trees[idx].add(tree);
+            if (tree.getHeight() < MIN_HEIGHT)
+                return;
+            if (!mapped.test(tree)) {
+                add(tree);
+                return;
             }
+            // A mapped tree is left out, but not its unmapped descendants, e.g. below roots mapped beforehand.
+            Deque<ITree> pending = new ArrayDeque<>(tree.getChildren());
+            while (!pending.isEmpty()) {
+                ITree t = pending.pop();
+                if (t.getHeight() < MIN_HEIGHT)
+                    continue;
+                if (!mapped.test(t))
+                    add(t);
+                else
+                    for (int i = t.getChildren().size() - 1; i >= 0; i--)
+                        pending.push(t.getChild(i));
+            }
+        }
+
+        private void add(ITree tree) {
+            int idx = idx(tree);
+            if (trees[idx] == null) trees[idx] = new ArrayList<>();
+            trees[idx].add(tree);
         }
 
         public List<ITree> open() {
@@ -0,0 +1,320 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.matchers.heuristic.gt;
+
+import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.tree.ITree;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Index of the destination candidates of a bottom-up matcher. Indexing a source node walks up from the
+ * destinations of its mapped descendants, stopping at the first ancestor already reached, so each
+ * destination ancestor is visited once. The descendants are counted on the first ancestor reached from
+ * them, and these counts are then summed up the reached ancestors, children first, which gives for each
+ * of them the number of common descendants of the two nodes. The reached ancestors that are not matched
+ * are bucketed by type in the order they are first reached.
+ *
+ * <p>Counters are stored in arrays indexed by the post-order rank of the destination nodes and reset
+ * lazily, so similarities of the indexed node are computed without browsing descendants again.</p>
+ *
+ * <p>The number of common descendants of two nodes is at most the number of mapped descendants of the
+ * source node, and at most the number of descendants of the destination node. This gives an upper bound
+ * of the similarity used to rank the candidates and to stop scoring them as soon as none of the remaining
+ * ones can be selected. The index counts the similarities computed and the ones avoided this way.</p>
+ */
+public class CandidateIndex {
+
+    private final MappingStore mappings;
+
+    private final Predicate<ITree> matched;
+
+    private final TIntIntMap slots = new TIntIntHashMap(16, 0.5f, -1, -1);
+
+    private final int[] parents;
+
+    private final int[] dstDescendants;
+
+    private final int[] counts;
+
+    private final int[] stamps;
+
+    private int stamp;
+
+    private int[] reached = new int[16];
+
+    private int reachedCount;
+
+    private final TIntObjectMap<List<ITree>> buckets = new TIntObjectHashMap<>();
+
+    private final List<List<ITree>> usedBuckets = new ArrayList<>();
+
+    private ITree indexed;
+
+    private int srcDescendants;
+
+    private int mappedDescendants;
+
+    private double bestSimilarity;
+
+    private long computedSimilarities;
+
+    private long avoidedSimilarities;
+
+    /**
+     * @param matched tells which destination nodes are matched, and cannot be candidates
+     */
+    public CandidateIndex(ITree dst, MappingStore mappings, Predicate<ITree> matched) {
+        this.mappings = mappings;
+        this.matched = matched;
+        int size = 0;
+        for (ITree t : dst.postOrder())
+            slots.put(t.getId(), size++);
+        parents = new int[size];
+        dstDescendants = new int[size];
+        counts = new int[size];
+        stamps = new int[size];
+        for (ITree t : dst.postOrder()) {
+            int slot = slot(t);
+            parents[slot] = (t == dst) ? -1 : slot(t.getParent());
+            if (parents[slot] != -1)
+                dstDescendants[parents[slot]] += dstDescendants[slot] + 1;
+        }
+    }
+
+    private int slot(ITree dst) {
+        int slot = slots.get(dst.getId());
+        if (slot == -1)
+            throw new IllegalArgumentException("Not a node of the indexed destination: " + dst.toShortString());
+        return slot;
+    }
+
+    /**
+     * Index the given source node, replacing the previously indexed one.
+     */
+    public void index(ITree src) {
+        stamp++;
+        for (List<ITree> bucket : usedBuckets)
+            bucket.clear();
+        usedBuckets.clear();
+        indexed = src;
+        srcDescendants = -1;
+        mappedDescendants = 0;
+        reachedCount = 0;
+        for (ITree t : src.preOrder()) {
+            srcDescendants++;
+            ITree m = mappings.getDst(t);
+            if (m != null && t != src) {
+                mappedDescendants++;
+                if (m.getParent() != null)
+                    reach(m.getParent());
+            }
+        }
+
+        // A descendant has a smaller post-order rank than its ancestors.
+        Arrays.sort(reached, 0, reachedCount);
+        for (int i = 0; i < reachedCount; i++) {
+            int parent = parents[reached[i]];
+            if (parent != -1)
+                counts[parent] += counts[reached[i]];
+        }
+    }
+
+    private void reach(ITree dst) {
+        int slot = slot(dst);
+        if (stamps[slot] == stamp) {
+            counts[slot]++;
+            return;
+        }
+        stamps[slot] = stamp;
+        counts[slot] = 1;
+        add(slot, dst);
+        for (ITree ancestor = dst.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+            slot = slot(ancestor);
+            if (stamps[slot] == stamp)
+                break;
+            stamps[slot] = stamp;
+            counts[slot] = 0;
+            add(slot, ancestor);
+        }
+    }
+
+    private void add(int slot, ITree ancestor) {
+        if (reachedCount == reached.length)
+            reached = Arrays.copyOf(reached, reachedCount * 2);
+        reached[reachedCount++] = slot;
+        if (!matched.test(ancestor))
+            bucket(ancestor.getType()).add(ancestor);
+    }
+
+    private List<ITree> bucket(int type) {
+        List<ITree> bucket = buckets.get(type);
+        if (bucket == null) {
+            bucket = new ArrayList<>();
+            buckets.put(type, bucket);
+        }
+        if (bucket.isEmpty())
+            usedBuckets.add(bucket);
+        return bucket;
+    }
+
+    /**
+     * @return the last indexed source node
+     */
+    public ITree getIndexed() {
+        return indexed;
+    }
+
+    /**
+     * @return the unmatched destination ancestors of the mapped descendants of the indexed node having
+     *     the given type, in the order they have been reached.
+     */
+    public List<ITree> getCandidates(int type) {
+        List<ITree> bucket = buckets.get(type);
+        return (bucket == null) ? Collections.emptyList() : Collections.unmodifiableList(bucket);
+    }
+
+    /**
+     * @return the number of descendants of the indexed node mapped to a descendant of the given node.
+     */
+    public int numberOfCommonDescendants(ITree dst) {
+        int slot = slot(dst);
+        return (stamps[slot] == stamp) ? counts[slot] : 0;
+    }
+
+    /**
+     * @see com.github.gumtreediff.matchers.Matcher#jaccardSimilarity(ITree, ITree)
+     */
+    public double jaccardSimilarity(ITree dst) {
+        double num = (double) numberOfCommonDescendants(dst);
+        double den = (double) srcDescendants + (double) dstDescendants[slot(dst)] - num;
+        return num / den;
+    }
+
+    /**
+     * @see com.github.gumtreediff.matchers.Matcher#diceSimilarity(ITree, ITree)
+     */
+    public double diceSimilarity(ITree dst) {
+        double c = (double) numberOfCommonDescendants(dst);
+        return (2D * c) / ((double) srcDescendants + (double) dstDescendants[slot(dst)]);
+    }
+
+    /**
+     * @return an upper bound of the jaccard similarity of the indexed node with the given node.
+     */
+    public double jaccardUpperBound(ITree dst) {
+        return jaccardUpperBound(srcDescendants, mappedDescendants, dstDescendants[slot(dst)]);
+    }
+
+    /**
+     * @return an upper bound of the jaccard similarity of two nodes having the given number of
+     *     descendants, the source one having the given number of mapped descendants.
+     */
+    public static double jaccardUpperBound(int srcDescendants, int mappedSrcDescendants, int dstDescendants) {
+        double common = (double) Math.min(mappedSrcDescendants, dstDescendants);
+        return common / ((double) srcDescendants + (double) dstDescendants - common);
+    }
+
+    /**
+     * Indicate whether or not one of the given candidates may have a jaccard similarity with the given
+     * source node, not necessarily indexed, that is at least the threshold and greater than the given
+     * similarity. If not, the candidates are counted as avoided.
+     */
+    public boolean mayBeat(ITree src, List<ITree> candidates, double threshold, double similarity) {
+        int descendants = src.getSize() - 1;
+        for (ITree candidate : candidates) {
+            double bound = jaccardUpperBound(descendants, descendants, dstDescendants[slot(candidate)]);
+            if (bound >= threshold && bound > similarity)
+                return true;
+        }
+        avoidedSimilarities += candidates.size();
+        return false;
+    }
+
+    /**
+     * Select the candidate having the highest jaccard similarity with the indexed node, this similarity
+     * being at least the threshold and greater than the given similarity. As for a plain scan of the
+     * candidates, ties are won by the first candidate of the list. The candidates are scored by decreasing
+     * upper bound, until the bound of the next one shows it cannot be selected.
+     *
+     * @return the selected candidate, or null if none reaches the threshold and the given similarity.
+     * @see #getBestSimilarity()
+     */
+    public ITree bestCandidate(List<ITree> candidates, double threshold, double similarity) {
+        int size = candidates.size();
+        double[] bounds = new double[size];
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            bounds[i] = jaccardUpperBound(candidates.get(i));
+            order[i] = i;
+        }
+        Arrays.sort(order, (i1, i2) -> Double.compare(bounds[i2], bounds[i1]));
+
+        int best = -1;
+        double max = -1D;
+        for (int rank = 0; rank < size; rank++) {
+            int i = order[rank];
+            double bound = bounds[i];
+            if (bound < threshold || bound <= similarity || bound < max || (bound == max && i > best)) {
+                avoidedSimilarities += size - rank;
+                break;
+            }
+            double sim = jaccardSimilarity(candidates.get(i));
+            computedSimilarities++;
+            if (sim >= threshold && sim > similarity && (sim > max || (sim == max && i < best))) {
+                max = sim;
+                best = i;
+            }
+        }
+        bestSimilarity = max;
+        return (best == -1) ? null : candidates.get(best);
+    }
+
+    /**
+     * @return the similarity of the candidate returned by the last call to
+     *     {@link #bestCandidate(List, double, double)}.
+     */
+    public double getBestSimilarity() {
+        return bestSimilarity;
+    }
+
+    /**
+     * @return the number of similarities computed to select candidates.
+     */
+    public long getComputedSimilarities() {
+        return computedSimilarities;
+    }
+
+    /**
+     * @return the number of similarities that did not need to be computed thanks to their upper bound.
+     */
+    public long getAvoidedSimilarities() {
+        return avoidedSimilarities;
+    }
+}
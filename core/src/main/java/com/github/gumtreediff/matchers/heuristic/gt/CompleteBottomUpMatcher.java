@@ -23,6 +23,7 @@ package com.github.gumtreediff.matchers.heuristic.gt;
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.tree.ITree;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -49,19 +50,21 @@ public class CompleteBottomUpMatcher extends AbstractBottomUpMatcher {
                         .filter(p -> p.getType() == t.getType())
                         .collect(Collectors.toList());
 
-                List<ITree> dstCandidates = getDstCandidates(t);
+                // The source candidates are indexed in turn, which replaces the candidates of t
+                List<ITree> dstCandidates = new ArrayList<>(getDstCandidates(t));
                 ITree srcBest = null;
                 ITree dstBest = null;
                 double max = -1D;
+                CandidateIndex index = getCandidateIndex();
                 for (ITree srcCand: srcCandidates) {
-                    for (ITree dstCand: dstCandidates) {
-
-                        double sim = jaccardSimilarity(srcCand, dstCand);
-                        if (sim > max && sim >= SIM_THRESHOLD) {
-                            max = sim;
-                            srcBest = srcCand;
-                            dstBest = dstCand;
-                        }
+                    if (!index.mayBeat(srcCand, dstCandidates, SIM_THRESHOLD, max))
+                        continue;
+                    index.index(srcCand);
+                    ITree dstCand = index.bestCandidate(dstCandidates, SIM_THRESHOLD, max);
+                    if (dstCand != null) {
+                        max = index.getBestSimilarity();
+                        srcBest = srcCand;
+                        dstBest = dstCand;
                     }
                 }
 
@@ -71,5 +74,6 @@ public class CompleteBottomUpMatcher extends AbstractBottomUpMatcher {
                 }
             }
         }
+        logSimilarities();
     }
 }
@@ -47,22 +47,13 @@ public class GreedyBottomUpMatcher extends AbstractBottomUpMatcher {
                 break;
             } else if (!(isSrcMatched(t) || t.isLeaf())) {
                 List<ITree> candidates = getDstCandidates(t);
-                ITree best = null;
-                double max = -1D;
-
-                for (ITree cand: candidates) {
-                    double sim = jaccardSimilarity(t, cand);
-                    if (sim > max && sim >= SIM_THRESHOLD) {
-                        max = sim;
-                        best = cand;
-                    }
-                }
-
+                ITree best = getCandidateIndex().bestCandidate(candidates, SIM_THRESHOLD, -1D);
                 if (best != null) {
                     lastChanceMatch(t, best);
                     addMapping(t, best);
                 }
             }
         }
+        logSimilarities();
     }
 }
@@ -20,15 +20,24 @@
 
 package com.github.gumtreediff.matchers.heuristic.gt;
 
-import com.github.gumtreediff.utils.HungarianAlgorithm;
+import com.github.gumtreediff.matchers.Mapping;
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.MultiMappingStore;
 import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.utils.SparseAssignmentAlgorithm;
 
 import java.util.*;
 
 public class HungarianSubtreeMatcher extends AbstractSubtreeMatcher {
 
+    /**
+     * Ambiguous groups having more candidate mappings than this threshold are solved
+     * greedily instead of optimally.
+     */
+    public static int GREEDY_THRESHOLD = Integer.parseInt(System.getProperty("gt.hsm.gt", "10000"));
+
+    private final Map<Mapping, Double> parentSimilarities = new HashMap<>();
+
     public HungarianSubtreeMatcher(ITree src, ITree dst, MappingStore store) {
         super(src, dst, store);
     }
@@ -43,9 +52,11 @@ public class HungarianSubtreeMatcher extends AbstractSubtreeMatcher {
                 MultiMappingStore ambiguous = new MultiMappingStore();
                 Set<ITree> adsts = multiMappings.getDst(src);
                 Set<ITree> asrcs = multiMappings.getSrc(multiMappings.getDst(src).iterator().next());
+                // Only the isomorphic pairs, found by the matcher, are candidate edges of the assignment.
                 for (ITree asrc : asrcs)
                     for (ITree adst: adsts)
-                        ambiguous.link(asrc ,adst);
+                        if (multiMappings.has(asrc, adst))
+                            ambiguous.link(asrc, adst);
                 ambiguousList.add(ambiguous);
                 ignored.addAll(asrcs);
             }
@@ -53,29 +64,76 @@ public class HungarianSubtreeMatcher extends AbstractSubtreeMatcher {
         Collections.sort(ambiguousList, new MultiMappingComparator());
 
         for (MultiMappingStore ambiguous: ambiguousList) {
-            System.out.println("hungarian try.");
             List<ITree> lstSrcs = new ArrayList<>(ambiguous.getSrcs());
             List<ITree> lstDsts = new ArrayList<>(ambiguous.getDsts());
-            double[][] matrix = new double[lstSrcs.size()][lstDsts.size()];
+            Map<ITree, Integer> dstIndexes = new HashMap<>();
+            for (int j = 0; j < lstDsts.size(); j++)
+                dstIndexes.put(lstDsts.get(j), j);
+
+            // The mappings of the previous groups change the similarity of the parents.
+            parentSimilarities.clear();
+            List<int[]> edges = new ArrayList<>();
+            List<Double> costs = new ArrayList<>();
             for (int i = 0; i < lstSrcs.size(); i++)
-                for (int j = 0; j < lstDsts.size(); j++)
-                    matrix[i][j] = cost(lstSrcs.get(i), lstDsts.get(j));
+                for (ITree adst : ambiguous.getDst(lstSrcs.get(i))) {
+                    int j = dstIndexes.get(adst);
+                    edges.add(new int[] {i, j});
+                    costs.add(cost(lstSrcs.get(i), adst));
+                }
+
+            int[] solutions;
+            if (edges.size() > GREEDY_THRESHOLD)
+                solutions = greedyAssignment(lstSrcs.size(), lstDsts.size(), edges, costs);
+            else {
+                SparseAssignmentAlgorithm algorithm = new SparseAssignmentAlgorithm(lstSrcs.size(), lstDsts.size());
+                for (int e = 0; e < edges.size(); e++)
+                    algorithm.addEdge(edges.get(e)[0], edges.get(e)[1], costs.get(e));
+                solutions = algorithm.execute();
+            }
 
-            HungarianAlgorithm hgAlg = new HungarianAlgorithm(matrix);
-            int[] solutions = hgAlg.execute();
             for (int i = 0; i < solutions.length; i++) {
                 int dstIdx = solutions[i];
                 if (dstIdx != -1) addMappingRecursively(lstSrcs.get(i), lstDsts.get(dstIdx));
             }
         }
+        parentSimilarities.clear();
+    }
+
+    private int[] greedyAssignment(int srcs, int dsts, List<int[]> edges, List<Double> costs) {
+        Integer[] order = new Integer[edges.size()];
+        for (int e = 0; e < order.length; e++)
+            order[e] = e;
+        Arrays.sort(order, (e1, e2) -> Double.compare(costs.get(e1), costs.get(e2)));
+
+        int[] solutions = new int[srcs];
+        Arrays.fill(solutions, -1);
+        boolean[] dstAssigned = new boolean[dsts];
+        for (int e : order) {
+            int[] edge = edges.get(e);
+            if (solutions[edge[0]] == -1 && !dstAssigned[edge[1]]) {
+                solutions[edge[0]] = edge[1];
+                dstAssigned[edge[1]] = true;
+            }
+        }
+        return solutions;
     }
 
     private double cost(ITree src, ITree dst) {
         return 111D - sim(src, dst);
     }
 
-    private class MultiMappingComparator implements Comparator<MultiMappingStore> {
+    @Override
+    protected double jaccardSimilarity(ITree src, ITree dst) {
+        Mapping parents = new Mapping(src, dst);
+        Double similarity = parentSimilarities.get(parents);
+        if (similarity == null) {
+            similarity = super.jaccardSimilarity(src, dst);
+            parentSimilarities.put(parents, similarity);
+        }
+        return similarity;
+    }
 
+    private class MultiMappingComparator implements Comparator<MultiMappingStore> {
         @Override
         public int compare(MultiMappingStore m1, MultiMappingStore m2) {
             return Integer.compare(impact(m1), impact(m2));
@@ -20,6 +20,7 @@ import java.util.Arrays;
 import java.util.LinkedList;
 
 import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.utils.Deadline;
 
 
 /**
@@ -62,6 +63,7 @@ public class RtedAlgorithm {
 													// left/right of the heavy
 													// node)
 	private static final byte PRE2_POST = 15; // preorder to postorder
+	private static final String STAGE = "RtedAlgorithm";
 
 	// trees
 	private InfoTree it1;
@@ -96,6 +98,7 @@ public class RtedAlgorithm {
 	private int[] strStat = new int[5]; // statistics for strategies
 										// LEFT,RIGHT,HEAVY,SUM
 	private double costDel, costIns, costMatch; // edit operations costs
+	private Deadline deadline = Deadline.NONE; // checked by the long running loops
 
 	/**
 	 * The constructor. Parameters passed are the edit operation costs.
@@ -110,6 +113,17 @@ public class RtedAlgorithm {
 		this.costMatch = matchCost;
 	}
 
+	/**
+	 * Sets the deadline checked while computing the strategy, the distance
+	 * and the mapping. Once it has expired, these methods throw a
+	 * {@link Deadline.ExceededException}.
+	 * 
+	 * @param deadline
+	 */
+	public void setDeadline(Deadline deadline) {
+		this.deadline = deadline;
+	}
+
 	/**
 	 * Computes the tree edit distance between trees t1 and t2.
 	 * 
@@ -220,6 +234,7 @@ public class RtedAlgorithm {
 		// v represents nodes of left input tree in postorder
 		// w represents nodes of right input tree in postorder
 		for (int v = 0; v < size1; v++) {
+			deadline.check(STAGE);
 			Arrays.fill(costW[0], 0);
 			Arrays.fill(costW[1], 0);
 			Arrays.fill(costW[2], 0);
@@ -460,6 +475,7 @@ public class RtedAlgorithm {
 		int[] kr = it2.info[KR];
 		if (minKR > -1) {
 			for (int j = minKR; kr[j] < gPostorder; j++) {
+				deadline.check(STAGE);
 				treeEditDist(it1, it2, fPostorder, kr[j]);
 			}
 		}
@@ -520,7 +536,10 @@ public class RtedAlgorithm {
 
 		int minRKR = it2.info[RPOST2_MIN_RKR][gReversedPostorder];
 		int[] rkr = it2.info[RKR];
-		if (minRKR > -1) for (int j = minRKR; rkr[j] < gReversedPostorder; j++) treeEditDistRev(it1, it2, fReversedPostorder, rkr[j]);
+		if (minRKR > -1) for (int j = minRKR; rkr[j] < gReversedPostorder; j++) {
+			deadline.check(STAGE);
+			treeEditDistRev(it1, it2, fReversedPostorder, rkr[j]);
+		}
 		treeEditDistRev(it1, it2, fReversedPostorder, gReversedPostorder);
 
 		return it1.isSwitched() ? delta[it2.getCurrentNode()][it1
@@ -617,6 +636,7 @@ public class RtedAlgorithm {
 		int nextVp = -1;
 
 		for (int it = heavyPath.length - 1; it >= 0; it--) {
+			deadline.check(STAGE);
 			vp = heavyPath[it];
 			strategy = it1.info[POST2_STRATEGY][vp];
 			if (strategy != BOTH) {
@@ -1099,6 +1119,7 @@ public class RtedAlgorithm {
 		while (!treePairs.isEmpty()) {
 
 			// get next tree pair to be processed
+			deadline.check(STAGE);
 			int[] treePair = treePairs.pop();
 			int lastRow = treePair[0];
 			int lastCol = treePair[1];
@@ -24,6 +24,7 @@ import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.Matcher;
 import com.github.gumtreediff.tree.ITree;
 import com.github.gumtreediff.tree.TreeUtils;
+import com.github.gumtreediff.utils.Deadline;
 
 import java.util.List;
 
@@ -33,13 +34,24 @@ public class RtedMatcher extends Matcher {
         super(src, dst, store);
     }
 
+    /**
+     * Compute an optimal mapping. If the deadline expires before the edit mapping is computed, no
+     * mapping is added.
+     */
     @Override
     public void match() {
         RtedAlgorithm a = new RtedAlgorithm(1D, 1D, 1D);
-        a.init(src, dst);
-        a.computeOptimalStrategy();
-        a.nonNormalizedTreeDist();
-        List<int[]> arrayMappings = a.computeEditMapping();
+        a.setDeadline(deadline);
+        List<int[]> arrayMappings;
+        try {
+            a.init(src, dst);
+            a.computeOptimalStrategy();
+            a.nonNormalizedTreeDist();
+            arrayMappings = a.computeEditMapping();
+        } catch (Deadline.ExceededException e) {
+            LOGGER.fine("Deadline exceeded, RTED mapping cut short");
+            return;
+        }
         List<ITree> srcs = TreeUtils.postOrder(src);
         List<ITree> dsts = TreeUtils.postOrder(dst);
         for (int[] m: arrayMappings) {
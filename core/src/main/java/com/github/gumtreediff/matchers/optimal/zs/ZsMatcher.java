@@ -23,9 +23,7 @@ package com.github.gumtreediff.matchers.optimal.zs;
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.Matcher;
 import com.github.gumtreediff.tree.ITree;
-import com.github.gumtreediff.matchers.MappingStore;
-import com.github.gumtreediff.matchers.Matcher;
-import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.utils.Deadline;
 import org.simmetrics.StringMetrics;
 
 import java.util.Arrays;
@@ -35,6 +33,8 @@ import java.util.Map;
 
 public class ZsMatcher extends Matcher {
 
+    private static final String STAGE = "ZsMatcher";
+
     private ZsTree src;
     private ZsTree dst;
 
@@ -61,6 +61,7 @@ public class ZsMatcher extends Matcher {
         forestDist = new double[src.nodeCount + 1][dst.nodeCount + 1];
 
         for (int i = 1; i < src.kr.length; i++) {
+            deadline.check(STAGE);
             for (int j = 1; j < dst.kr.length; j++) {
                 forestDist(src.kr[i], dst.kr[j]);
 
@@ -95,8 +96,20 @@ public class ZsMatcher extends Matcher {
         }
     }
 
+    /**
+     * Compute an optimal mapping. If the deadline expires before the distances are computed, no mapping
+     * is added. If it expires afterwards, only the mappings found so far are added.
+     */
     @Override
     public void match() {
+        try {
+            computeMapping();
+        } catch (Deadline.ExceededException e) {
+            LOGGER.fine("Deadline exceeded, ZS mapping cut short");
+        }
+    }
+
+    private void computeMapping() {
         computeTreeDist();
 
         boolean rootNodePair = true;
@@ -107,6 +120,7 @@ public class ZsMatcher extends Matcher {
         treePairs.push(new int[] { src.nodeCount, dst.nodeCount });
 
         while (!treePairs.isEmpty()) {
+            deadline.check(STAGE);
             int[] treePair = treePairs.pop();
 
             int lastRow = treePair[0];
@@ -384,6 +384,11 @@ public abstract class AbstractTree implements ITree {
         public void setASTNode(ClassifiedASTNode node) {
             throw unsupportedOperation();
         }
+
+        @Override
+        public void setASTNode(AstNodeTable table, int index) {
+            throw unsupportedOperation();
+        }
         
         @Override
         public ClassifiedASTNode getClassifiedASTNode() throws InvalidClassException {
@@ -0,0 +1,110 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.tree;
+
+import ca.ubc.ece.salt.gumtree.ast.ClassifiedASTNode;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Side table of the AST nodes that the trees of a context were built from. Trees linked to a table only keep
+ * their index in it, so the AST nodes can be dropped when they are no longer needed, e.g. once the nodes have
+ * been classified, without keeping the parser's object graph alive for as long as the trees. A dropped table
+ * is filled again, on demand, by its loader.
+ */
+public class AstNodeTable {
+
+    private ClassifiedASTNode[] nodes = new ClassifiedASTNode[64];
+
+    private int size;
+
+    private Supplier<List<? extends ClassifiedASTNode>> loader;
+
+    /**
+     * Adds a node to the table and returns its index.
+     */
+    public int add(ClassifiedASTNode node) {
+        if (nodes == null)
+            throw new IllegalStateException("Cannot add nodes to a dropped table.");
+        if (size == nodes.length) {
+            ClassifiedASTNode[] grown = new ClassifiedASTNode[size * 2];
+            System.arraycopy(nodes, 0, grown, 0, size);
+            nodes = grown;
+        }
+        nodes[size] = node;
+        return size++;
+    }
+
+    /**
+     * Returns the node at the given index, attaching the nodes given by the loader if the table was dropped.
+     */
+    public ClassifiedASTNode get(int index) {
+        ClassifiedASTNode[] nodes = this.nodes;
+        if (nodes == null)
+            nodes = reattach();
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("No AST node at index " + index);
+        return nodes[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Releases the AST nodes. The trees keep their indexes.
+     */
+    public synchronized void drop() {
+        nodes = null;
+    }
+
+    public boolean isAttached() {
+        return nodes != null;
+    }
+
+    /**
+     * Sets the function giving the AST nodes again, in the order they were added, after the table is dropped.
+     * The nodes given are new nodes, so whatever was set on the dropped nodes, such as their classification, has
+     * to be set again.
+     */
+    public void setLoader(Supplier<List<? extends ClassifiedASTNode>> loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Attaches the given nodes, in the order they were added, in place of the dropped ones.
+     */
+    public synchronized void attach(List<? extends ClassifiedASTNode> nodes) {
+        if (nodes.size() != size)
+            throw new IllegalArgumentException("Expected " + size + " AST nodes, got " + nodes.size());
+        this.nodes = nodes.toArray(new ClassifiedASTNode[size]);
+    }
+
+    private synchronized ClassifiedASTNode[] reattach() {
+        if (nodes == null) {
+            if (loader == null)
+                throw new IllegalStateException("The AST nodes were dropped and the table has no loader.");
+            attach(loader.get());
+        }
+        return nodes;
+    }
+}
@@ -240,6 +240,12 @@ public interface ITree {
 	 * @param node The AST node that this Tree node was build from.
 	 */
 	public void setASTNode(ClassifiedASTNode node);
+
+    /**
+     * Links this Tree node to the AST node at the given index of a side table,
+     * instead of keeping a reference to the AST node.
+     */
+    public void setASTNode(AstNodeTable table, int index);
 	
 	/**
 	 * Get the AST node associated with this Tree node.
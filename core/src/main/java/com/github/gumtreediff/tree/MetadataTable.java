@@ -0,0 +1,358 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.tree;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+
+/**
+ * The metadata of the trees of a context, stored in one column per key. Each tree created by the context has
+ * a row in the table, and each key is registered once and given a slot, so the metadata of a tree is read and
+ * written by index rather than by searching the keys of the tree.
+ *
+ * <p>Keys registered as int or boolean keys keep their values in primitive arrays. Keys used through the
+ * string API of the trees are registered on their first use, as object keys.</p>
+ */
+public class MetadataTable {
+
+    private final Map<String, Key<?>> keys = new HashMap<>();
+
+    private final List<Key<?>> slots = new ArrayList<>();
+
+    private int rows;
+
+    int newRow() {
+        return rows++;
+    }
+
+    public int getRowCount() {
+        return rows;
+    }
+
+    /**
+     * Returns whether the metadata of the tree is stored in this table.
+     */
+    public boolean contains(ITree tree) {
+        return tree instanceof Tree && ((Tree) tree).getMetadataTable() == this;
+    }
+
+    /**
+     * Returns the key of the given name, or null if it is not registered.
+     */
+    public Key<?> getKey(String name) {
+        return keys.get(name);
+    }
+
+    /**
+     * Returns the registered keys, in slot order.
+     */
+    public List<Key<?>> getKeys() {
+        return Collections.unmodifiableList(slots);
+    }
+
+    /**
+     * Registers a key whose values are objects, or returns it if it is already registered.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Key<T> register(String name) {
+        Key<?> key = keys.get(name);
+        if (key == null)
+            key = add(new ObjectKey<T>(this, name, slots.size()));
+        return (Key<T>) key;
+    }
+
+    /**
+     * Registers a key whose values are ints, or returns it if it is already registered as such.
+     */
+    public IntKey registerInt(String name) {
+        Key<?> key = keys.get(name);
+        if (key == null)
+            return add(new IntKey(this, name, slots.size()));
+        if (!(key instanceof IntKey))
+            throw new IllegalArgumentException("Key already registered with another type: " + name);
+        return (IntKey) key;
+    }
+
+    /**
+     * Registers a key whose values are booleans, or returns it if it is already registered as such.
+     */
+    public BooleanKey registerBoolean(String name) {
+        Key<?> key = keys.get(name);
+        if (key == null)
+            return add(new BooleanKey(this, name, slots.size()));
+        if (!(key instanceof BooleanKey))
+            throw new IllegalArgumentException("Key already registered with another type: " + name);
+        return (BooleanKey) key;
+    }
+
+    private <K extends Key<?>> K add(K key) {
+        keys.put(key.getName(), key);
+        slots.add(key);
+        return key;
+    }
+
+    Iterator<Entry<String, Object>> iterator(int row) {
+        return new Iterator<Entry<String, Object>>() {
+            int slot = advance(0);
+
+            private int advance(int from) {
+                int s = from;
+                while (s < slots.size() && !slots.get(s).has(row))
+                    s++;
+                return s;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return slot < slots.size();
+            }
+
+            @Override
+            public Entry<String, Object> next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                Key<?> key = slots.get(slot);
+                slot = advance(slot + 1);
+                return new AbstractMap.SimpleEntry<>(key.getName(), key.get(row));
+            }
+        };
+    }
+
+    /**
+     * A registered key, giving access to the column of its values. The trees whose metadata is not stored in
+     * the table of the key are accessed through their string API.
+     */
+    public abstract static class Key<T> {
+
+        private final MetadataTable table;
+
+        private final String name;
+
+        private final int slot;
+
+        Key(MetadataTable table, String name, int slot) {
+            this.table = table;
+            this.name = name;
+            this.slot = slot;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getSlot() {
+            return slot;
+        }
+
+        /**
+         * Returns the row of the tree in the table of the key, or -1 if it is not in the table.
+         */
+        protected int rowOf(ITree tree) {
+            return table.contains(tree) ? ((Tree) tree).getMetadataRow() : -1;
+        }
+
+        public boolean has(ITree tree) {
+            int row = rowOf(tree);
+            return row == -1 ? tree.getMetadata(name) != null : has(row);
+        }
+
+        @SuppressWarnings("unchecked")
+        public T get(ITree tree) {
+            int row = rowOf(tree);
+            return row == -1 ? (T) tree.getMetadata(name) : get(row);
+        }
+
+        /**
+         * Sets the value of the tree, removing it if it is null, and returns the previous one.
+         */
+        @SuppressWarnings("unchecked")
+        public T set(ITree tree, T value) {
+            int row = rowOf(tree);
+            return row == -1 ? (T) tree.setMetadata(name, value) : set(row, value);
+        }
+
+        abstract boolean has(int row);
+
+        abstract T get(int row);
+
+        abstract T set(int row, T value);
+
+        @SuppressWarnings("unchecked")
+        Object setObject(int row, Object value) {
+            return set(row, (T) value);
+        }
+
+        /**
+         * Returns the capacity of a column growing to hold the given row.
+         */
+        static int capacity(int length, int row) {
+            return Math.max(row + 1, Math.max(16, length + (length >> 1)));
+        }
+    }
+
+    private static class ObjectKey<T> extends Key<T> {
+
+        private Object[] values = new Object[0];
+
+        ObjectKey(MetadataTable table, String name, int slot) {
+            super(table, name, slot);
+        }
+
+        @Override
+        boolean has(int row) {
+            return row < values.length && values[row] != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        T get(int row) {
+            return row < values.length ? (T) values[row] : null;
+        }
+
+        @Override
+        T set(int row, T value) {
+            if (row >= values.length) {
+                if (value == null)
+                    return null;
+                values = Arrays.copyOf(values, capacity(values.length, row));
+            }
+            T previous = get(row);
+            values[row] = value;
+            return previous;
+        }
+    }
+
+    /**
+     * A key whose values are kept in an int array, which can be read and written without boxing.
+     */
+    public static class IntKey extends Key<Integer> {
+
+        private int[] values = new int[0];
+
+        private final BitSet present = new BitSet();
+
+        IntKey(MetadataTable table, String name, int slot) {
+            super(table, name, slot);
+        }
+
+        /**
+         * Returns the value of the tree, or the given default if it has none.
+         */
+        public int getInt(ITree tree, int missing) {
+            int row = rowOf(tree);
+            if (row == -1) {
+                Integer value = get(tree);
+                return value == null ? missing : value;
+            }
+            return present.get(row) ? values[row] : missing;
+        }
+
+        public void setInt(ITree tree, int value) {
+            int row = rowOf(tree);
+            if (row == -1)
+                tree.setMetadata(getName(), value);
+            else
+                setInt(row, value);
+        }
+
+        private void setInt(int row, int value) {
+            if (row >= values.length)
+                values = Arrays.copyOf(values, capacity(values.length, row));
+            values[row] = value;
+            present.set(row);
+        }
+
+        @Override
+        boolean has(int row) {
+            return present.get(row);
+        }
+
+        @Override
+        Integer get(int row) {
+            return present.get(row) ? values[row] : null;
+        }
+
+        @Override
+        Integer set(int row, Integer value) {
+            Integer previous = get(row);
+            if (value == null)
+                present.clear(row);
+            else
+                setInt(row, value);
+            return previous;
+        }
+    }
+
+    /**
+     * A key whose values are kept in bit sets.
+     */
+    public static class BooleanKey extends Key<Boolean> {
+
+        private final BitSet values = new BitSet();
+
+        private final BitSet present = new BitSet();
+
+        BooleanKey(MetadataTable table, String name, int slot) {
+            super(table, name, slot);
+        }
+
+        /**
+         * Returns whether the value of the tree is true, false if it has none.
+         */
+        public boolean is(ITree tree) {
+            int row = rowOf(tree);
+            if (row == -1)
+                return Boolean.TRUE.equals(get(tree));
+            return values.get(row);
+        }
+
+        public void set(ITree tree, boolean value) {
+            set(tree, Boolean.valueOf(value));
+        }
+
+        @Override
+        boolean has(int row) {
+            return present.get(row);
+        }
+
+        @Override
+        Boolean get(int row) {
+            return present.get(row) ? values.get(row) : null;
+        }
+
+        @Override
+        Boolean set(int row, Boolean value) {
+            Boolean previous = get(row);
+            present.set(row, value != null);
+            values.set(row, value != null && value);
+            return previous;
+        }
+    }
+}
@@ -40,6 +40,10 @@ public class Tree extends AbstractTree implements ITree {
     // End position
 
     private AssociationMap metadata;
+
+    // Or the table of the context, when created by one, and the row of the tree in it
+    private MetadataTable metadataTable;
+    private int metadataRow;
     
 	/** 
 	 * Link back to the concrete ASTNode this was created from. 
@@ -47,6 +51,10 @@ public class Tree extends AbstractTree implements ITree {
 	 */
 	private ClassifiedASTNode astnode;
 
+    // Or the index of the AST node in a side table
+    private AstNodeTable astTable;
+    private int astIndex;
+
     /**
      * Constructs a new node. If you need type labels corresponding to the integer
      * @see TreeContext#createTree(int, String, String)
@@ -79,6 +87,8 @@ public class Tree extends AbstractTree implements ITree {
         this.depth = other.getDepth();
         this.children = new ArrayList<>();
         this.metadata = other.metadata;
+        this.metadataTable = other.metadataTable;
+        this.metadataRow = other.metadataRow;
     }
 
     @Override
@@ -172,8 +182,25 @@ public class Tree extends AbstractTree implements ITree {
         this.type = type;
     }
 
+    void setMetadataRow(MetadataTable table, int row) {
+        this.metadataTable = table;
+        this.metadataRow = row;
+    }
+
+    MetadataTable getMetadataTable() {
+        return metadataTable;
+    }
+
+    int getMetadataRow() {
+        return metadataRow;
+    }
+
     @Override
     public Object getMetadata(String key) {
+        if (metadataTable != null) {
+            MetadataTable.Key<?> k = metadataTable.getKey(key);
+            return k == null ? null : k.get(metadataRow);
+        }
         if (metadata == null)
             return null;
         return metadata.get(key);
@@ -181,6 +208,15 @@ public class Tree extends AbstractTree implements ITree {
 
     @Override
     public Object setMetadata(String key, Object value) {
+        if (metadataTable != null) {
+            MetadataTable.Key<?> k = metadataTable.getKey(key);
+            if (k == null) {
+                if (value == null)
+                    return null;
+                k = metadataTable.register(key);
+            }
+            return k.setObject(metadataRow, value);
+        }
         if (value == null) {
             if (metadata == null)
                 return null;
@@ -194,18 +230,30 @@ public class Tree extends AbstractTree implements ITree {
 
     @Override
     public Iterator<Entry<String, Object>> getMetadata() {
+        if (metadataTable != null)
+            return metadataTable.iterator(metadataRow);
         if (metadata == null)
             return new EmptyEntryIterator();
         return metadata.iterator();
     }
     
     @Override
-	public void setASTNode(ClassifiedASTNode node) {
-		this.astnode = node;
-	}
+    public void setASTNode(ClassifiedASTNode node) {
+        this.astnode = node;
+        this.astTable = null;
+    }
 
     @Override
-	public ClassifiedASTNode getClassifiedASTNode() throws InvalidClassException {
-		return this.astnode;
-	}
+    public void setASTNode(AstNodeTable table, int index) {
+        this.astnode = null;
+        this.astTable = table;
+        this.astIndex = index;
+    }
+
+    @Override
+    public ClassifiedASTNode getClassifiedASTNode() throws InvalidClassException {
+        if (this.astTable != null)
+            return this.astTable.get(this.astIndex);
+        return this.astnode;
+    }
 }
@@ -20,11 +20,13 @@
 
 package com.github.gumtreediff.tree;
 
+import ca.ubc.ece.salt.gumtree.ast.ClassifiedASTNode;
 import com.github.gumtreediff.io.TreeIoUtils;
 import com.github.gumtreediff.io.TreeIoUtils.MetadataSerializer;
 import com.github.gumtreediff.io.TreeIoUtils.MetadataUnserializer;
 import com.github.gumtreediff.io.TreeIoUtils.TreeFormatter;
 
+import java.io.InvalidClassException;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.regex.Pattern;
@@ -37,8 +39,12 @@ public class TreeContext {
 
     private final MetadataSerializers serializers = new MetadataSerializers();
 
+    private MetadataTable metadataTable = new MetadataTable();
+
     private ITree root;
 
+    private AstNodeTable astNodes;
+
     @Override
     public String toString() {
         return TreeIoUtils.toLisp(this).toString();
@@ -52,6 +58,34 @@ public class TreeContext {
         return root;
     }
 
+    /**
+     * Returns the side table of the AST nodes of the trees, or null if the trees reference their AST nodes.
+     */
+    public AstNodeTable getAstNodes() {
+        return astNodes;
+    }
+
+    public void setAstNodes(AstNodeTable astNodes) {
+        this.astNodes = astNodes;
+    }
+
+    /**
+     * Moves the AST nodes referenced by the trees to a side table, the trees only keeping their index in it,
+     * and returns the table. The table can then be dropped to release the AST.
+     */
+    public AstNodeTable detachAstNodes() throws InvalidClassException {
+        if (astNodes != null)
+            return astNodes;
+        AstNodeTable table = new AstNodeTable();
+        for (ITree t : root.preOrder()) {
+            ClassifiedASTNode node = t.getClassifiedASTNode();
+            if (node != null)
+                t.setASTNode(table, table.add(node));
+        }
+        astNodes = table;
+        return table;
+    }
+
     public String getTypeLabel(ITree tree) {
         return getTypeLabel(tree.getType());
     }
@@ -75,7 +109,9 @@ public class TreeContext {
 
     public ITree createTree(int type, String label, String typeLabel) {
         registerTypeLabel(type, typeLabel);
-        return new Tree(type, label);
+        Tree t = new Tree(type, label);
+        t.setMetadataRow(metadataTable, metadataTable.newRow());
+        return t;
     }
 
     public ITree createTree(ITree... trees) {
@@ -91,6 +127,35 @@ public class TreeContext {
         return typeLabels.containsKey(type);
     }
 
+    /**
+     * Returns the table holding the metadata of the trees created by this context.
+     */
+    public MetadataTable getMetadataTable() {
+        return metadataTable;
+    }
+
+    /**
+     * Registers a key of local metadata, whose values are objects, and returns it. A registered key reads and
+     * writes the metadata of a tree by index.
+     */
+    public <T> MetadataTable.Key<T> registerMetadata(String key) {
+        return metadataTable.register(key);
+    }
+
+    /**
+     * Registers a key of local metadata whose values are ints, kept without boxing.
+     */
+    public MetadataTable.IntKey registerIntMetadata(String key) {
+        return metadataTable.registerInt(key);
+    }
+
+    /**
+     * Registers a key of local metadata whose values are booleans, kept as bits.
+     */
+    public MetadataTable.BooleanKey registerBooleanMetadata(String key) {
+        return metadataTable.registerBoolean(key);
+    }
+
     /**
      * Get a global metadata.
      * There is no way to know if the metadata is really null or does not exists.
@@ -179,6 +244,7 @@ public class TreeContext {
         TreeContext newContext = new TreeContext();
         newContext.setRoot(getRoot().deepCopy());
         newContext.typeLabels = typeLabels;
+        newContext.metadataTable = metadataTable;
         newContext.metadata.putAll(metadata);
         newContext.serializers.addAll(serializers);
         return newContext;
@@ -257,6 +323,10 @@ public class TreeContext {
             serializers.remove(key);
         }
 
+        public E get(String key) {
+            return serializers.get(key);
+        }
+
         public Set<String> exports() {
             return serializers.keySet();
         }
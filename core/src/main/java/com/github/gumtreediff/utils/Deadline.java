@@ -0,0 +1,139 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Cooperative deadline shared by the stages of a diff. Long running loops check it regularly and,
+ * once it has expired or has been cancelled, either stop and degrade to a cheaper result or abort
+ * with an {@link ExceededException}. The stages cut short are recorded, so the caller knows which
+ * parts of the result are incomplete.
+ */
+public class Deadline {
+
+    /**
+     * A deadline that never expires, used by default.
+     */
+    public static final Deadline NONE = new Deadline(Long.MAX_VALUE) {
+        @Override
+        public boolean isExpired() {
+            return false;
+        }
+
+        @Override
+        public void cancel() {
+            // Shared by every matcher without a deadline, so it is never cancelled
+        }
+
+        @Override
+        public void cut(String stage) {
+        }
+    };
+
+    private final long expiration;
+
+    private volatile boolean cancelled;
+
+    private final Set<String> cutStages = Collections.synchronizedSet(new LinkedHashSet<>());
+
+    private Deadline(long expiration) {
+        this.expiration = expiration;
+    }
+
+    /**
+     * @return a deadline expiring after the given number of milliseconds.
+     */
+    public static Deadline after(long millis) {
+        return new Deadline(System.nanoTime() + millis * 1000000L);
+    }
+
+    /**
+     * @return a deadline that only expires when cancelled.
+     */
+    public static Deadline cancellable() {
+        return new Deadline(Long.MAX_VALUE);
+    }
+
+    /**
+     * Cancel the deadline, i.e. make it expire now.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isExpired() {
+        return cancelled || (expiration != Long.MAX_VALUE && System.nanoTime() - expiration >= 0);
+    }
+
+    /**
+     * Abort the given stage if the deadline has expired.
+     *
+     * @throws ExceededException if the deadline has expired, after having recorded the stage.
+     */
+    public void check(String stage) {
+        if (isExpired()) {
+            cut(stage);
+            throw new ExceededException(stage);
+        }
+    }
+
+    /**
+     * Record that the given stage has been cut short. Recording a stage several times has no effect.
+     */
+    public void cut(String stage) {
+        cutStages.add(stage);
+    }
+
+    /**
+     * @return the stages cut short, in the order they were cut.
+     */
+    public List<String> getCutStages() {
+        synchronized (cutStages) {
+            return new ArrayList<>(cutStages);
+        }
+    }
+
+    /**
+     * @return true if at least one stage has been cut short.
+     */
+    public boolean isCut() {
+        return !cutStages.isEmpty();
+    }
+
+    public static class ExceededException extends RuntimeException {
+
+        private final String stage;
+
+        public ExceededException(String stage) {
+            super("Deadline exceeded during " + stage);
+            this.stage = stage;
+        }
+
+        public String getStage() {
+            return stage;
+        }
+    }
+}
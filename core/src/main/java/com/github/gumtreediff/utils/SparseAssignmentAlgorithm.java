@@ -0,0 +1,421 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.utils;
+
+import java.util.Arrays;
+
+/**
+ * A shortest augmenting path solver for sparse assignment problems, following the
+ * augmentation scheme of Jonker and Volgenant (LAPJV). Contrary to {@link HungarianAlgorithm},
+ * no cost matrix is needed: only the candidate edges added with {@link #addEdge(int, int, double)}
+ * are considered, and the workers that cannot be assigned using these edges are left unassigned.
+ *
+ * <p>The job prices computed by a run can be given back to another instance with
+ * {@link #warmStart(double[], int[])}, optionally with a previous assignment, so that
+ * the assignments that are still optimal are kept instead of being recomputed.</p>
+ *
+ * <p>Each worker is given a private dummy job, more expensive than any combination of candidate
+ * edges, so that the result is a maximum cardinality matching of minimal cost even when the
+ * edges do not allow to assign every worker.</p>
+ *
+ * <p>Each augmentation runs a Dijkstra search restricted to the candidate edges, hence the
+ * algorithm runs in O(n.e.log(e)) in the worst case, where n is the number of workers and e
+ * the number of edges.</p>
+ */
+public class SparseAssignmentAlgorithm {
+
+    private final int rows;
+
+    private final int cols;
+
+    private int edgeCount;
+
+    private int[] edgeRows = new int[16];
+
+    private int[] edgeCols = new int[16];
+
+    private double[] edgeCosts = new double[16];
+
+    private double[] prices;
+
+    private int[] hints;
+
+    /**
+     * Construct an instance of the algorithm without any edge.
+     *
+     * @param rows the number of workers
+     * @param cols the number of jobs
+     */
+    public SparseAssignmentAlgorithm(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.prices = new double[cols];
+    }
+
+    /**
+     * Add a candidate edge, meaning that the given worker can be assigned to the given job
+     * for the given cost. Pairs for which no edge is added can never be assigned.
+     */
+    public void addEdge(int worker, int job, double cost) {
+        if (worker < 0 || worker >= rows || job < 0 || job >= cols)
+            throw new IllegalArgumentException(String.format("Invalid edge (%d, %d)", worker, job));
+        if (edgeCount == edgeRows.length) {
+            int capacity = edgeCount * 2;
+            edgeRows = Arrays.copyOf(edgeRows, capacity);
+            edgeCols = Arrays.copyOf(edgeCols, capacity);
+            edgeCosts = Arrays.copyOf(edgeCosts, capacity);
+        }
+        edgeRows[edgeCount] = worker;
+        edgeCols[edgeCount] = job;
+        edgeCosts[edgeCount] = cost;
+        edgeCount++;
+    }
+
+    /**
+     * Start from the given job prices, as returned by {@link #getPrices()} after a previous run.
+     *
+     * @param prices the job prices, or null to start from zero prices
+     * @param assignment an initial assignment of workers to jobs (-1 for none), or null. A worker
+     *            keeps its initial job only if it is still one of its cheapest jobs for the
+     *            given prices.
+     */
+    public void warmStart(double[] prices, int[] assignment) {
+        if (prices != null && prices.length != cols)
+            throw new IllegalArgumentException("Expecting one price per job");
+        if (assignment != null && assignment.length != rows)
+            throw new IllegalArgumentException("Expecting one job per worker");
+        this.prices = (prices == null) ? new double[cols] : Arrays.copyOf(prices, cols);
+        this.hints = assignment;
+    }
+
+    /**
+     * @return the job prices of the last run, usable to warm start another run
+     */
+    public double[] getPrices() {
+        return Arrays.copyOf(prices, cols);
+    }
+
+    /**
+     * Execute the algorithm.
+     *
+     * @return the minimum cost matching of workers to jobs using only the candidate edges.
+     *         A matching value of -1 indicates that the corresponding worker is unassigned.
+     */
+    public int[] execute() {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int e = 0; e < edgeCount; e++) {
+            min = Math.min(min, edgeCosts[e]);
+            max = Math.max(max, edgeCosts[e]);
+        }
+        double dummyCost = (edgeCount == 0) ? 0D : max + (max - min) * Math.min(rows, cols) + 1D;
+
+        // Index the edges by worker, the last edge of each worker leading to its dummy job.
+        int[] firstEdge = new int[rows + 1];
+        for (int e = 0; e < edgeCount; e++)
+            firstEdge[edgeRows[e] + 1]++;
+        for (int r = 0; r < rows; r++)
+            firstEdge[r + 1] += firstEdge[r] + 1;
+        int[] adjacentJobs = new int[edgeCount + rows];
+        double[] adjacentCosts = new double[edgeCount + rows];
+        int[] next = Arrays.copyOf(firstEdge, rows);
+        for (int e = 0; e < edgeCount; e++) {
+            int idx = next[edgeRows[e]]++;
+            adjacentJobs[idx] = edgeCols[e];
+            adjacentCosts[idx] = edgeCosts[e];
+        }
+        for (int r = 0; r < rows; r++) {
+            adjacentJobs[next[r]] = cols + r;
+            adjacentCosts[next[r]] = dummyCost;
+        }
+
+        Solver solver = new Solver(firstEdge, adjacentJobs, adjacentCosts, Arrays.copyOf(prices, cols + rows));
+        solver.initialize();
+        for (int r = 0; r < rows; r++)
+            if (solver.matchJobByWorker[r] == -1)
+                solver.augment(r);
+        prices = Arrays.copyOf(solver.prices, cols);
+
+        int[] result = Arrays.copyOf(solver.matchJobByWorker, rows);
+        for (int r = 0; r < rows; r++)
+            if (result[r] >= cols)
+                result[r] = -1;
+        return result;
+    }
+
+    private class Solver {
+
+        private final int[] firstEdge;
+
+        private final int[] adjacentJobs;
+
+        private final double[] adjacentCosts;
+
+        private final double[] prices;
+
+        private final int[] matchJobByWorker = new int[rows];
+
+        private final int[] matchWorkerByJob = new int[cols + rows];
+
+        private final double[] matchCostByWorker = new double[rows];
+
+        private final double[] distances = new double[cols + rows];
+
+        private final int[] predecessors = new int[cols + rows];
+
+        private final double[] predecessorCosts = new double[cols + rows];
+
+        private final boolean[] scanned = new boolean[cols + rows];
+
+        private final int[] touched = new int[cols + rows];
+
+        private int touchedCount;
+
+        private final JobHeap heap = new JobHeap();
+
+        Solver(int[] firstEdge, int[] adjacentJobs, double[] adjacentCosts, double[] prices) {
+            this.firstEdge = firstEdge;
+            this.adjacentJobs = adjacentJobs;
+            this.adjacentCosts = adjacentCosts;
+            this.prices = prices;
+            Arrays.fill(matchJobByWorker, -1);
+            Arrays.fill(matchWorkerByJob, -1);
+            Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        }
+
+        /**
+         * Assign each worker to one of its cheapest jobs for the current prices, when this job
+         * is still free, preferring the job given in the warm start assignment.
+         */
+        void initialize() {
+            for (int r = 0; r < rows; r++) {
+                int best = -1;
+                double min = Double.POSITIVE_INFINITY;
+                double bestCost = 0D;
+                for (int e = firstEdge[r]; e < firstEdge[r + 1]; e++) {
+                    int job = adjacentJobs[e];
+                    double reduced = adjacentCosts[e] - prices[job];
+                    if (reduced < min || (reduced == min && hints != null && hints[r] == job)) {
+                        min = reduced;
+                        best = job;
+                        bestCost = adjacentCosts[e];
+                    }
+                }
+                if (best != -1 && matchWorkerByJob[best] == -1)
+                    assign(r, best, bestCost);
+            }
+            raiseFreePrices();
+        }
+
+        /**
+         * An optimal assignment requires the free jobs to have the highest price, which may not
+         * hold when starting from the prices of another run. Raise them, releasing the workers
+         * that now prefer a raised job to their own.
+         */
+        private void raiseFreePrices() {
+            final double top = Arrays.stream(prices).max().orElse(0D);
+            int[] queue = new int[prices.length];
+            int tail = 0;
+            for (int job = 0; job < prices.length; job++)
+                if (matchWorkerByJob[job] == -1 && prices[job] < top)
+                    queue[tail++] = job;
+            if (tail == 0)
+                return;
+
+            int[] firstWorker = new int[prices.length + 1];
+            for (int e = 0; e < adjacentJobs.length; e++)
+                firstWorker[adjacentJobs[e] + 1]++;
+            for (int job = 0; job < prices.length; job++)
+                firstWorker[job + 1] += firstWorker[job];
+            int[] workers = new int[adjacentJobs.length];
+            double[] costs = new double[adjacentJobs.length];
+            int[] next = Arrays.copyOf(firstWorker, prices.length);
+            for (int r = 0; r < rows; r++) {
+                for (int e = firstEdge[r]; e < firstEdge[r + 1]; e++) {
+                    int idx = next[adjacentJobs[e]]++;
+                    workers[idx] = r;
+                    costs[idx] = adjacentCosts[e];
+                }
+            }
+
+            int head = 0;
+            while (head < tail) {
+                int job = queue[head++];
+                prices[job] = top;
+                for (int e = firstWorker[job]; e < firstWorker[job + 1]; e++) {
+                    int worker = workers[e];
+                    int current = matchJobByWorker[worker];
+                    if (current != -1 && costs[e] - top < matchCostByWorker[worker] - prices[current]) {
+                        matchJobByWorker[worker] = -1;
+                        matchWorkerByJob[current] = -1;
+                        if (prices[current] < top)
+                            queue[tail++] = current;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Search a shortest augmenting path starting from the given free worker and, if one
+         * exists, update the prices of the scanned jobs and flip the path.
+         */
+        void augment(int worker) {
+            double offset = Double.POSITIVE_INFINITY;
+            for (int e = firstEdge[worker]; e < firstEdge[worker + 1]; e++)
+                offset = Math.min(offset, adjacentCosts[e] - prices[adjacentJobs[e]]);
+            for (int e = firstEdge[worker]; e < firstEdge[worker + 1]; e++) {
+                int job = adjacentJobs[e];
+                relax(job, adjacentCosts[e] - prices[job] - offset, worker, adjacentCosts[e]);
+            }
+
+            int freeJob = -1;
+            double shortest = 0D;
+            while (!heap.isEmpty()) {
+                double distance = heap.peekKey();
+                int job = heap.pop();
+                if (scanned[job] || distance > distances[job])
+                    continue;
+                scanned[job] = true;
+                if (matchWorkerByJob[job] == -1) {
+                    freeJob = job;
+                    shortest = distance;
+                    break;
+                }
+                int other = matchWorkerByJob[job];
+                double h = matchCostByWorker[other] - prices[job];
+                for (int e = firstEdge[other]; e < firstEdge[other + 1]; e++) {
+                    int candidate = adjacentJobs[e];
+                    if (!scanned[candidate])
+                        relax(candidate, distance + adjacentCosts[e] - prices[candidate] - h,
+                                other, adjacentCosts[e]);
+                }
+            }
+
+            if (freeJob != -1) {
+                for (int i = 0; i < touchedCount; i++) {
+                    int job = touched[i];
+                    if (scanned[job])
+                        prices[job] += distances[job] - shortest;
+                }
+                int job = freeJob;
+                while (true) {
+                    int w = predecessors[job];
+                    int previous = matchJobByWorker[w];
+                    assign(w, job, predecessorCosts[job]);
+                    if (w == worker)
+                        break;
+                    job = previous;
+                }
+            }
+
+            for (int i = 0; i < touchedCount; i++) {
+                int job = touched[i];
+                distances[job] = Double.POSITIVE_INFINITY;
+                scanned[job] = false;
+            }
+            touchedCount = 0;
+            heap.clear();
+        }
+
+        private void relax(int job, double distance, int worker, double cost) {
+            if (distance < distances[job]) {
+                if (distances[job] == Double.POSITIVE_INFINITY)
+                    touched[touchedCount++] = job;
+                distances[job] = distance;
+                predecessors[job] = worker;
+                predecessorCosts[job] = cost;
+                heap.push(distance, job);
+            }
+        }
+
+        private void assign(int worker, int job, double cost) {
+            matchJobByWorker[worker] = job;
+            matchWorkerByJob[job] = worker;
+            matchCostByWorker[worker] = cost;
+        }
+    }
+
+    /**
+     * A binary min-heap of jobs keyed by distance. Decreased keys are pushed again,
+     * outdated entries being skipped when popped.
+     */
+    private static final class JobHeap {
+
+        private double[] keys = new double[16];
+
+        private int[] jobs = new int[16];
+
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        double peekKey() {
+            return keys[0];
+        }
+
+        void push(double key, int job) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                jobs = Arrays.copyOf(jobs, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (keys[parent] <= key)
+                    break;
+                keys[i] = keys[parent];
+                jobs[i] = jobs[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            jobs[i] = job;
+        }
+
+        int pop() {
+            final int top = jobs[0];
+            size--;
+            double key = keys[size];
+            int job = jobs[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size)
+                    break;
+                if (child + 1 < size && keys[child + 1] < keys[child])
+                    child++;
+                if (key <= keys[child])
+                    break;
+                keys[i] = keys[child];
+                jobs[i] = jobs[child];
+                i = child;
+            }
+            keys[i] = key;
+            jobs[i] = job;
+            return top;
+        }
+    }
+}
@@ -20,8 +20,11 @@
 
 package com.github.gumtreediff.utils;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 
 import com.github.gumtreediff.tree.ITree;
@@ -54,8 +57,190 @@ public final class StringAlgorithms {
         return indexes;
     }
 
+    /**
+     * Myers' O(ND) greedy difference algorithm over two sequences of symbols, e.g. lines mapped to
+     * integers. As for {@link #lcss(String, String)}, the result is the list of the matched index pairs,
+     * in increasing order.
+     *
+     * @param maxEdits the maximum number of insertions and deletions to explore, the trace of the
+     *                 search being in O(maxEdits^2) memory.
+     * @return the matched index pairs, or null if the sequences differ by more than maxEdits edits.
+     */
+    public static List<int[]> myers(int[] s0, int[] s1, int maxEdits) {
+        int n = s0.length;
+        int m = s1.length;
+        int max = Math.min(n + m, maxEdits);
+        int offset = max + 1;
+        int[] v = new int[2 * max + 3];
+        List<int[]> trace = new ArrayList<>();
+        for (int d = 0; d <= max; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1]))
+                    x = v[offset + k + 1];
+                else
+                    x = v[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && s0[x] == s1[y]) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    trace.add(Arrays.copyOfRange(v, offset - d, offset + d + 1));
+                    return backtrack(trace, n, m);
+                }
+            }
+            trace.add(Arrays.copyOfRange(v, offset - d, offset + d + 1));
+        }
+        return null;
+    }
+
+    private static List<int[]> backtrack(List<int[]> trace, int n, int m) {
+        List<int[]> indexes = new ArrayList<>();
+        int x = n;
+        int y = m;
+        for (int d = trace.size() - 1; d > 0; d--) {
+            int[] previous = trace.get(d - 1);
+            int k = x - y;
+            int previousK;
+            if (k == -d || (k != d && previous[k - 1 + d - 1] < previous[k + 1 + d - 1]))
+                previousK = k + 1;
+            else
+                previousK = k - 1;
+            int previousX = previous[previousK + d - 1];
+            int previousY = previousX - previousK;
+            while (x > previousX && y > previousY) {
+                indexes.add(new int[] {x - 1, y - 1});
+                x--;
+                y--;
+            }
+            x = previousX;
+            y = previousY;
+        }
+        while (x > 0 && y > 0) {
+            indexes.add(new int[] {x - 1, y - 1});
+            x--;
+            y--;
+        }
+        Collections.reverse(indexes);
+        return indexes;
+    }
+
+    /**
+     * Myers' difference algorithm in linear space: the middle snake of the edit graph is found by searching
+     * forward and backward at once, then both halves are solved the same way. It runs in O((N+M)D) time and
+     * O(N+M) space. As for {@link #lcss(String, String)}, the result is the list of the matched index pairs,
+     * in increasing order, although another common subsequence of the same length may be chosen.
+     */
+    public static List<int[]> myers(int[] s0, int[] s1) {
+        List<int[]> indexes = new ArrayList<>();
+        Deque<int[]> segments = new ArrayDeque<>();
+        segments.push(new int[] {0, s0.length, 0, s1.length});
+        while (!segments.isEmpty()) {
+            int[] segment = segments.pop();
+            int lo0 = segment[0];
+            int hi0 = segment[1];
+            int lo1 = segment[2];
+            int hi1 = segment[3];
+            while (lo0 < hi0 && lo1 < hi1 && s0[lo0] == s1[lo1]) {
+                indexes.add(new int[] {lo0, lo1});
+                lo0++;
+                lo1++;
+            }
+            while (lo0 < hi0 && lo1 < hi1 && s0[hi0 - 1] == s1[hi1 - 1]) {
+                indexes.add(new int[] {hi0 - 1, hi1 - 1});
+                hi0--;
+                hi1--;
+            }
+            if (lo0 == hi0 || lo1 == hi1)
+                continue;
+            int[] split = middleSnake(s0, lo0, hi0, s1, lo1, hi1);
+            if (split == null)
+                continue;
+            segments.push(new int[] {split[0], hi0, split[1], hi1});
+            segments.push(new int[] {lo0, split[0], lo1, split[1]});
+        }
+        indexes.sort((m1, m2) -> Integer.compare(m1[0], m2[0]));
+        return indexes;
+    }
+
+    /**
+     * Returns a point of an optimal path of the edit graph of the given ranges, strictly inside of it, or
+     * null if the ranges have nothing in common.
+     */
+    private static int[] middleSnake(int[] s0, int lo0, int hi0, int[] s1, int lo1, int hi1) {
+        int n = hi0 - lo0;
+        int m = hi1 - lo1;
+        int max = (n + m + 1) / 2;
+        int offset = max + 1;
+        int length = 2 * max + 3;
+        int[] forward = new int[length];
+        int[] backward = new int[length];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        boolean front = (delta & 1) != 0;
+        // Diagonals going out of the graph are not explored anymore
+        int start1 = 0;
+        int end1 = 0;
+        int start2 = 0;
+        int end2 = 0;
+        for (int d = 0; d < max; d++) {
+            for (int k = -d + start1; k <= d - end1; k += 2) {
+                int x = (k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1]))
+                        ? forward[offset + k + 1] : forward[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && s0[lo0 + x] == s1[lo1 + y]) {
+                    x++;
+                    y++;
+                }
+                forward[offset + k] = x;
+                if (x > n)
+                    end1 += 2;
+                else if (y > m)
+                    start1 += 2;
+                else if (front) {
+                    int k2 = offset + delta - k;
+                    if (k2 >= 0 && k2 < length && backward[k2] != -1 && x >= n - backward[k2])
+                        return new int[] {lo0 + x, lo1 + y};
+                }
+            }
+            for (int k = -d + start2; k <= d - end2; k += 2) {
+                int x = (k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1]))
+                        ? backward[offset + k + 1] : backward[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && s0[hi0 - x - 1] == s1[hi1 - y - 1]) {
+                    x++;
+                    y++;
+                }
+                backward[offset + k] = x;
+                if (x > n)
+                    end2 += 2;
+                else if (y > m)
+                    start2 += 2;
+                else if (!front) {
+                    int k1 = offset + delta - k;
+                    if (k1 >= 0 && k1 < length && forward[k1] != -1) {
+                        int x1 = forward[k1];
+                        int y1 = offset + x1 - k1;
+                        if (x1 >= n - x)
+                            return new int[] {lo0 + x1, lo1 + y1};
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the runs of consecutive matched characters of the two strings, as {start0, end0, start1, end1}
+     * arrays. The matching is computed by {@link #myers(int[], int[])}, in linear space.
+     */
     public static List<int[]> hunks(String s0, String s1) {
-        List<int[]> lcs = lcss(s0 ,s1);
+        List<int[]> lcs = myers(s0.chars().toArray(), s1.chars().toArray());
         List<int[]> hunks = new ArrayList<int[]>();
         int inf0 = -1;
         int inf1 = -1;
@@ -80,23 +265,135 @@ public final class StringAlgorithms {
         return hunks;
     }
 
+    /**
+     * Returns the longest common substring of the two strings, the first one in s1 if there are several.
+     * It walks s2 in the suffix automaton of s1, in O(|s1| + |s2|) time for a bounded alphabet.
+     */
     public static String lcs(String s1, String s2) {
-        int start = 0;
+        SuffixAutomaton automaton = new SuffixAutomaton(s1);
+        int state = 0;
+        int length = 0;
         int max = 0;
-        for (int i = 0; i < s1.length(); i++) {
-            for (int j = 0; j < s2.length(); j++) {
-                int x = 0;
-                while (s1.charAt(i + x) == s2.charAt(j + x)) {
-                    x++;
-                    if (((i + x) >= s1.length()) || ((j + x) >= s2.length())) break;
+        int start = 0;
+        for (int j = 0; j < s2.length(); j++) {
+            char c = s2.charAt(j);
+            while (state != 0 && automaton.next(state, c) == -1) {
+                state = automaton.link[state];
+                length = automaton.length[state];
+            }
+            int next = automaton.next(state, c);
+            if (next == -1) {
+                length = 0;
+                continue;
+            }
+            state = next;
+            length++;
+            // The first occurrence in s1 of the current match ends at the first end of its state
+            int matchStart = automaton.firstEnd[state] - length + 1;
+            if (length > max || (length == max && matchStart < start)) {
+                max = length;
+                start = matchStart;
+            }
+        }
+        return s1.substring(start, (start + max));
+    }
+
+    /**
+     * The suffix automaton of a string, the transitions of a state being stored as a linked list of edges.
+     */
+    private static final class SuffixAutomaton {
+
+        private int[] length;
+
+        private int[] link;
+
+        private int[] firstEnd;
+
+        private int[] firstEdge;
+
+        private int states;
+
+        private char[] edgeChars;
+
+        private int[] edgeTargets;
+
+        private int[] nextEdges;
+
+        private int edges;
+
+        private SuffixAutomaton(String s) {
+            int capacity = 2 * s.length() + 1;
+            length = new int[capacity];
+            link = new int[capacity];
+            firstEnd = new int[capacity];
+            firstEdge = new int[capacity];
+            edgeChars = new char[capacity + s.length() + 1];
+            edgeTargets = new int[edgeChars.length];
+            nextEdges = new int[edgeChars.length];
+            int last = newState(0, -1);
+            link[last] = -1;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                int cur = newState(length[last] + 1, i);
+                int p = last;
+                while (p != -1 && next(p, c) == -1) {
+                    setNext(p, c, cur);
+                    p = link[p];
                 }
-                if (x > max) {
-                    max = x;
-                    start = i;
+                if (p == -1)
+                    link[cur] = 0;
+                else {
+                    int q = next(p, c);
+                    if (length[p] + 1 == length[q])
+                        link[cur] = q;
+                    else {
+                        int clone = newState(length[p] + 1, firstEnd[q]);
+                        for (int e = firstEdge[q]; e != -1; e = nextEdges[e])
+                            setNext(clone, edgeChars[e], edgeTargets[e]);
+                        link[clone] = link[q];
+                        while (p != -1 && next(p, c) == q) {
+                            setNext(p, c, clone);
+                            p = link[p];
+                        }
+                        link[q] = clone;
+                        link[cur] = clone;
+                    }
                 }
+                last = cur;
             }
         }
-        return s1.substring(start, (start + max));
+
+        private int newState(int len, int end) {
+            length[states] = len;
+            firstEnd[states] = end;
+            firstEdge[states] = -1;
+            return states++;
+        }
+
+        private int next(int state, char c) {
+            for (int e = firstEdge[state]; e != -1; e = nextEdges[e])
+                if (edgeChars[e] == c)
+                    return edgeTargets[e];
+            return -1;
+        }
+
+        private void setNext(int state, char c, int target) {
+            for (int e = firstEdge[state]; e != -1; e = nextEdges[e]) {
+                if (edgeChars[e] == c) {
+                    edgeTargets[e] = target;
+                    return;
+                }
+            }
+            if (edges == edgeChars.length) {
+                edgeChars = Arrays.copyOf(edgeChars, edges * 2);
+                edgeTargets = Arrays.copyOf(edgeTargets, edges * 2);
+                nextEdges = Arrays.copyOf(nextEdges, edges * 2);
+            }
+            edgeChars[edges] = c;
+            edgeTargets[edges] = target;
+            nextEdges[edges] = firstEdge[state];
+            firstEdge[state] = edges++;
+        }
     }
 
     public static List<int[]> lcss(List<ITree> s0, List<ITree> s1) {
@@ -20,12 +20,14 @@
 package com.github.gumtreediff.test;
 
 import com.github.gumtreediff.utils.HungarianAlgorithm;
+import com.github.gumtreediff.utils.SparseAssignmentAlgorithm;
 import com.github.gumtreediff.utils.StringAlgorithms;
 import org.junit.Test;
 import static org.junit.Assert.assertThat;
 import static org.hamcrest.CoreMatchers.*;
 
 import java.util.List;
+import java.util.Random;
 
 public class TestAlgorithms {
 
@@ -40,10 +42,58 @@ public class TestAlgorithms {
         assertThat(indexes, hasItem(new int[] {5, 4}));
     }
 
+    @Test
+    public void testMyers() {
+        // Same exemple, the symbols being the characters
+        List<int[]> indexes = StringAlgorithms.myers("ABCDGH".chars().toArray(), "AEDFHR".chars().toArray(), 100);
+        assertThat(indexes.size(), is(3));
+        assertThat(indexes, hasItem(new int[] {0, 0}));
+        assertThat(indexes, hasItem(new int[] {3, 2}));
+        assertThat(indexes, hasItem(new int[] {5, 4}));
+
+        assertThat(StringAlgorithms.myers(new int[] {1, 2, 3}, new int[] {1, 2, 3}, 0).size(), is(3));
+        assertThat(StringAlgorithms.myers(new int[0], new int[] {1, 2}, 2).size(), is(0));
+        assertThat(StringAlgorithms.myers("ABCDGH".chars().toArray(), "AEDFHR".chars().toArray(), 5),
+                is(nullValue()));
+    }
+
+    @Test
+    public void testLinearMyers() {
+        Random r = new Random(0);
+        for (int i = 0; i < 500; i++) {
+            String s0 = randomString(r, "ABCD", r.nextInt(40));
+            String s1 = randomString(r, "ABCD", r.nextInt(40));
+            List<int[]> indexes = StringAlgorithms.myers(s0.chars().toArray(), s1.chars().toArray());
+            assertThat(indexes.size(), is(StringAlgorithms.lcss(s0, s1).size()));
+            int[] last = {-1, -1};
+            for (int[] index : indexes) {
+                assertThat(s0.charAt(index[0]), is(s1.charAt(index[1])));
+                assertThat(index[0] > last[0] && index[1] > last[1], is(true));
+                last = index;
+            }
+        }
+
+        List<int[]> hunks = StringAlgorithms.hunks("foo(bar, baz)", "foo(bar, qux, baz)");
+        assertThat(hunks.size(), is(2));
+        assertThat(hunks.get(0), is(new int[] {0, 9, 0, 9}));
+        assertThat(hunks.get(1), is(new int[] {9, 13, 14, 18}));
+    }
+
     @Test
     public void testLcs() {
         String lcs = StringAlgorithms.lcs("FUTUR", "CHUTE");
         assertThat(lcs, is("UT"));
+        assertThat(StringAlgorithms.lcs("ABAB", "BABA"), is("ABA"));
+        assertThat(StringAlgorithms.lcs("XABYAB", "AB"), is("AB"));
+        assertThat(StringAlgorithms.lcs("ABC", "DEF"), is(""));
+        assertThat(StringAlgorithms.lcs("", "DEF"), is(""));
+    }
+
+    private static String randomString(Random r, String alphabet, int length) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < length; i++)
+            b.append(alphabet.charAt(r.nextInt(alphabet.length())));
+        return b.toString();
     }
 
     @Test
@@ -60,4 +110,88 @@ public class TestAlgorithms {
         assertThat(result[2], is(2));
     }
 
+    @Test
+    public void testSparseAssignmentAlgorithm() {
+        SparseAssignmentAlgorithm a = new SparseAssignmentAlgorithm(3, 3);
+        for (int i = 0; i < 3; i++)
+            for (int j = 0; j < 3; j++)
+                a.addEdge(i, j, (i == j) ? 2D : 3D);
+        int[] result = a.execute();
+        assertThat(result[0], is(0));
+        assertThat(result[1], is(1));
+        assertThat(result[2], is(2));
+
+        // Worker 2 can only be assigned to job 0, and the jobs are scarcer than the workers.
+        SparseAssignmentAlgorithm b = new SparseAssignmentAlgorithm(3, 2);
+        b.addEdge(0, 0, 1D);
+        b.addEdge(0, 1, 5D);
+        b.addEdge(1, 0, 2D);
+        b.addEdge(2, 0, 4D);
+        result = b.execute();
+        assertThat(result[0], is(1));
+        assertThat(result[1], is(0));
+        assertThat(result[2], is(-1));
+
+        // Starting from the previous prices and assignment gives the same result.
+        SparseAssignmentAlgorithm c = new SparseAssignmentAlgorithm(3, 2);
+        c.addEdge(0, 0, 1D);
+        c.addEdge(0, 1, 5D);
+        c.addEdge(1, 0, 2D);
+        c.addEdge(2, 0, 4D);
+        c.warmStart(b.getPrices(), result);
+        assertThat(c.execute(), is(result));
+    }
+
+    @Test
+    public void testSparseAssignmentWarmStart() {
+        // Starting from the prices of a slightly different problem gives an optimal assignment.
+        Random r = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            int rows = 1 + r.nextInt(6);
+            int cols = 1 + r.nextInt(6);
+            double[][] costs = new double[rows][cols];
+            for (double[] row : costs)
+                for (int j = 0; j < cols; j++)
+                    row[j] = r.nextInt(4) == 0 ? -1D : r.nextInt(10);
+            SparseAssignmentAlgorithm previous = sparseAssignment(costs);
+            previous.execute();
+            costs[r.nextInt(rows)][r.nextInt(cols)] = r.nextInt(10);
+            SparseAssignmentAlgorithm cold = sparseAssignment(costs);
+            int[] expected = cold.execute();
+            SparseAssignmentAlgorithm warm = sparseAssignment(costs);
+            warm.warmStart(previous.getPrices(), null);
+            int[] result = warm.execute();
+            assertThat(assigned(result), is(assigned(expected)));
+            assertThat(cost(costs, result), is(cost(costs, expected)));
+        }
+    }
+
+    /**
+     * Builds an assignment having an edge for each non negative cost.
+     */
+    private static SparseAssignmentAlgorithm sparseAssignment(double[][] costs) {
+        SparseAssignmentAlgorithm a = new SparseAssignmentAlgorithm(costs.length, costs[0].length);
+        for (int i = 0; i < costs.length; i++)
+            for (int j = 0; j < costs[i].length; j++)
+                if (costs[i][j] >= 0)
+                    a.addEdge(i, j, costs[i][j]);
+        return a;
+    }
+
+    private static int assigned(int[] result) {
+        int assigned = 0;
+        for (int job : result)
+            if (job != -1)
+                assigned++;
+        return assigned;
+    }
+
+    private static double cost(double[][] costs, int[] result) {
+        double cost = 0D;
+        for (int i = 0; i < result.length; i++)
+            if (result[i] != -1)
+                cost += costs[i][result[i]];
+        return cost;
+    }
+
 }
@@ -0,0 +1,217 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.test;
+
+import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.matchers.heuristic.gt.CandidateIndex;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
+import com.github.gumtreediff.utils.Pair;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestCandidateIndex {
+
+    private static ITree randomTree(Random random, int size, int types) {
+        TreeContext ctx = new TreeContext();
+        List<ITree> trees = new ArrayList<>();
+        ITree root = ctx.createTree(0, ITree.NO_LABEL, null);
+        trees.add(root);
+        for (int i = 1; i < size; i++) {
+            // Favour the last trees to get deep trees.
+            int parent = Math.max(0, trees.size() - 1 - random.nextInt(Math.min(trees.size(), 4)));
+            ITree t = ctx.createTree(random.nextInt(types), ITree.NO_LABEL, null);
+            trees.get(parent).addChild(t);
+            t.setParent(trees.get(parent));
+            trees.add(t);
+        }
+        ctx.setRoot(root);
+        ctx.validate();
+        return root;
+    }
+
+    private static MappingStore randomMappings(Random random, ITree src, ITree dst) {
+        List<ITree> srcs = src.getTrees();
+        List<ITree> dsts = dst.getTrees();
+        MappingStore mappings = new MappingStore();
+        for (int i = 0; i < srcs.size() / 3; i++) {
+            ITree s = srcs.get(random.nextInt(srcs.size()));
+            ITree d = dsts.get(random.nextInt(dsts.size()));
+            if (!mappings.hasSrc(s) && !mappings.hasDst(d))
+                mappings.link(s, d);
+        }
+        return mappings;
+    }
+
+    /**
+     * The candidates as they were computed before the index, by walking up from each mapped descendant.
+     */
+    private static List<ITree> bruteForceCandidates(ITree src, MappingStore mappings) {
+        List<ITree> candidates = new ArrayList<>();
+        Set<ITree> visited = new HashSet<>();
+        for (ITree c : src.getDescendants()) {
+            ITree seed = mappings.getDst(c);
+            if (seed == null)
+                continue;
+            while (seed.getParent() != null) {
+                ITree parent = seed.getParent();
+                if (visited.contains(parent))
+                    break;
+                visited.add(parent);
+                if (parent.getType() == src.getType() && !mappings.hasDst(parent) && !parent.isRoot())
+                    candidates.add(parent);
+                seed = parent;
+            }
+        }
+        return candidates;
+    }
+
+    private static int bruteForceCommonDescendants(ITree src, ITree dst, MappingStore mappings) {
+        Set<ITree> dstDescendants = new HashSet<>(dst.getDescendants());
+        int common = 0;
+        for (ITree t : src.getDescendants())
+            if (dstDescendants.contains(mappings.getDst(t)))
+                common++;
+        return common;
+    }
+
+    private static void assertSameAsBruteForce(ITree src, ITree dst, MappingStore mappings) {
+        CandidateIndex index = new CandidateIndex(dst, mappings, t -> mappings.hasDst(t) || t.isRoot());
+        for (ITree s : src.getTrees()) {
+            index.index(s);
+            assertEquals(bruteForceCandidates(s, mappings), index.getCandidates(s.getType()));
+            for (ITree d : dst.getTrees())
+                assertEquals(bruteForceCommonDescendants(s, d, mappings), index.numberOfCommonDescendants(d));
+        }
+    }
+
+    @Test
+    public void testSameAsBruteForce() {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getGumtreePair();
+        ITree src = trees.getFirst().getRoot();
+        ITree dst = trees.getSecond().getRoot();
+        MappingStore mappings = new MappingStore();
+        mappings.link(src.getChild(0), dst.getChild(0));
+        mappings.link(src.getChild(0).getChild(0), dst.getChild(0).getChild(0));
+        mappings.link(src.getChild(1).getChild(0), dst.getChild(0).getChild(1));
+        assertSameAsBruteForce(src, dst, mappings);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 10; i++) {
+            src = randomTree(random, 100, 3);
+            dst = randomTree(random, 100, 3);
+            assertSameAsBruteForce(src, dst, randomMappings(random, src, dst));
+        }
+    }
+
+    /**
+     * The candidate selected by scoring every candidate, ties being won by the first one.
+     */
+    private static ITree unprunedBestCandidate(ITree src, List<ITree> candidates, MappingStore mappings,
+                                               double threshold, double similarity) {
+        ITree best = null;
+        double max = -1D;
+        for (ITree candidate : candidates) {
+            double common = bruteForceCommonDescendants(src, candidate, mappings);
+            double sim = common / (src.getDescendants().size() + candidate.getDescendants().size() - common);
+            if (sim >= threshold && sim > similarity && sim > max) {
+                max = sim;
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    @Test
+    public void testPruning() {
+        Random random = new Random(7);
+        long scanned = 0;
+        for (int i = 0; i < 10; i++) {
+            ITree src = randomTree(random, 100, 2);
+            ITree dst = randomTree(random, 100, 2);
+            MappingStore mappings = randomMappings(random, src, dst);
+            CandidateIndex index = new CandidateIndex(dst, mappings, t -> mappings.hasDst(t) || t.isRoot());
+            for (ITree s : src.getTrees()) {
+                index.index(s);
+                List<ITree> candidates = index.getCandidates(s.getType());
+                for (double similarity : new double[] {-1D, 0.4D}) {
+                    for (double threshold : new double[] {0D, 0.3D, 0.6D}) {
+                        ITree expected = unprunedBestCandidate(s, candidates, mappings, threshold, similarity);
+                        assertSame(expected, index.bestCandidate(candidates, threshold, similarity));
+                        if (!index.mayBeat(s, candidates, threshold, similarity))
+                            assertNull(expected);
+                        scanned += candidates.size();
+                    }
+                }
+            }
+            assertTrue(index.getAvoidedSimilarities() > 0);
+            assertTrue(index.getComputedSimilarities() > 0);
+            assertTrue(index.getComputedSimilarities() + index.getAvoidedSimilarities() >= scanned);
+            scanned = 0;
+        }
+    }
+
+    @Test
+    public void testCounters() {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getGumtreePair();
+        ITree src = trees.getFirst().getRoot();
+        ITree dst = trees.getSecond().getRoot();
+        MappingStore mappings = new MappingStore();
+        mappings.link(src.getChild(0).getChild(0), dst.getChild(0).getChild(0));
+        CandidateIndex index = new CandidateIndex(dst, mappings, t -> mappings.hasDst(t) || t.isRoot());
+        index.index(src.getChild(0));
+        List<ITree> candidates = index.getCandidates(src.getChild(0).getType());
+        assertEquals(1, candidates.size());
+
+        assertSame(candidates.get(0), index.bestCandidate(candidates, 0D, -1D));
+        assertEquals(1, index.getComputedSimilarities());
+        assertEquals(0, index.getAvoidedSimilarities());
+
+        // No similarity can exceed 1, so the candidate is not scored.
+        assertNull(index.bestCandidate(candidates, 0D, 1D));
+        assertEquals(1, index.getComputedSimilarities());
+        assertEquals(1, index.getAvoidedSimilarities());
+        assertFalse(index.mayBeat(src.getChild(0), candidates, 0D, 1D));
+        assertEquals(2, index.getAvoidedSimilarities());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testForeignTree() {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getGumtreePair();
+        ITree dst = trees.getSecond().getRoot();
+        CandidateIndex index = new CandidateIndex(dst, new MappingStore(), t -> false);
+        index.index(trees.getFirst().getRoot());
+        ITree foreign = new TreeContext().createTree(0, ITree.NO_LABEL, null);
+        foreign.setId(dst.getSize() + 100);
+        index.numberOfCommonDescendants(foreign);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.test;
+
+import com.github.gumtreediff.matchers.CostEstimator;
+import com.github.gumtreediff.matchers.DiffScheduler;
+import com.github.gumtreediff.matchers.Matchers;
+import com.github.gumtreediff.tree.TreeContext;
+import com.github.gumtreediff.utils.Pair;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestCostEstimator {
+
+    @Test
+    public void testStatistics() {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getDummyPair();
+        CostEstimator estimator = new CostEstimator(trees.getFirst(), trees.getSecond());
+        assertEquals(trees.getFirst().getRoot().getSize(), estimator.getSrcStatistics().getSize());
+        assertEquals(trees.getSecond().getRoot().getHeight(), estimator.getDstStatistics().getHeight());
+        assertEquals((trees.getFirst().getRoot().getSize() + 1L) * (trees.getSecond().getRoot().getSize() + 1L),
+                estimator.getZsMatrixCells());
+        assertTrue(estimator.estimate("rted").getBytes() > estimator.estimate("xy").getBytes());
+        assertTrue(estimator.estimateRegistered().keySet().containsAll(
+                Arrays.asList("gumtree", "change-distiller", "xy")));
+        // Every registered matcher has a cost model.
+        for (Matchers.Entry entry : Matchers.getInstance().getEntries())
+            assertTrue(entry.id, CostEstimator.isEstimated(entry.id));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownMatcher() {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getDummyPair();
+        new CostEstimator(trees.getFirst(), trees.getSecond()).estimate("foo");
+    }
+
+    @Test
+    public void testScheduler() {
+        Pair<TreeContext, TreeContext> small = TreeLoader.getDummyPair();
+        Pair<TreeContext, TreeContext> big = new Pair<>(TreeLoader.load("/Dummy_big.xml"), TreeLoader.load("/Dummy_big.xml"));
+        long rted = new CostEstimator(big.getFirst(), big.getSecond()).estimate("rted").getBytes();
+        long xy = new CostEstimator(big.getFirst(), big.getSecond()).estimate("xy").getBytes();
+
+        List<DiffScheduler.Task> tasks = new DiffScheduler(rted, "rted", "xy").schedule(Arrays.asList(small, big));
+        assertSame(big, tasks.get(0).getPair());
+        assertSame(small, tasks.get(1).getPair());
+        assertEquals("rted", tasks.get(0).getMatcher());
+        assertFalse(tasks.get(0).isDowngraded());
+
+        tasks = new DiffScheduler(rted - 1, "rted", "xy").schedule(Arrays.asList(big));
+        assertEquals("xy", tasks.get(0).getMatcher());
+        assertTrue(tasks.get(0).isDowngraded());
+        assertNotNull(tasks.get(0).newMatcher());
+
+        tasks = new DiffScheduler(xy - 1, "rted", "xy").schedule(Arrays.asList(big));
+        assertTrue(tasks.get(0).isRefused());
+        assertNull(tasks.get(0).newMatcher());
+    }
+}
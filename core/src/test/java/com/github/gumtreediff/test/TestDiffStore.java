@@ -0,0 +1,194 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.test;
+
+import com.github.gumtreediff.actions.ActionGenerator;
+import com.github.gumtreediff.actions.DiffStore;
+import com.github.gumtreediff.actions.model.Action;
+import com.github.gumtreediff.actions.model.Addition;
+import com.github.gumtreediff.actions.model.Update;
+import com.github.gumtreediff.matchers.Mapping;
+import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
+import com.github.gumtreediff.utils.Pair;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestDiffStore {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final DiffStore.Key KEY = DiffStore.key(bytes("a"), bytes("b"), "gen", "matcher");
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static MappingStore mappings(ITree src, ITree dst) {
+        MappingStore ms = new MappingStore();
+        ms.link(src, dst);
+        ms.link(src.getChild(1), dst.getChild(0));
+        ms.link(src.getChild(1).getChild(0), dst.getChild(0).getChild(0));
+        ms.link(src.getChild(1).getChild(1), dst.getChild(0).getChild(1));
+        ms.link(src.getChild(0), dst.getChild(1).getChild(0));
+        ms.link(src.getChild(0).getChild(0), dst.getChild(1).getChild(0).getChild(0));
+        return ms;
+    }
+
+    private static List<String> describe(List<Action> actions) {
+        List<String> descriptions = new ArrayList<>();
+        for (Action a : actions) {
+            String d = a.getName() + " " + a.getNode().toShortString();
+            if (a instanceof Addition)
+                d += " " + ((Addition) a).getParent().toShortString() + " " + ((Addition) a).getPosition();
+            if (a instanceof Update)
+                d += " " + ((Update) a).getValue();
+            descriptions.add(d);
+        }
+        return descriptions;
+    }
+
+    private static List<Action> store(DiffStore cache, DiffStore.Key key) throws IOException {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getActionPair();
+        ITree src = trees.getFirst().getRoot();
+        ITree dst = trees.getSecond().getRoot();
+        MappingStore ms = mappings(src, dst);
+        ActionGenerator ag = new ActionGenerator(src, dst, ms);
+        ag.generate();
+        assertTrue(cache.put(key, src, dst, ms, ag.getActions()));
+        return ag.getActions();
+    }
+
+    private static void assertRebuilt(List<Action> expected, DiffStore cache, DiffStore.Key key) throws IOException {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getActionPair();
+        ITree src = trees.getFirst().getRoot();
+        ITree dst = trees.getSecond().getRoot();
+        DiffStore.Result result = cache.get(key, src, dst);
+        assertNotNull(result);
+        assertEquals(describe(expected), describe(result.getActions()));
+        for (Action a : result.getActions())
+            assertTrue(contains(src, a.getNode()) || contains(dst, a.getNode()));
+
+        MappingStore ms = mappings(src, dst);
+        assertEquals(ms.asSet().size(), result.getMappings().asSet().size());
+        for (Mapping m : ms)
+            assertSame(m.getSecond(), result.getMappings().getDst(m.getFirst()));
+    }
+
+    private static boolean contains(ITree root, ITree tree) {
+        for (ITree t : root.getTrees())
+            if (t == tree)
+                return true;
+        return false;
+    }
+
+    @Test
+    public void testRebuild() throws IOException {
+        DiffStore cache = new DiffStore(1 << 20);
+        assertNull(cache.get(KEY, TreeLoader.getDummySrc(), TreeLoader.getDummyDst()));
+        List<Action> actions = store(cache, KEY);
+        assertEquals(4, actions.size());
+        assertRebuilt(actions, cache, KEY);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testOtherTrees() throws IOException {
+        DiffStore cache = new DiffStore(1 << 20);
+        store(cache, KEY);
+        assertNull(cache.get(KEY, TreeLoader.getDummySrc(), TreeLoader.getDummyDst()));
+    }
+
+    @Test
+    public void testKey() {
+        assertEquals(KEY, DiffStore.key(bytes("a"), bytes("b"), "gen", "matcher"));
+        assertNotEquals(KEY, DiffStore.key(bytes("b"), bytes("a"), "gen", "matcher"));
+        assertNotEquals(KEY, DiffStore.key(bytes("a"), bytes("b"), "gen", "other"));
+        assertNotEquals(KEY, DiffStore.key(bytes("a"), bytes("b"), "other", "matcher"));
+        System.setProperty("gumtree.test.cache", "1");
+        try {
+            assertNotEquals(KEY, DiffStore.key(bytes("a"), bytes("b"), "gen", "matcher"));
+        } finally {
+            System.clearProperty("gumtree.test.cache");
+        }
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        DiffStore cache = new DiffStore(1 << 20);
+        store(cache, KEY);
+        long size = cache.getSize();
+        assertTrue(size > 0);
+
+        cache = new DiffStore(size * 2);
+        for (int i = 0; i < 10; i++)
+            store(cache, DiffStore.key(bytes("a" + i), bytes("b"), "gen", "matcher"));
+        assertEquals(size * 2, cache.getSize());
+        assertNull(cache.get(DiffStore.key(bytes("a0"), bytes("b"), "gen", "matcher"),
+                TreeLoader.getActionPair().getFirst().getRoot(), TreeLoader.getActionPair().getSecond().getRoot()));
+    }
+
+    @Test
+    public void testJournal() throws IOException {
+        File journal = new File(folder.getRoot(), "diffs");
+        List<Action> actions;
+        DiffStore.Key other = DiffStore.key(bytes("c"), bytes("d"), "gen", "matcher");
+        try (DiffStore cache = new DiffStore(1 << 20, journal)) {
+            actions = store(cache, KEY);
+        }
+        long length = journal.length();
+        try (FileOutputStream out = new FileOutputStream(journal, true)) {
+            out.write(new byte[] {0, 40, 'x'});
+        }
+
+        try (DiffStore cache = new DiffStore(0, journal)) {
+            assertEquals(length, journal.length());
+            assertRebuilt(actions, cache, KEY);
+            assertEquals(0, cache.getSize());
+            store(cache, other);
+        }
+
+        try (DiffStore cache = new DiffStore(1 << 20, journal)) {
+            assertRebuilt(actions, cache, KEY);
+            assertRebuilt(actions, cache, other);
+            assertFalse(cache.getSize() == 0);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.test;
+
+import com.github.gumtreediff.io.DirectoryComparator;
+import com.github.gumtreediff.utils.Pair;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestDirectoryComparator {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static File write(File root, String name, byte[] content) throws IOException {
+        File f = new File(root, name);
+        f.getParentFile().mkdirs();
+        Files.write(f.toPath(), content);
+        f.setLastModified(1000000L);
+        return f;
+    }
+
+    @Test
+    public void testCompare() throws IOException {
+        File src = folder.newFolder("src");
+        File dst = folder.newFolder("dst");
+        byte[] big = new byte[DirectoryComparator.BUFFER_SIZE * 2 + 10];
+        write(src, "same.txt", "same".getBytes());
+        write(dst, "same.txt", "same".getBytes());
+        write(src, "a/big.bin", big);
+        big[big.length - 1] = 1;
+        write(dst, "a/big.bin", big);
+        write(src, "a/size.txt", "short".getBytes());
+        write(dst, "a/size.txt", "longer".getBytes());
+        write(src, "touched.txt", "abc".getBytes());
+        write(dst, "touched.txt", "abd".getBytes());
+        write(src, "deleted.txt", new byte[0]);
+        write(dst, "b/added.txt", new byte[0]);
+
+        DirectoryComparator comparator = new DirectoryComparator(src.getPath(), dst.getPath());
+        List<String> streamed = Collections.synchronizedList(new ArrayList<>());
+        comparator.compare(p -> streamed.add(p.getSecond().getName()));
+        List<String> modified = new ArrayList<>();
+        for (Pair<File, File> pair : comparator.getModifiedFiles())
+            modified.add(comparator.getSrc().relativize(pair.getFirst().toPath()).toString());
+        assertEquals(3, modified.size());
+        assertEquals(new File("a", "big.bin").getPath(), modified.get(0));
+        assertEquals(new File("a", "size.txt").getPath(), modified.get(1));
+        assertEquals("touched.txt", modified.get(2));
+        assertEquals(3, streamed.size());
+        assertEquals(Collections.singleton(new File(src, "deleted.txt")), comparator.getDeletedFiles());
+        assertEquals(Collections.singleton(new File(dst, "b/added.txt")), comparator.getAddedFiles());
+        assertTrue(comparator.hasChanged("touched.txt", "touched.txt"));
+        assertFalse(comparator.hasChanged("same.txt", "same.txt"));
+
+        // Same size and modification time
+        comparator = new DirectoryComparator(src.getPath(), dst.getPath());
+        comparator.setTrustTimestamps(true);
+        comparator.compare();
+        assertEquals(1, comparator.getModifiedFiles().size());
+        assertEquals("size.txt", comparator.getModifiedFiles().get(0).getFirst().getName());
+    }
+
+    @Test
+    public void testNoThreads() throws IOException {
+        File src = folder.newFolder("src");
+        File dst = folder.newFolder("dst");
+        write(src, "a.txt", "a".getBytes());
+        write(dst, "a.txt", "b".getBytes());
+        int threads = DirectoryComparator.THREADS;
+        DirectoryComparator.THREADS = 0;
+        try {
+            DirectoryComparator comparator = new DirectoryComparator(src.getPath(), dst.getPath());
+            comparator.compare();
+            assertEquals(1, comparator.getModifiedFiles().size());
+        } finally {
+            DirectoryComparator.THREADS = threads;
+        }
+    }
+}
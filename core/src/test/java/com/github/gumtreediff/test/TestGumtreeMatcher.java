@@ -20,14 +20,24 @@
 
 package com.github.gumtreediff.test;
 
+import com.github.gumtreediff.actions.ActionGenerator;
+import com.github.gumtreediff.matchers.CompositeMatcher;
 import com.github.gumtreediff.matchers.CompositeMatchers;
+import com.github.gumtreediff.matchers.Mapping;
 import com.github.gumtreediff.matchers.MappingStore;
 import com.github.gumtreediff.matchers.Matcher;
 import com.github.gumtreediff.matchers.heuristic.gt.AbstractBottomUpMatcher;
 import com.github.gumtreediff.matchers.heuristic.gt.GreedySubtreeMatcher;
+import com.github.gumtreediff.utils.Deadline;
+import com.github.gumtreediff.tree.ITree;
 import com.github.gumtreediff.utils.Pair;
 import com.github.gumtreediff.tree.TreeContext;
 import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 import static org.junit.Assert.*;
 
 public class TestGumtreeMatcher {
@@ -66,4 +76,114 @@ public class TestGumtreeMatcher {
         assertEquals(6, m.getMappingSet().size());
     }
 
+    @Test
+    public void testCancelledDeadline() {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getGumtreePair();
+        GreedySubtreeMatcher.MIN_HEIGHT = 0;
+        AbstractBottomUpMatcher.SIZE_THRESHOLD = 0;
+        Deadline deadline = Deadline.cancellable();
+        deadline.cancel();
+        Matcher m = new CompositeMatchers.ClassicGumtree(
+                trees.getFirst().getRoot(), trees.getSecond().getRoot(), new MappingStore());
+        m.setDeadline(deadline);
+        m.match();
+        assertEquals(0, m.getMappingSet().size());
+        assertEquals(Arrays.asList("GreedySubtreeMatcher", "GreedyBottomUpMatcher"), deadline.getCutStages());
+
+        ActionGenerator g = new ActionGenerator(trees.getFirst().getRoot(), trees.getSecond().getRoot(),
+                m.getMappings());
+        g.setDeadline(deadline);
+        try {
+            g.generate();
+            fail("The action generation should have been aborted.");
+        } catch (Deadline.ExceededException e) {
+            assertEquals("ActionGenerator", e.getStage());
+        }
+        assertNull(trees.getSecond().getRoot().getParent());
+    }
+
+    @Test
+    public void testCancelNoDeadline() {
+        Deadline.NONE.cancel();
+        assertFalse(Deadline.NONE.isExpired());
+    }
+
+    @Test
+    public void testPrePass() {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getGumtreePair();
+        int minHeight = GreedySubtreeMatcher.MIN_HEIGHT;
+        GreedySubtreeMatcher.MIN_HEIGHT = 2;
+        try {
+            CompositeMatcher m = new CompositeMatchers.ClassicGumtree(
+                    trees.getFirst().getRoot(), trees.getFirst().getRoot().deepCopy(), new MappingStore());
+            m.match();
+            assertEquals(trees.getFirst().getRoot().getSize(), m.getPrePassResolved());
+            assertEquals(trees.getFirst().getRoot().getSize(), m.getMappingSet().size());
+
+            GreedySubtreeMatcher.MIN_HEIGHT = 1;
+            ITree[] src = prePassTree("z");
+            ITree[] dst = prePassTree("w");
+            m = new CompositeMatchers.ClassicGumtree(src[0], dst[0], new MappingStore());
+            m.match();
+            assertEquals(3, m.getPrePassResolved());
+            for (int i = 1; i <= 3; i++)
+                assertSame(dst[i], m.getMappings().getDst(src[i]));
+        } finally {
+            GreedySubtreeMatcher.MIN_HEIGHT = minHeight;
+        }
+    }
+
+    @Test
+    public void testNoPrePass() {
+        ITree src = prePassTree("z")[0];
+        CompositeMatcher m = new CompositeMatchers.XyMatcher(src, src.deepCopy(), new MappingStore());
+        m.match();
+        assertEquals(0, m.getPrePassResolved());
+    }
+
+    @Test(timeout = 10000)
+    public void testMappedRoots() {
+        Pair<TreeContext, TreeContext> trees = TreeLoader.getGumtreePair();
+        ITree src = trees.getFirst().getRoot();
+        ITree dst = trees.getSecond().getRoot();
+        int minHeight = GreedySubtreeMatcher.MIN_HEIGHT;
+        GreedySubtreeMatcher.MIN_HEIGHT = 1;
+        try {
+            Matcher m = new GreedySubtreeMatcher(src, dst, new MappingStore());
+            m.match();
+            Set<Mapping> expected = new HashSet<>();
+            for (Mapping mapping : m.getMappingSet())
+                if (mapping.getFirst() != src && mapping.getSecond() != dst)
+                    expected.add(mapping);
+            expected.add(new Mapping(src, dst));
+
+            MappingStore store = new MappingStore();
+            store.link(src, dst);
+            m = new GreedySubtreeMatcher(src, dst, store);
+            m.match();
+            assertEquals(expected, m.getMappingSet());
+        } finally {
+            GreedySubtreeMatcher.MIN_HEIGHT = minHeight;
+        }
+    }
+
+    /**
+     * Builds r(a(x, y), b(last)) and returns r, a, x, y.
+     */
+    private static ITree[] prePassTree(String last) {
+        TreeContext ctx = new TreeContext();
+        ITree r = ctx.createTree(0, ITree.NO_LABEL, null);
+        ITree a = ctx.createTree(1, ITree.NO_LABEL, null);
+        ITree x = ctx.createTree(2, "x", null);
+        ITree y = ctx.createTree(2, "y", null);
+        ITree b = ctx.createTree(3, ITree.NO_LABEL, null);
+        a.addChild(x);
+        a.addChild(y);
+        b.addChild(ctx.createTree(2, last, null));
+        r.addChild(a);
+        r.addChild(b);
+        ctx.setRoot(r);
+        ctx.validate();
+        return new ITree[] {r, a, x, y};
+    }
 }
@@ -0,0 +1,105 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.test;
+
+import com.github.gumtreediff.matchers.CompositeMatchers;
+import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.matchers.Matcher;
+import com.github.gumtreediff.matchers.heuristic.LineAnchorMatcher;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestLineAnchorMatcher {
+
+    private static final int ROOT = 0;
+    private static final int LINE = 1;
+    private static final int VALUE = 2;
+
+    /**
+     * Parses lines "name value" into a root with a node per line, labeled by the name, having a
+     * child labeled by the value.
+     */
+    private static ITree parse(String text) {
+        TreeContext ctx = new TreeContext();
+        ITree root = ctx.createTree(ROOT, ITree.NO_LABEL, null);
+        root.setPos(0);
+        root.setLength(text.length());
+        int start = 0;
+        for (String line : text.split("\n")) {
+            String[] tokens = line.split(" ");
+            ITree l = ctx.createTree(LINE, tokens[0], null);
+            l.setPos(start);
+            l.setLength(line.length());
+            ITree v = ctx.createTree(VALUE, tokens[1], null);
+            v.setPos(start + tokens[0].length() + 1);
+            v.setLength(tokens[1].length());
+            l.addChild(v);
+            root.addChild(l);
+            start += line.length() + 1;
+        }
+        ctx.setRoot(root);
+        ctx.validate();
+        return root;
+    }
+
+    @Test
+    public void testAnchors() {
+        String srcText = "a 1\nb 2\nc 3\nd 1\n";
+        String dstText = "z 0\na 1\nb 2\nc 4\nd 1\n";
+        ITree src = parse(srcText);
+        ITree dst = parse(dstText);
+
+        LineAnchorMatcher m = new LineAnchorMatcher(src, dst, new MappingStore(), srcText, dstText);
+        m.match();
+        assertEquals(6, m.getAnchored());
+        assertEquals(dst.getChild(1), m.getMappings().getDst(src.getChild(0)));
+        assertEquals(dst.getChild(2).getChild(0), m.getMappings().getDst(src.getChild(1).getChild(0)));
+        assertEquals(dst.getChild(4), m.getMappings().getDst(src.getChild(3)));
+        assertFalse(m.getMappings().hasSrc(src.getChild(2)));
+        assertFalse(m.getMappings().hasSrc(src));
+
+        Matcher c = new CompositeMatchers.LineAnchoredGumtree(src, dst, new MappingStore(), srcText, dstText);
+        c.match();
+        assertEquals(dst, c.getMappings().getDst(src));
+        assertEquals(dst.getChild(1), c.getMappings().getDst(src.getChild(0)));
+        assertEquals(dst.getChild(4), c.getMappings().getDst(src.getChild(3)));
+    }
+
+    @Test
+    public void testTooManyEdits() {
+        String srcText = "a 1\nb 2\n";
+        String dstText = "c 1\nd 2\n";
+        int maxEdits = LineAnchorMatcher.MAX_EDITS;
+        LineAnchorMatcher.MAX_EDITS = 1;
+        try {
+            LineAnchorMatcher m = new LineAnchorMatcher(parse(srcText), parse(dstText), new MappingStore(),
+                    srcText, dstText);
+            m.match();
+            assertEquals(0, m.getAnchored());
+            assertEquals(0, m.getMappings().asSet().size());
+        } finally {
+            LineAnchorMatcher.MAX_EDITS = maxEdits;
+        }
+    }
+}
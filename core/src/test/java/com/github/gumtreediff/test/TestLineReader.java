@@ -0,0 +1,70 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.test;
+
+import com.github.gumtreediff.io.LineReader;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class TestLineReader {
+
+    @Test
+    public void testPositions() throws IOException {
+        String text = "ab\ncde\n\nf";
+        // Reads in small chunks, the last one being incomplete
+        char[] buffer = new char[4];
+        LineReader r = new LineReader(new StringReader(text));
+        while (r.read(buffer, 0, buffer.length) != -1)
+            continue;
+        assertEquals(4, r.getLineCount());
+
+        assertEquals(0, r.positionFor(1, 1));
+        assertEquals(1, r.positionFor(1, 2));
+        assertEquals(2, r.positionFor(2, 1));
+        assertEquals(6, r.positionFor(3, 1));
+        assertEquals(8, r.positionFor(4, 2));
+        for (int offset = 0; offset < text.length(); offset++) {
+            int[] position = r.positionFor(offset);
+            assertEquals(offset, r.positionFor(position[0], position[1]));
+        }
+        assertArrayEquals(new int[] {2, 3}, r.positionFor(4));
+    }
+
+    @Test
+    public void testLargeText() throws IOException {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 10000; i++)
+            b.append("line ").append(i).append('\n');
+        try (Reader r = new LineReader(new StringReader(b.toString()))) {
+            char[] buffer = new char[1000];
+            while (r.read(buffer) != -1)
+                continue;
+            LineReader lr = (LineReader) r;
+            assertEquals(10001, lr.getLineCount());
+            assertArrayEquals(new int[] {5001, 2}, lr.positionFor(lr.positionFor(5001, 2)));
+        }
+    }
+}
@@ -22,6 +22,8 @@ package com.github.gumtreediff.test;
 
 import com.github.gumtreediff.io.TreeIoUtils;
 import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.MetadataTable;
+import com.github.gumtreediff.tree.Tree;
 import com.github.gumtreediff.tree.TreeContext;
 import com.google.common.collect.Sets;
 import org.junit.Before;
@@ -106,7 +108,8 @@ public class TestMetadata {
             assertNotEquals("Iterate more than once", -1, i);
             seen.remove(i);
             i = keyList.indexOf(e.getKey());
-            assertEquals("Not the right entry", i, (Object) values[i]);
+            if (values != null)
+                assertEquals("Not the right entry", i, (Object) values[i]);
         }
         assertEquals("Some metadata are not iterated", 0, seen.size());
     }
@@ -149,6 +152,62 @@ public class TestMetadata {
         assertEquals(Sets.newHashSet(key, v2), tc.getSerializers().exports());
     }
 
+    @Test
+    public void testTypedKeys() throws Exception {
+        MetadataTable.IntKey line = tc.registerIntMetadata("line");
+        MetadataTable.BooleanKey flag = tc.registerBooleanMetadata("flag");
+        MetadataTable.Key<String> name = tc.registerMetadata(key);
+        assertSame(line, tc.registerIntMetadata("line"));
+        assertSame(name, tc.getMetadataTable().getKey(key));
+
+        ITree other = tc.createTree(1, "", "");
+        someNode.addChild(other);
+        line.setInt(other, 42);
+        flag.set(someNode, true);
+        name.set(other, v1);
+        assertEquals(42, line.getInt(other, -1));
+        assertEquals(-1, line.getInt(someNode, -1));
+        assertTrue(flag.is(someNode));
+        assertFalse(flag.is(other));
+
+        // The string API and the keys share the same columns
+        assertEquals(42, other.getMetadata("line"));
+        assertEquals(v1, other.getMetadata(key));
+        assertEquals(Boolean.TRUE, someNode.getMetadata("flag"));
+        assertNull(someNode.getMetadata(key));
+        assertEquals(42, other.setMetadata("line", 7));
+        assertEquals(7, line.getInt(other, -1));
+        assertNull(other.setMetadata("unknown", null));
+        assertNull(tc.getMetadataTable().getKey("unknown"));
+        checkIterator(new String[] {"line", key}, null, other.getMetadata());
+
+        // A tree of another context keeps its own metadata
+        ITree tree = new Tree(2, "");
+        line.setInt(tree, 3);
+        assertEquals(3, tree.getMetadata("line"));
+        assertEquals(3, line.getInt(tree, -1));
+        assertEquals(7, line.getInt(other, -1));
+
+        // A derived context shares the metadata of the trees it copies
+        assertEquals(v1, tc.deriveTree().getRoot().getChild(0).getMetadata(key));
+
+        try {
+            tc.registerBooleanMetadata("line");
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Registered as an int key
+        }
+    }
+
+    @Test
+    public void testExportTypedKeys() throws Exception {
+        MetadataTable.IntKey line = tc.registerIntMetadata("line");
+        line.setInt(someNode, 3);
+        someNode.setMetadata(key, v1);
+        tc.export("line");
+        assertEquals("(() (0 \"0\" \"\" ((:line \"3\") ) ())", TreeIoUtils.toLisp(tc).toString());
+    }
+
     @Test(expected = RuntimeException.class)
     public void testExportInvalid1() {
         tc.export("Test key");
@@ -0,0 +1,82 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.test;
+
+import com.github.gumtreediff.gen.ParserProcess;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class TestParserProcess {
+
+    private static ProcessBuilder shell(String script) {
+        return new ProcessBuilder("sh", "-c", script);
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[16];
+        int n;
+        while ((n = in.read(buffer)) != -1)
+            out.write(buffer, 0, n);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testOutput() throws IOException {
+        assertEquals("<unit>a</unit>\n", ParserProcess.run(shell("echo '<unit>a</unit>'"), 10000,
+                TestParserProcess::read));
+    }
+
+    @Test
+    public void testFailure() throws IOException {
+        try {
+            ParserProcess.run(shell("echo broken; exit 3"), 10000, TestParserProcess::read);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("[3]"));
+        }
+    }
+
+    @Test
+    public void testTimeout() throws IOException {
+        long start = System.currentTimeMillis();
+        try {
+            ParserProcess.run(shell("echo '<unit>'; exec sleep 10"), 500, TestParserProcess::read);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("timed out"));
+        }
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        // A parser writing nothing is killed as well
+        try {
+            ParserProcess.run(shell("exec sleep 10"), 500, in -> null);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("timed out"));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.test;
+
+import com.github.gumtreediff.actions.ActionGenerator;
+import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.matchers.PartitionedMatcher;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestPartitionedMatcher {
+
+    private static final int FUNCTION = 1;
+
+    private static final int NAME = 2;
+
+    private static final int STATEMENT = 3;
+
+    private static final int EXPRESSION = 4;
+
+    private static ITree function(TreeContext ctx, String name, String... statements) {
+        ITree f = ctx.createTree(FUNCTION, ITree.NO_LABEL, null);
+        if (name != null)
+            f.addChild(ctx.createTree(NAME, name, null));
+        for (String label : statements) {
+            ITree s = ctx.createTree(STATEMENT, ITree.NO_LABEL, null);
+            s.addChild(ctx.createTree(EXPRESSION, label, null));
+            s.addChild(ctx.createTree(EXPRESSION, label + "'", null));
+            f.addChild(s);
+        }
+        return f;
+    }
+
+    private static List<ITree> functions(ITree root) {
+        List<ITree> functions = new ArrayList<>();
+        for (ITree t : root.getTrees())
+            if (t.getType() == FUNCTION)
+                functions.add(t);
+        return functions;
+    }
+
+    private static String name(ITree function) {
+        for (ITree c : function.getChildren())
+            if (c.getType() == NAME)
+                return c.getLabel();
+        return null;
+    }
+
+    @Test
+    public void testAnchors() {
+        TreeContext src = new TreeContext();
+        ITree srcRoot = src.createTree(0, ITree.NO_LABEL, null);
+        srcRoot.addChild(function(src, "a", "x", "y"));
+        srcRoot.addChild(function(src, "b", "x", "y", "z"));
+        ITree outer = function(src, null, "u");
+        outer.addChild(function(src, null, "v", "w"));
+        srcRoot.addChild(outer);
+        srcRoot.addChild(function(src, "c", "s"));
+        src.setRoot(srcRoot);
+        src.validate();
+
+        TreeContext dst = new TreeContext();
+        ITree dstRoot = dst.createTree(0, ITree.NO_LABEL, null);
+        dstRoot.addChild(function(dst, "b", "x", "z", "t"));
+        dstRoot.addChild(function(dst, "a", "x", "y"));
+        outer = function(dst, null, "u", "u");
+        outer.addChild(function(dst, null, "v"));
+        dstRoot.addChild(outer);
+        dst.setRoot(dstRoot);
+        dst.validate();
+
+        PartitionedMatcher m = new PartitionedMatcher(srcRoot, dstRoot, new MappingStore(),
+                functions(srcRoot), functions(dstRoot), TestPartitionedMatcher::name, "gumtree");
+        m.match();
+        assertEquals(1, m.getHashAnchors());
+        assertEquals(1, m.getNameAnchors());
+        assertEquals(2, m.getPositionAnchors());
+
+        assertEquals(dstRoot, m.getMappings().getDst(srcRoot));
+        assertEquals(dstRoot.getChild(1), m.getMappings().getDst(srcRoot.getChild(0)));
+        assertEquals(dstRoot.getChild(0), m.getMappings().getDst(srcRoot.getChild(1)));
+        assertEquals(dstRoot.getChild(2).getChild(2), m.getMappings().getDst(srcRoot.getChild(2).getChild(1)));
+        assertFalse(m.getMappings().hasSrc(srcRoot.getChild(3)));
+        for (ITree t : srcRoot.getChild(3).getTrees())
+            assertFalse(m.getMappings().hasSrc(t));
+
+        ActionGenerator g = new ActionGenerator(srcRoot, dstRoot, m.getMappings());
+        assertFalse(g.generate().isEmpty());
+    }
+}
@@ -20,14 +20,24 @@
 
 package com.github.gumtreediff.test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.io.InvalidClassException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
 import org.junit.Test;
 
+import ca.ubc.ece.salt.gumtree.ast.ClassifiedASTNode;
+import com.github.gumtreediff.tree.AstNodeTable;
 import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
 import com.github.gumtreediff.tree.TreeUtils;
 
 public class TestTree {
@@ -79,4 +89,35 @@ public class TestTree {
         assertTrue(tree.isIsomorphicTo(copy));
     }
 
+    @Test
+    public void testDetachASTNodes() throws InvalidClassException {
+        TreeContext ctx = new TreeContext();
+        ctx.setRoot(TreeLoader.getDummySrc());
+        List<ClassifiedASTNode> nodes = new ArrayList<>();
+        for (ITree t : ctx.getRoot().preOrder()) {
+            nodes.add(newASTNode());
+            t.setASTNode(nodes.get(nodes.size() - 1));
+        }
+
+        AstNodeTable table = ctx.detachAstNodes();
+        assertEquals(nodes.size(), table.size());
+        assertSame(nodes.get(2), ctx.getRoot().getTrees().get(2).getClassifiedASTNode());
+
+        List<ClassifiedASTNode> reloaded = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++)
+            reloaded.add(newASTNode());
+        table.setLoader(() -> reloaded);
+        table.drop();
+        assertFalse(table.isAttached());
+        ClassifiedASTNode node = ctx.getRoot().getTrees().get(2).getClassifiedASTNode();
+        assertTrue(table.isAttached());
+        assertNotSame(nodes.get(2), node);
+        assertSame(reloaded.get(2), node);
+    }
+
+    private static ClassifiedASTNode newASTNode() {
+        return (ClassifiedASTNode) Proxy.newProxyInstance(ClassifiedASTNode.class.getClassLoader(),
+            new Class<?>[] { ClassifiedASTNode.class }, (proxy, method, args) -> null);
+    }
+
 }
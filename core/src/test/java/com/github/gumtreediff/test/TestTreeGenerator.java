@@ -0,0 +1,93 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.test;
+
+import com.github.gumtreediff.gen.TreeGenerator;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class TestTreeGenerator {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * A node per line, labeled by the line.
+     */
+    private static class LinesTreeGenerator extends TreeGenerator {
+
+        @Override
+        protected TreeContext generate(Reader r, boolean preProcess) throws IOException {
+            TreeContext ctx = new TreeContext();
+            ITree root = ctx.createTree(0, ITree.NO_LABEL, null);
+            BufferedReader reader = new BufferedReader(r);
+            for (String line = reader.readLine(); line != null; line = reader.readLine())
+                root.addChild(ctx.createTree(1, line, null));
+            ctx.setRoot(root);
+            return ctx;
+        }
+    }
+
+    private static final String TEXT = "café\nà la crème\n中文";
+
+    private static void assertLines(TreeContext ctx) {
+        ITree root = ctx.getRoot();
+        assertEquals(3, root.getChildren().size());
+        assertEquals("café", root.getChild(0).getLabel());
+        assertEquals("à la crème", root.getChild(1).getLabel());
+        assertEquals("中文", root.getChild(2).getLabel());
+    }
+
+    @Test
+    public void testFromBytes() throws IOException {
+        TreeGenerator g = new LinesTreeGenerator();
+        assertLines(g.generateFromBytes(TEXT.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8, false));
+        assertLines(g.generateFromBytes(TEXT.getBytes(StandardCharsets.UTF_16), StandardCharsets.UTF_16, false));
+    }
+
+    @Test
+    public void testFromPath() throws IOException {
+        TreeGenerator g = new LinesTreeGenerator();
+        File f = folder.newFile("text.txt");
+        Files.write(f.toPath(), TEXT.getBytes(StandardCharsets.UTF_8));
+        assertLines(g.generateFromPath(f.toPath(), StandardCharsets.UTF_8, false));
+
+        long threshold = TreeGenerator.MAP_THRESHOLD;
+        TreeGenerator.MAP_THRESHOLD = 0;
+        try {
+            assertLines(g.generateFromPath(f.toPath(), StandardCharsets.UTF_8, false));
+        } finally {
+            TreeGenerator.MAP_THRESHOLD = threshold;
+        }
+    }
+}
@@ -23,10 +23,7 @@ package com.github.gumtreediff.gen.antlrantlr;
 import com.github.gumtreediff.gen.antlr.AbstractAntlrTreeGenerator;
 import com.github.gumtreediff.gen.Register;
 import com.github.gumtreediff.gen.antlr.AbstractAntlrTreeGenerator;
-import org.antlr.runtime.ANTLRReaderStream;
-import org.antlr.runtime.ANTLRStringStream;
 import org.antlr.runtime.RecognitionException;
-import org.antlr.runtime.TokenRewriteStream;
 import org.antlr.runtime.tree.CommonTree;
 
 import java.io.IOException;
@@ -35,12 +32,14 @@ import java.io.Reader;
 @Register(id = "antlr-antlr", accept = "\\.[gG]$")
 public class AntlrGrammarTreeGenerator extends AbstractAntlrTreeGenerator {
 
+    private static final ThreadLocal<ANTLRv3Lexer> LEXERS = ThreadLocal.withInitial(ANTLRv3Lexer::new);
+
+    private static final ThreadLocal<ANTLRv3Parser> PARSERS = ThreadLocal.withInitial(() -> new ANTLRv3Parser(null));
+
     @Override
     protected CommonTree getStartSymbol(Reader r) throws RecognitionException, IOException {
-        ANTLRStringStream stream = new ANTLRReaderStream(r);
-        ANTLRv3Lexer l = new ANTLRv3Lexer(stream);
-        tokens = new TokenRewriteStream(l);
-        ANTLRv3Parser p = new ANTLRv3Parser(tokens);
+        ANTLRv3Lexer l = LEXERS.get();
+        ANTLRv3Parser p = reset(l, PARSERS.get(), r);
         return (CommonTree) p.grammarDef().getTree();
     }
 
@@ -23,10 +23,7 @@ package com.github.gumtreediff.gen.antlrjson;
 import com.github.gumtreediff.gen.antlr.AbstractAntlrTreeGenerator;
 import com.github.gumtreediff.gen.Register;
 import com.github.gumtreediff.gen.antlr.AbstractAntlrTreeGenerator;
-import org.antlr.runtime.ANTLRReaderStream;
-import org.antlr.runtime.ANTLRStringStream;
 import org.antlr.runtime.RecognitionException;
-import org.antlr.runtime.TokenRewriteStream;
 import org.antlr.runtime.tree.CommonTree;
 
 import java.io.IOException;
@@ -35,12 +32,14 @@ import java.io.Reader;
 @Register(id = "json-antlr", accept =  "\\.json$")
 public class AntlrJsonTreeGenerator extends AbstractAntlrTreeGenerator {
 
+    private static final ThreadLocal<JSONLexer> LEXERS = ThreadLocal.withInitial(JSONLexer::new);
+
+    private static final ThreadLocal<JSONParser> PARSERS = ThreadLocal.withInitial(() -> new JSONParser(null));
+
     @Override
     protected CommonTree getStartSymbol(Reader r) throws RecognitionException, IOException {
-        ANTLRStringStream stream = new ANTLRReaderStream(r);
-        JSONLexer l = new JSONLexer(stream);
-        tokens = new TokenRewriteStream(l);
-        JSONParser p = new JSONParser(tokens);
+        JSONLexer l = LEXERS.get();
+        JSONParser p = reset(l, PARSERS.get(), r);
         return (CommonTree) p.value().getTree();
     }
 
@@ -42,4 +42,28 @@ public class TestJsonParsing {
         assertEquals(37, tree.getSize());
     }
 
+    @Test
+    public void testGeneratorReuse() throws Exception {
+        // The lexer and parser of the thread are reset for each file
+        AntlrJsonTreeGenerator generator = new AntlrJsonTreeGenerator();
+        for (int i = 0; i < 3; i++) {
+            TreeContext tc = generator.generateFromReader(
+                    new InputStreamReader(getClass().getResourceAsStream("/sample.json")));
+            assertEquals(37, tc.getRoot().getSize());
+        }
+        assertEquals(5, generator.generateFromString("[1, 2]").getRoot().getSize());
+    }
+
+    @Test
+    public void testDeepNesting() throws Exception {
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < 500; i++)
+            json.append('[');
+        for (int i = 0; i < 500; i++)
+            json.append(']');
+        ITree tree = new AntlrJsonTreeGenerator().generateFromString(json.toString()).getRoot();
+        assertEquals(500, tree.getSize());
+        assertEquals(1000, tree.getLength());
+    }
+
 }
@@ -32,12 +32,14 @@ import java.io.Reader;
 @Register(id = "php-antlr", accept = "\\.php.?$")
 public class PhpTreeGenerator extends AbstractAntlrTreeGenerator {
 
+    private static final ThreadLocal<PhpLexer> LEXERS = ThreadLocal.withInitial(PhpLexer::new);
+
+    private static final ThreadLocal<PhpParser> PARSERS = ThreadLocal.withInitial(() -> new PhpParser(null));
+
     @Override
     protected CommonTree getStartSymbol(Reader r) throws RecognitionException, IOException {
-        ANTLRStringStream stream = new ANTLRReaderStream(r);
-        PhpLexer l = new PhpLexer(stream);
-        tokens = new TokenRewriteStream(l);
-        PhpParser p = new PhpParser(tokens);
+        PhpLexer l = LEXERS.get();
+        PhpParser p = reset(l, PARSERS.get(), r);
         return p.prog().getTree();
     }
 
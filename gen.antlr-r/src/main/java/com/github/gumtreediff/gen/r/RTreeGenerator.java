@@ -23,24 +23,28 @@ package com.github.gumtreediff.gen.r;
 import com.github.gumtreediff.gen.antlr.AbstractAntlrTreeGenerator;
 import com.github.gumtreediff.gen.Register;
 import com.github.gumtreediff.gen.antlr.AbstractAntlrTreeGenerator;
-import org.antlr.runtime.ANTLRReaderStream;
-import org.antlr.runtime.ANTLRStringStream;
 import org.antlr.runtime.RecognitionException;
-import org.antlr.runtime.TokenRewriteStream;
 import org.antlr.runtime.tree.CommonTree;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.util.Arrays;
 
 @Register(id = "r-antlr", accept = "\\.[rR]$")
 public class RTreeGenerator extends AbstractAntlrTreeGenerator {
 
+    private static final ThreadLocal<RLexer> LEXERS = ThreadLocal.withInitial(RLexer::new);
+
+    private static final ThreadLocal<RParser> PARSERS = ThreadLocal.withInitial(() -> new RParser(null));
+
     @Override
     protected CommonTree getStartSymbol(Reader r) throws RecognitionException, IOException {
-        ANTLRStringStream stream = new ANTLRReaderStream(r);
-        RLexer rl = new RLexer(stream);
-        tokens = new TokenRewriteStream(rl);
-        RParser rp = new RParser(tokens);
+        RLexer rl = LEXERS.get();
+        // The lexer keeps the nesting of incomplete expressions, left as is by a file that is unbalanced or
+        // fails to lex, and only cleared when a lexer is built
+        rl.incomplete_depth = 0;
+        Arrays.fill(rl.incomplete_stack, 0);
+        RParser rp = reset(rl, PARSERS.get(), r);
         return rp.script().getTree();
     }
 
@@ -38,4 +38,19 @@ public class TestRGenerator {
         assertEquals(8, t.getSize());
     }
 
+    @Test
+    public void testGeneratorReuse() throws IOException {
+        // The lexer of the thread is reset after a file left with an unclosed parenthesis
+        RTreeGenerator generator = new RTreeGenerator();
+        String input = "x <- 1\ny <- 2\n";
+        ITree t = generator.generateFromString(input).getRoot();
+        for (String unbalanced : new String[] {"f(1\n", "x[[1\n", "g(a, (b\n"}) {
+            try {
+                generator.generateFromString(unbalanced);
+            } catch (IOException | RuntimeException e) {
+                // The file itself may not parse
+            }
+            assertTrue(t.isIsomorphicTo(generator.generateFromString(input).getRoot()));
+        }
+    }
 }
@@ -24,10 +24,7 @@ import com.github.gumtreediff.gen.Register;
 import com.github.gumtreediff.gen.antlr.AbstractAntlrTreeGenerator;
 import com.github.gumtreediff.tree.ITree;
 import com.github.gumtreediff.tree.TreeContext;
-import org.antlr.runtime.ANTLRReaderStream;
-import org.antlr.runtime.ANTLRStringStream;
 import org.antlr.runtime.RecognitionException;
-import org.antlr.runtime.TokenRewriteStream;
 import org.antlr.runtime.tree.CommonTree;
 
 import java.io.IOException;
@@ -36,6 +33,10 @@ import java.io.Reader;
 @Register(id = "xml-antlr", accept = {"\\.xml$", "\\.xsd$", "\\.wadl$"})
 public class XmlTreeGenerator extends AbstractAntlrTreeGenerator {
 
+    private static final ThreadLocal<XMLLexer> LEXERS = ThreadLocal.withInitial(XMLLexer::new);
+
+    private static final ThreadLocal<XMLParser> PARSERS = ThreadLocal.withInitial(() -> new XMLParser(null));
+
     @Override
     public TreeContext generate(Reader file) throws IOException {
         TreeContext ctx = super.generate(file);
@@ -51,10 +52,10 @@ public class XmlTreeGenerator extends AbstractAntlrTreeGenerator {
 
     @Override
     protected CommonTree getStartSymbol(Reader r) throws RecognitionException, IOException {
-        ANTLRStringStream stream = new ANTLRReaderStream(r);
-        XMLLexer l = new XMLLexer(stream);
-        tokens = new TokenRewriteStream(l);
-        XMLParser p = new XMLParser(tokens);
+        XMLLexer l = LEXERS.get();
+        // The lexer is left in tag mode by a document ending within a tag
+        l.tagMode = false;
+        XMLParser p = reset(l, PARSERS.get(), r);
         return p.document().getTree();
     }
 
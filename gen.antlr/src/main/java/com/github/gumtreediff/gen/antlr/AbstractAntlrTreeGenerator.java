@@ -23,14 +23,20 @@ package com.github.gumtreediff.gen.antlr;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 
+import org.antlr.runtime.ANTLRReaderStream;
 import org.antlr.runtime.CommonToken;
 import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.Lexer;
+import org.antlr.runtime.Parser;
 import org.antlr.runtime.RecognitionException;
 import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenRewriteStream;
 import org.antlr.runtime.tree.CommonTree;
 
 import com.github.gumtreediff.gen.TreeGenerator;
@@ -39,12 +45,20 @@ import com.github.gumtreediff.tree.TreeContext;
 
 public abstract class AbstractAntlrTreeGenerator extends TreeGenerator {
 
-    private Deque<ITree> trees = new ArrayDeque<ITree>();
-
     protected static Map<Integer, Integer> chars;
 
     protected CommonTokenStream tokens;
 
+    /**
+     * The token names, looked up once per generator.
+     */
+    private String[] tokenNames;
+
+    /**
+     * The types whose label is already registered in the context being built.
+     */
+    private boolean[] registered = new boolean[0];
+
     public AbstractAntlrTreeGenerator() {
     }
 
@@ -64,43 +78,92 @@ public abstract class AbstractAntlrTreeGenerator extends TreeGenerator {
         return null;
     }
 
+    /**
+     * Gives the input to a lexer and a parser kept from a previous file. Building them is costly, their DFA
+     * tables being created with them, so a generator can keep them per thread and reset them for each file.
+     */
+    protected <P extends Parser> P reset(Lexer lexer, P parser, Reader r) throws IOException {
+        lexer.setCharStream(new ANTLRReaderStream(r));
+        tokens = new TokenRewriteStream(lexer);
+        parser.setTokenStream(tokens);
+        return parser;
+    }
+
     protected abstract String[] getTokenNames();
 
     protected String getTokenName(int tokenType) {
-        String[] names = getTokenNames();
-        if (tokenType < 0 || tokenType >= names.length)
+        if (tokenNames == null)
+            tokenNames = getTokenNames();
+        if (tokenType < 0 || tokenType >= tokenNames.length)
             return ITree.NO_LABEL;
-        return names[tokenType];
+        return tokenNames[tokenType];
     }
 
-    @SuppressWarnings("unchecked")
-    protected void buildTree(TreeContext context, CommonTree ct) {
+    /**
+     * Builds the tree with an explicit stack, as deeply nested inputs would overflow the call stack.
+     */
+    protected void buildTree(TreeContext context, CommonTree root) {
+        Arrays.fill(registered, false);
+        Deque<CommonTree> nodes = new ArrayDeque<>();
+        Deque<ITree> parents = new ArrayDeque<>();
+        ITree t = createTree(context, root);
+        context.setRoot(t);
+        pushChildren(root, t, nodes, parents);
+        while (!nodes.isEmpty()) {
+            CommonTree ct = nodes.pop();
+            t = createTree(context, ct);
+            parents.pop().addChild(t);
+            pushChildren(ct, t, nodes, parents);
+        }
+    }
+
+    private ITree createTree(TreeContext context, CommonTree ct) {
         int type = ct.getType();
         String tokenName = getTokenName(type);
         String label = ct.getText();
         if (tokenName.equals(label))
             label = ITree.NO_LABEL;
 
-        ITree t = context.createTree(type, label, tokenName);
+        ITree t = context.createTree(type, label, isRegistered(type) ? null : tokenName);
 
         int start = startPos(ct.getTokenStartIndex());
         int stop = stopPos(ct.getTokenStopIndex());
         t.setPos(start);
         t.setLength(stop - start + 1); // FIXME check if this + 1 make sense ?
+        return t;
+    }
 
-        if (trees.isEmpty())
-            context.setRoot(t);
-        else
-            t.setParentAndUpdateChildren(trees.peek());
-
-        if (ct.getChildCount() > 0) {
-            trees.push(t);
-            for (CommonTree cct : (List<CommonTree>) ct.getChildren())
-                buildTree(context, cct);
-            trees.pop();
+    /**
+     * Pushes the children backwards, so that they are added in order, once the list of children of their
+     * tree is sized for them.
+     */
+    @SuppressWarnings("unchecked")
+    private static void pushChildren(CommonTree ct, ITree t, Deque<CommonTree> nodes, Deque<ITree> parents) {
+        int count = ct.getChildCount();
+        if (count == 0)
+            return;
+        t.setChildren(new ArrayList<>(count));
+        List<CommonTree> children = (List<CommonTree>) ct.getChildren();
+        for (int i = count - 1; i >= 0; i--) {
+            nodes.push(children.get(i));
+            parents.push(t);
         }
     }
 
+    /**
+     * Returns whether the label of the type is registered, marking it as registered otherwise. The label of
+     * a type is given to the context for its first tree only, since the context checks it for each tree.
+     */
+    private boolean isRegistered(int type) {
+        if (type < 0)
+            return false;
+        if (type >= registered.length)
+            registered = Arrays.copyOf(registered, Math.max(type + 1, registered.length * 2));
+        boolean result = registered[type];
+        registered[type] = true;
+        return result;
+    }
+
     private int startPos(int tkPosition) {
         if (tkPosition == -1) return 0;
         Token tk = tokens.get(tkPosition);
@@ -20,6 +20,7 @@
 
 package com.github.gumtreediff.gen.c;
 
+import com.github.gumtreediff.gen.ParserProcess;
 import com.github.gumtreediff.gen.Register;
 import com.github.gumtreediff.gen.TreeGenerator;
 import com.github.gumtreediff.io.TreeIoUtils;
@@ -29,6 +30,7 @@ import com.github.gumtreediff.tree.TreeContext.MetadataUnserializers;
 
 import java.io.*;
 import java.util.Arrays;
+import java.util.stream.Collectors;
 import java.util.regex.Pattern;
 
 @Register(id = "c-cocci", accept = "\\.[ch]$")
@@ -36,6 +38,8 @@ public class CTreeGenerator extends TreeGenerator {
 
     private static final String COCCI_CMD = System.getProperty("gumtree.cgum.path", "cgum");
 
+    private static final long TIMEOUT = Long.getLong("gumtree.cgum.timeout", 60000);
+
     private static final MetadataSerializers defaultSerializers = new MetadataSerializers();
     private static final MetadataUnserializers defaultUnserializers = new MetadataUnserializers();
 
@@ -52,40 +56,34 @@ public class CTreeGenerator extends TreeGenerator {
         });
     }
 
+    private static TreeContext fromXml(InputStream xml) throws IOException {
+        return TreeIoUtils.fromXml(CTreeGenerator.defaultUnserializers).generateFromStream(xml, false);
+    }
+
     @Override
     public TreeContext generate(Reader r) throws IOException {
-        //FIXME this is not efficient but I am not sure how to speed up things here.
         File f = File.createTempFile("gumtree", ".c");
-        FileWriter w = new FileWriter(f);
-        BufferedReader br = new BufferedReader(r);
-        String line = br.readLine();
-        while (line != null) {
-            w.append(line);
-            w.append(System.lineSeparator());
-            line = br.readLine();
+        try (FileWriter w = new FileWriter(f); BufferedReader br = new BufferedReader(r)) {
+            String line = br.readLine();
+            while (line != null) {
+                w.append(line);
+                w.append(System.lineSeparator());
+                line = br.readLine();
+            }
         }
-        w.close();
-        br.close();
-        ProcessBuilder b = new ProcessBuilder(COCCI_CMD, f.getAbsolutePath());
-        b.directory(f.getParentFile());
         try {
-            Process p = b.start();
-            StringBuffer buf = new StringBuffer();
-            br = new BufferedReader(new InputStreamReader(p.getInputStream()));
-            // TODO Why do we need to read and bufferize eveything, when we could/should only use generateFromStream
-            line = null;
-            while ((line = br.readLine()) != null)
-                buf.append(line + "\n");
-            p.waitFor();
-            if (p.exitValue() != 0)
-                throw new RuntimeException(
-                    String.format("cgum Error [%d] %s\n", p.exitValue(), buf.toString())
-                );
-            r.close();
-            String xml = buf.toString();
-            return TreeIoUtils.fromXml(CTreeGenerator.defaultUnserializers).generateFromString(xml);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            ProcessBuilder b = new ProcessBuilder(COCCI_CMD, f.getAbsolutePath());
+            b.directory(f.getParentFile());
+            return ParserProcess.run(b, TIMEOUT, xml -> {
+                try {
+                    return fromXml(xml);
+                } catch (RuntimeException e) {
+                    // Only what was not read as XML is left for the message
+                    String output = new BufferedReader(new InputStreamReader(xml)).lines()
+                            .collect(Collectors.joining("\n"));
+                    throw new RuntimeException(String.format("cgum Error %s\n", output), e);
+                }
+            });
         } finally {
             f.delete();
         }
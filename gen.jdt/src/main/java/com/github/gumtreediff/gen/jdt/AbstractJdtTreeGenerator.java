@@ -25,44 +25,120 @@ import com.github.gumtreediff.tree.TreeContext;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.FileASTRequestor;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 public abstract class AbstractJdtTreeGenerator extends TreeGenerator {
 
+    private static final Map<String, String> OPTIONS = compilerOptions();
+
+    /**
+     * A parser resets itself to its defaults once it has created an AST, so each thread keeps one and only
+     * configures it again before each use.
+     */
+    private static final ThreadLocal<ASTParser> PARSERS = ThreadLocal.withInitial(() -> ASTParser.newParser(AST.JLS8));
+
+    private static Map<String, String> compilerOptions() {
+        Map<String, String> options = JavaCore.getOptions();
+        options.put(JavaCore.COMPILER_COMPLIANCE, JavaCore.VERSION_1_8);
+        options.put(JavaCore.COMPILER_CODEGEN_TARGET_PLATFORM, JavaCore.VERSION_1_8);
+        options.put(JavaCore.COMPILER_SOURCE, JavaCore.VERSION_1_8);
+        options.put(JavaCore.COMPILER_DOC_COMMENT_SUPPORT, JavaCore.ENABLED);
+        return Collections.unmodifiableMap(options);
+    }
+
+    private static ASTParser parser() {
+        ASTParser parser = PARSERS.get();
+        parser.setKind(ASTParser.K_COMPILATION_UNIT);
+        parser.setCompilerOptions(OPTIONS);
+        return parser;
+    }
+
     private static char[] readerToCharArray(Reader r) throws IOException {
-        StringBuilder fileData = new StringBuilder();
-        try (BufferedReader br = new BufferedReader(r)) {
-            char[] buf = new char[10];
-            int numRead = 0;
-            while ((numRead = br.read(buf)) != -1) {
-                String readData = String.valueOf(buf, 0, numRead);
-                fileData.append(readData);
-                buf = new char[1024];
+        char[] data = new char[8192];
+        int length = 0;
+        try (Reader reader = r) {
+            int numRead;
+            while ((numRead = reader.read(data, length, data.length - length)) != -1) {
+                length += numRead;
+                if (length == data.length)
+                    data = Arrays.copyOf(data, data.length * 2);
             }
         }
-        return  fileData.toString().toCharArray();
+        return length == data.length ? data : Arrays.copyOf(data, length);
     }
 
     @Override
-    @SuppressWarnings({ "unchecked", "rawtypes" })
     public TreeContext generate(Reader r, boolean preProcess) throws IOException {
-        ASTParser parser = ASTParser.newParser(AST.JLS8);
-        parser.setKind(ASTParser.K_COMPILATION_UNIT);
-        Map pOptions = JavaCore.getOptions();
-        pOptions.put(JavaCore.COMPILER_COMPLIANCE, JavaCore.VERSION_1_8);
-        pOptions.put(JavaCore.COMPILER_CODEGEN_TARGET_PLATFORM, JavaCore.VERSION_1_8);
-        pOptions.put(JavaCore.COMPILER_SOURCE, JavaCore.VERSION_1_8);
-        pOptions.put(JavaCore.COMPILER_DOC_COMMENT_SUPPORT, JavaCore.ENABLED);
-        parser.setCompilerOptions(pOptions);
-        parser.setSource(readerToCharArray(r));
+        return generate(readerToCharArray(r));
+    }
+
+    /**
+     * The parser takes the whole array as source, so the buffer is given as is when it is exactly the
+     * content, which is the case of ASCII files read with {@link #generateFromPath}.
+     */
+    @Override
+    protected TreeContext generate(CharBuffer chars, boolean preProcess) throws IOException {
+        if (chars.hasArray() && chars.arrayOffset() == 0 && chars.position() == 0
+                && chars.remaining() == chars.array().length)
+            return generate(chars.array());
+        char[] source = new char[chars.remaining()];
+        chars.get(source);
+        return generate(source);
+    }
+
+    private TreeContext generate(char[] source) {
+        ASTParser parser = parser();
+        parser.setSource(source);
+        return toTreeContext((CompilationUnit) parser.createAST(null));
+    }
+
+    private TreeContext toTreeContext(CompilationUnit unit) {
         AbstractJdtVisitor v = createVisitor();
-        parser.createAST(null).accept(v);
+        unit.accept(v);
         return v.getTreeContext();
     }
 
+    /**
+     * Parses the given Java files in a single batch, JDT reading them with the given charset. Each tree is
+     * given to the consumer, along with the path of its file, as soon as its compilation unit is parsed.
+     */
+    public void generateFromFiles(String[] paths, Charset charset, BiConsumer<String, TreeContext> consumer) {
+        ASTParser parser = parser();
+        parser.setEnvironment(new String[0], new String[0], null, false);
+        String[] encodings = new String[paths.length];
+        Arrays.fill(encodings, charset.name());
+        parser.createASTs(paths, encodings, new String[0], new FileASTRequestor() {
+            @Override
+            public void acceptAST(String sourceFilePath, CompilationUnit ast) {
+                TreeContext ctx = toTreeContext(ast);
+                ctx.validate();
+                consumer.accept(sourceFilePath, ctx);
+            }
+        }, null);
+    }
+
+    /**
+     * Parses the given Java files in a single batch and returns their trees, indexed by path in the order
+     * of the given paths.
+     */
+    public Map<String, TreeContext> generateFromFiles(String[] paths, Charset charset) {
+        Map<String, TreeContext> contexts = new LinkedHashMap<>();
+        for (String path : paths)
+            contexts.put(path, null);
+        generateFromFiles(paths, charset, contexts::put);
+        return contexts;
+    }
+
     protected abstract AbstractJdtVisitor createVisitor();
 }
@@ -20,11 +20,16 @@
 
 package com.github.gumtreediff.gen.jdt;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
 
 import org.junit.Test;
 
 import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
 import static org.junit.Assert.*;
 
 public class TestJdtGenerator {
@@ -54,4 +59,19 @@ public class TestJdtGenerator {
         assertEquals(24, tree.getSize());
     }
 
+    @Test
+    public void testBatch() throws IOException {
+        File first = File.createTempFile("Foo", ".java");
+        File second = File.createTempFile("Bar", ".java");
+        first.deleteOnExit();
+        second.deleteOnExit();
+        Files.write(first.toPath(), "public class Foo { public int foo; }".getBytes(StandardCharsets.UTF_8));
+        Files.write(second.toPath(), ("public class Foo<A> { public List<A> foo; public void foo() "
+                + "{ for (A f : foo) { System.out.println(f); } } }").getBytes(StandardCharsets.UTF_8));
+        String[] paths = new String[] { first.getPath(), second.getPath() };
+        Map<String, TreeContext> contexts = new JdtTreeGenerator().generateFromFiles(paths, StandardCharsets.UTF_8);
+        assertEquals(2, contexts.size());
+        assertEquals(9, contexts.get(first.getPath()).getRoot().getSize());
+        assertEquals(32, contexts.get(second.getPath()).getRoot().getSize());
+    }
 }
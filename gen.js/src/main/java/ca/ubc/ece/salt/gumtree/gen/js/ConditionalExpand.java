@@ -29,6 +29,7 @@ class ConditionalExpand implements NodeVisitor {
 	private AstNode condition;
 	private boolean expanded;
 	private boolean isTrueBranch;
+	private boolean probe;
 	
 	/**
 	 * Expands the first ternary operator in the statement.
@@ -39,8 +40,34 @@ class ConditionalExpand implements NodeVisitor {
 	 */
 	public static Pair<AstNode, AstNode> expand(AstNode statement, AstNode condition, boolean isTrueBranch) {
 
-		ConditionalExpand expander = new ConditionalExpand(condition, isTrueBranch);
+		ConditionalExpand expander = new ConditionalExpand(condition, isTrueBranch, false);
+		if(!visit(statement, expander)) return null;
+
+		if(expander.expanded){
+			return Pair.of(statement, expander.condition);
+		}
 		
+		return null;
+
+	}
+	
+	/**
+	 * Checks if the statement has a ternary operator to expand, without
+	 * changing the statement.
+	 * @param statement The statement to check.
+	 * @return True if {@link #expand} would expand the statement.
+	 */
+	public static boolean canExpand(AstNode statement) {
+		ConditionalExpand expander = new ConditionalExpand(null, true, true);
+		return visit(statement, expander) && expander.expanded;
+	}
+
+	/**
+	 * Visits the parts of the statement that can be expanded.
+	 * @return False if the statement cannot be expanded.
+	 */
+	private static boolean visit(AstNode statement, ConditionalExpand expander) {
+
 		/* We only want to visit non-branching statements and branch-statement
 		 * conditions. */
 		if(statement instanceof ExpressionStatement)
@@ -63,20 +90,17 @@ class ConditionalExpand implements NodeVisitor {
 			((SwitchStatement)statement).getExpression().visit(expander);
 		else if(statement instanceof WithStatement)
 			((WithStatement)statement).getExpression().visit(expander);
-		else return null;
-		
-		if(expander.expanded){
-			return Pair.of(statement, expander.condition);
-		}
-		
-		return null;
+		else return false;
+
+		return true;
 
 	}
-	
-	private ConditionalExpand(AstNode condition, boolean isTrueBranch) {
+
+	private ConditionalExpand(AstNode condition, boolean isTrueBranch, boolean probe) {
 		this.expanded = false;
 		this.condition = condition;
 		this.isTrueBranch = isTrueBranch;
+		this.probe = probe;
 	}
 	
 	private void setCondition(AstNode testExpression) {
@@ -118,6 +142,12 @@ class ConditionalExpand implements NodeVisitor {
 			
 			if(ie.getLeft() instanceof ConditionalExpression) {
 
+				/* Only report that the statement can be expanded. */
+				if(this.probe) {
+					this.expanded = true;
+					return false;
+				}
+
 				/* Expand the statement by pulling up. */
 				ConditionalExpression ce = (ConditionalExpression) ie.getLeft();
 				if(this.isTrueBranch) ie.setLeft(ce.getTrueExpression());
@@ -132,6 +162,12 @@ class ConditionalExpand implements NodeVisitor {
 			}
 			else if(ie.getRight() instanceof ConditionalExpression) {
 
+				/* Only report that the statement can be expanded. */
+				if(this.probe) {
+					this.expanded = true;
+					return false;
+				}
+
 				/* Expand the statement by pulling up. */
 				ConditionalExpression ce = (ConditionalExpression) ie.getRight();
 				if(this.isTrueBranch) ie.setRight(ce.getTrueExpression());
@@ -153,6 +189,12 @@ class ConditionalExpand implements NodeVisitor {
 			
 			if(ie.getInitializer() instanceof ConditionalExpression) {
 
+				/* Only report that the statement can be expanded. */
+				if(this.probe) {
+					this.expanded = true;
+					return false;
+				}
+
 				/* Expand the statement by pulling up. */
 				ConditionalExpression ce = (ConditionalExpression) ie.getInitializer();
 				if(this.isTrueBranch) ie.setInitializer(ce.getTrueExpression());
@@ -175,6 +217,12 @@ class ConditionalExpand implements NodeVisitor {
 			
 			if(pe.getExpression() instanceof ConditionalExpression) {
 
+				/* Only report that the statement can be expanded. */
+				if(this.probe) {
+					this.expanded = true;
+					return false;
+				}
+
 				/* Expand the statement by pulling up. */
 				ConditionalExpression ce = (ConditionalExpression) pe.getExpression();
 				if(this.isTrueBranch) pe.setExpression(ce.getTrueExpression());
@@ -196,6 +244,12 @@ class ConditionalExpand implements NodeVisitor {
 			
 			if(es.getExpression() instanceof ConditionalExpression) {
 
+				/* Only report that the statement can be expanded. */
+				if(this.probe) {
+					this.expanded = true;
+					return false;
+				}
+
 				/* Expand the statement by pulling up. */
 				ConditionalExpression ce = (ConditionalExpression) es.getExpression();
 				if(this.isTrueBranch) es.setExpression(ce.getTrueExpression());
@@ -217,6 +271,12 @@ class ConditionalExpand implements NodeVisitor {
 			
 			if(is.getCondition() instanceof ConditionalExpression) {
 
+				/* Only report that the statement can be expanded. */
+				if(this.probe) {
+					this.expanded = true;
+					return false;
+				}
+
 				/* Expand the statement by pulling up. */
 				ConditionalExpression ce = (ConditionalExpression) is.getCondition();
 				if(this.isTrueBranch) is.setCondition(ce.getTrueExpression());
@@ -241,6 +301,12 @@ class ConditionalExpand implements NodeVisitor {
 			
 			if(is.getCondition() instanceof ConditionalExpression) {
 
+				/* Only report that the statement can be expanded. */
+				if(this.probe) {
+					this.expanded = true;
+					return false;
+				}
+
 				/* Expand the statement by pulling up. */
 				ConditionalExpression ce = (ConditionalExpression) is.getCondition();
 				if(this.isTrueBranch) is.setCondition(ce.getTrueExpression());
@@ -265,6 +331,12 @@ class ConditionalExpand implements NodeVisitor {
 			
 			if(is.getCondition() instanceof ConditionalExpression) {
 
+				/* Only report that the statement can be expanded. */
+				if(this.probe) {
+					this.expanded = true;
+					return false;
+				}
+
 				/* Expand the statement by pulling up. */
 				ConditionalExpression ce = (ConditionalExpression) is.getCondition();
 				if(this.isTrueBranch) is.setCondition(ce.getTrueExpression());
@@ -289,6 +361,12 @@ class ConditionalExpand implements NodeVisitor {
 			
 			if(is.getReturnValue() instanceof ConditionalExpression) {
 
+				/* Only report that the statement can be expanded. */
+				if(this.probe) {
+					this.expanded = true;
+					return false;
+				}
+
 				/* Expand the statement by pulling up. */
 				ConditionalExpression ce = (ConditionalExpression) is.getReturnValue();
 				if(this.isTrueBranch) is.setReturnValue(ce.getTrueExpression());
@@ -310,6 +388,12 @@ class ConditionalExpand implements NodeVisitor {
 			
 			if(is.getExpression() instanceof ConditionalExpression) {
 
+				/* Only report that the statement can be expanded. */
+				if(this.probe) {
+					this.expanded = true;
+					return false;
+				}
+
 				/* Expand the statement by pulling up. */
 				ConditionalExpression ce = (ConditionalExpression) is.getExpression();
 				if(this.isTrueBranch) is.setExpression(ce.getTrueExpression());
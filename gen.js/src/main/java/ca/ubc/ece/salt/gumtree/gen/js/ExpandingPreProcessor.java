@@ -0,0 +1,252 @@
+package ca.ubc.ece.salt.gumtree.gen.js;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.mozilla.javascript.ast.AstNode;
+import org.mozilla.javascript.ast.IfStatement;
+import org.mozilla.javascript.ast.NodeVisitor;
+import org.mozilla.javascript.ast.Scope;
+
+/**
+ * Expands the branching expressions of a statement into if/else statements,
+ * one statement for each combination of branches.
+ *
+ * The number of statements grows exponentially with the number of branching
+ * expressions, so a statement that would be expanded into more than
+ * {@link #MAX_EXPANSIONS} statements is left unexpanded. The statements left
+ * unexpanded are available from {@link #getUnexpanded()}.
+ *
+ * A statement is only cloned once we know it has an expression to expand,
+ * and one branch of each expansion reuses the statement being expanded.
+ */
+public abstract class ExpandingPreProcessor extends StatementPreProcessor {
+
+	/* The maximum number of statements a statement is expanded into. */
+	public static int MAX_EXPANSIONS = Integer.parseInt(System.getProperty("gt.js.max_expansions", "64"));
+
+	/* The statements that were too large to expand. */
+	private Set<AstNode> unexpanded = Collections.newSetFromMap(new IdentityHashMap<AstNode, Boolean>());
+
+	/* Counters of the statements expanded, of the branching expressions
+	 * expanded, of the statements created and of the nodes added. */
+	private long expandedStatements;
+	private long expansions;
+	private long createdStatements;
+	private long addedNodes;
+	private long unexpandedStatements;
+
+	/**
+	 * @return True if the statement has a branching expression to expand.
+	 */
+	protected abstract boolean canExpand(AstNode statement);
+
+	/**
+	 * Expands the first branching expression in the statement.
+	 * @param statement The statement to expand.
+	 * @param condition The current branching condition for the statement.
+	 * @param isTrueBranch Set to true to expand the true branch.
+	 * @return The expanded statement and the condition for which it executes.
+	 */
+	protected abstract Pair<AstNode, AstNode> expand(AstNode statement, AstNode condition, boolean isTrueBranch);
+
+	@Override
+	protected AstNode processStatement(AstNode node) {
+
+		if(node == null || !this.canExpand(node)) return null;
+
+		try {
+			return createIfStatements(node);
+		} catch (CloneNotSupportedException e) {
+			return null;
+		}
+
+	}
+
+	/**
+	 * @return The statements left unexpanded because they would have been
+	 * 		   expanded into more than {@link #MAX_EXPANSIONS} statements.
+	 */
+	public Set<AstNode> getUnexpanded() {
+		return this.unexpanded;
+	}
+
+	/**
+	 * Keeps track of an unexpanded statement that was replaced by another
+	 * pre-processor.
+	 */
+	public void replaced(AstNode statement, AstNode newStatement) {
+		if(this.unexpanded.remove(statement)) this.unexpanded.add(newStatement);
+	}
+
+	/**
+	 * Forgets the unexpanded statements, but not the counters.
+	 */
+	public void clearUnexpanded() {
+		this.unexpanded.clear();
+	}
+
+	/** @return The number of statements that were expanded. */
+	public long getExpandedStatements() {
+		return this.expandedStatements;
+	}
+
+	/** @return The number of branching expressions that were expanded. */
+	public long getExpansions() {
+		return this.expansions;
+	}
+
+	/** @return The number of statements created by the expansions. */
+	public long getCreatedStatements() {
+		return this.createdStatements;
+	}
+
+	/** @return The number of AST nodes added by the expansions. */
+	public long getAddedNodes() {
+		return this.addedNodes;
+	}
+
+	/** @return The number of statements left unexpanded. */
+	public long getUnexpandedStatements() {
+		return this.unexpandedStatements;
+	}
+
+	/**
+	 * Create the if/else statements for the expanded statements.
+	 * returns null if the statement was too large to expand.
+	 */
+	private IfStatement createIfStatements(AstNode node) throws CloneNotSupportedException{
+
+		IfStatement ifStatement = null;
+		IfStatement current = ifStatement;
+
+		/* Get the list of expanded statements and their conditions. */
+		List<Pair<AstNode, AstNode>> pairs =  expand(node);
+
+		/* If the statement was too large, there is nothing to be done. */
+		if(pairs == null) {
+			this.unexpanded.add(node);
+			this.unexpandedStatements++;
+			return null;
+		}
+
+		/* We have expanded statements, so create the if statements. */
+		Iterator<Pair<AstNode, AstNode>> iterator = pairs.iterator();
+		while(iterator.hasNext()) {
+			Pair<AstNode, AstNode> pair = iterator.next();
+
+			if(iterator.hasNext()) {
+                IfStatement newIfStatement = new IfStatement();
+                Scope thenScope = new Scope();
+                thenScope.addChild(pair.getLeft());
+                newIfStatement.setThenPart(thenScope);
+                thenScope.setParent(newIfStatement);
+                newIfStatement.setCondition(pair.getRight());
+                pair.getRight().setParent(newIfStatement);
+
+                if(current == null) {
+                	ifStatement = newIfStatement;
+                	ifStatement.setParent(node.getParent());
+                }
+                else {
+                	current.setElsePart(newIfStatement);
+                	newIfStatement.setParent(current);
+                }
+
+                current = newIfStatement;
+			}
+			else {
+				Scope elseScope = new Scope();
+				elseScope.addChild(pair.getLeft());
+				current.setElsePart(elseScope);
+				elseScope.setParent(current);
+			}
+
+		}
+
+		this.expandedStatements++;
+		this.createdStatements += pairs.size();
+		this.addedNodes += size(ifStatement) - size(node);
+
+		return ifStatement;
+
+	}
+
+	/**
+	 * Expand the branching expressions in a statement, which must have at
+	 * least one expression to expand.
+	 * @param statement The statement to expand.
+	 * @return The expanded statements and their conditions, or null if there
+	 * 		   would be more than {@link #MAX_EXPANSIONS} statements.
+	 * @throws CloneNotSupportedException
+	 */
+	private List<Pair<AstNode, AstNode>> expand(AstNode node) throws CloneNotSupportedException {
+
+		Queue<Pair<AstNode, AstNode>> toExpand = new LinkedList<Pair<AstNode, AstNode>>();
+		List<Pair<AstNode, AstNode>> expanded = new ArrayList<Pair<AstNode, AstNode>>();
+		long expansions = 0;
+
+		/* The original statement is left as is until we know that it can be
+		 * expanded. */
+		toExpand.add(Pair.of(node.clone(node.getParent()), (AstNode)null));
+
+		while(!toExpand.isEmpty()) {
+
+			Pair<AstNode, AstNode> pair = toExpand.remove();
+			AstNode statement = pair.getLeft();
+			AstNode condition = pair.getRight();
+
+			/* The statement is complete. */
+			if(expansions > 0 && !this.canExpand(statement)) {
+				expanded.add(pair);
+				continue;
+			}
+
+			/* Expanding the statement adds one statement. */
+			if(toExpand.size() + expanded.size() + 2 > MAX_EXPANSIONS) return null;
+
+			/* The statement (which is never in the AST) is expanded for the
+			 * true branch, and one clone for the false branch. */
+			AstNode falseClone = statement.clone(statement.getParent());
+			AstNode falseCondition = null;
+			if(condition != null) falseCondition = condition.clone(condition.getParent());
+
+			/* Expand the first branching expression. */
+			Pair<AstNode, AstNode> trueResult = this.expand(statement, condition, true);
+			Pair<AstNode, AstNode> falseResult = this.expand(falseClone, falseCondition, false);
+
+			if(trueResult == null || falseResult == null) throw new Error("Assertion failed");
+			toExpand.add(trueResult);
+			toExpand.add(falseResult);
+			expansions++;
+
+		}
+
+		this.expansions += expansions;
+		return expanded;
+
+	}
+
+	/**
+	 * @return The number of nodes in the subtree.
+	 */
+	private static int size(AstNode node) {
+		final int[] size = new int[1];
+		node.visit(new NodeVisitor() {
+			@Override
+			public boolean visit(AstNode child) {
+				size[0]++;
+				return true;
+			}
+		});
+		return size[0];
+	}
+
+}
@@ -0,0 +1,77 @@
+package ca.ubc.ece.salt.gumtree.gen.js;
+
+import java.io.InvalidClassException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.mozilla.javascript.ast.AstRoot;
+import org.mozilla.javascript.ast.FunctionNode;
+
+import com.github.gumtreediff.matchers.MappingStore;
+import com.github.gumtreediff.matchers.PartitionedMatcher;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
+
+import ca.ubc.ece.salt.gumtree.ast.ClassifiedASTNode;
+
+/**
+ * Matches two JavaScript files function by function. The functions found by
+ * {@link FunctionTreeVisitor} are anchored across versions (by hash, then by
+ * name, then by position) and each anchored pair is diffed independently and
+ * in parallel. The mappings of the whole file are then available, as for any
+ * other matcher, to generate the edit script and to classify the AST nodes
+ * with {@link ca.ubc.ece.salt.gumtree.ast.ASTClassifier}.
+ * 
+ * The trees must have been built by the Rhino tree generator, so that they
+ * reference their AST nodes.
+ */
+public class FunctionPartitionedMatcher extends PartitionedMatcher {
+
+	/**
+	 * @param src The tree of the original file.
+	 * @param dst The tree of the new file.
+	 * @param matcher The identifier of the matcher used to diff functions.
+	 */
+	public FunctionPartitionedMatcher(TreeContext src, TreeContext dst,
+			String matcher) throws InvalidClassException {
+		super(src.getRoot(), dst.getRoot(), new MappingStore(),
+				getFunctions(src.getRoot()), getFunctions(dst.getRoot()),
+				FunctionPartitionedMatcher::getName, matcher);
+	}
+
+	/**
+	 * @return The Tree nodes of the functions of the script.
+	 */
+	public static List<ITree> getFunctions(ITree root) throws InvalidClassException {
+		ClassifiedASTNode script = root.getClassifiedASTNode();
+		if(!(script instanceof AstRoot))
+			throw new InvalidClassException("Expected a tree built from an AstRoot.");
+
+		Set<FunctionNode> functions = Collections.newSetFromMap(new IdentityHashMap<FunctionNode, Boolean>());
+		functions.addAll(FunctionTreeVisitor.getFunctions((AstRoot) script));
+
+		List<ITree> trees = new LinkedList<ITree>();
+		for(ITree tree : root.preOrder()) {
+			if(functions.contains(tree.getClassifiedASTNode()))
+				trees.add(tree);
+		}
+		return trees;
+	}
+
+	/**
+	 * @return The name of the function, or null if it is anonymous.
+	 */
+	private static String getName(ITree tree) {
+		try {
+			FunctionNode function = (FunctionNode) tree.getClassifiedASTNode();
+			String name = function.getName();
+			return (name == null || name.isEmpty()) ? null : name;
+		} catch (InvalidClassException e) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,490 @@
+package ca.ubc.ece.salt.gumtree.gen.js;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.mozilla.javascript.Node;
+import org.mozilla.javascript.ast.AstNode;
+import org.mozilla.javascript.ast.AstRoot;
+import org.mozilla.javascript.ast.Block;
+import org.mozilla.javascript.ast.CatchClause;
+import org.mozilla.javascript.ast.DoLoop;
+import org.mozilla.javascript.ast.ForInLoop;
+import org.mozilla.javascript.ast.ForLoop;
+import org.mozilla.javascript.ast.FunctionNode;
+import org.mozilla.javascript.ast.IfStatement;
+import org.mozilla.javascript.ast.NodeVisitor;
+import org.mozilla.javascript.ast.Scope;
+import org.mozilla.javascript.ast.SwitchCase;
+import org.mozilla.javascript.ast.SwitchStatement;
+import org.mozilla.javascript.ast.TryStatement;
+import org.mozilla.javascript.ast.WhileLoop;
+import org.mozilla.javascript.ast.WithStatement;
+
+/**
+ * Fixes the absolute positions of the nodes and applies a sequence of
+ * statement pre-processors in a single traversal of the AST. The result is
+ * the same AST as running {@link FixPositionPreProcessor} and then each
+ * {@link StatementPreProcessor} one after the other:
+ * 	- The absolute positions are computed top-down, from the position of the
+ * 	  parent, instead of walking the parent chain for each node.
+ * 	- Each statement goes through all the rewrites before its sub-statements
+ * 	  are visited. The rewrites only look at the expressions of the statement,
+ * 	  so the sub-statements of the clones receive the same rewrites as the
+ * 	  original sub-statements would have.
+ * 	- A function cloned while rewriting the body of another function is not
+ * 	  rewritten by the pre-processor that cloned it, as the separate passes
+ * 	  collect the functions before rewriting their bodies.
+ * 	- The functions are collected while fixing the positions. Only the
+ * 	  statements that held functions are searched again for the functions
+ * 	  cloned by the stages.
+ *
+ * The time spent in each step is accumulated over the calls to
+ * {@link #process(AstRoot)}.
+ */
+public class PreProcessingPipeline implements PreProcessor {
+
+	private StatementPreProcessor[] stages;
+
+	/* The time spent fixing positions and in each stage, in nanoseconds. */
+	private long fixTime;
+	private long[] stageTimes;
+
+	/* The stages that are not applied to the function being processed. The
+	 * functions created by a stage inside a function are mapped to the
+	 * stages they skip. */
+	private int skip;
+	private Map<FunctionNode, Integer> skips;
+	private boolean inFunction;
+
+	/* The stages that cloned the last processed statement. */
+	private int cloned;
+
+	/* The functions directly inside the script and each function, in the
+	 * order of the source. The script or function whose statements are being
+	 * processed loses its entry when a statement holding functions is
+	 * replaced, and the functions cloned by the stages have none, so their
+	 * functions are searched again when they are processed. */
+	private Map<AstNode, List<FunctionNode>> functions;
+	private AstNode owner;
+
+	/* The nodes holding a function of the same script or function. */
+	private Set<AstNode> holdsFunctions;
+
+	public PreProcessingPipeline(StatementPreProcessor... stages) {
+		if(stages.length > Integer.SIZE) throw new IllegalArgumentException("Too many stages.");
+		this.stages = stages;
+		this.stageTimes = new long[stages.length];
+	}
+
+	/**
+	 * @return The pipeline used when generating trees: variable declarations,
+	 * 		   ternary operators and then short circuits.
+	 */
+	public static PreProcessingPipeline defaultPipeline() {
+		return new PreProcessingPipeline(new VarPreProcessor(),
+				new ConditionalPreProcessor(), new ShortCircuitPreProcessor());
+	}
+
+	@Override
+	public void process(AstRoot root) {
+
+		this.skips = new IdentityHashMap<FunctionNode, Integer>();
+		this.functions = new IdentityHashMap<AstNode, List<FunctionNode>>();
+		this.holdsFunctions = Collections.newSetFromMap(new IdentityHashMap<AstNode, Boolean>());
+		for(StatementPreProcessor stage : this.stages) {
+			if(stage instanceof ExpandingPreProcessor)
+				((ExpandingPreProcessor) stage).clearUnexpanded();
+		}
+
+		/* Fix the absolute positions of the nodes before changing the AST. */
+		long start = System.nanoTime();
+		this.fixPositions(root);
+		this.fixTime += System.nanoTime() - start;
+
+		/* Process the statements in the script, then in the functions. */
+		this.skip = 0;
+		this.inFunction = false;
+		this.owner = root;
+		this.processStatementsSwitch(root, 0);
+		this.processFunctions(root, 0);
+
+		this.skips = null;
+		this.functions = null;
+		this.holdsFunctions = null;
+		this.owner = null;
+
+	}
+
+	/**
+	 * @return The time spent fixing positions and in each stage since the
+	 * 		   pipeline was created, in nanoseconds, by pre-processor name.
+	 */
+	public Map<String, Long> getTimes() {
+		Map<String, Long> times = new LinkedHashMap<String, Long>();
+		times.put(FixPositionPreProcessor.class.getSimpleName(), this.fixTime);
+		for(int i = 0; i < this.stages.length; i++)
+			times.merge(this.stages[i].getClass().getSimpleName(), this.stageTimes[i], Long::sum);
+		return times;
+	}
+
+	/**
+	 * @return The number of statements expanded, branching expressions
+	 * 		   expanded, statements created, nodes added and statements left
+	 * 		   unexpanded by each expanding stage since the pipeline was
+	 * 		   created, by pre-processor name.
+	 */
+	public Map<String, Long> getCounters() {
+		Map<String, Long> counters = new LinkedHashMap<String, Long>();
+		for(StatementPreProcessor stage : this.stages) {
+			if(!(stage instanceof ExpandingPreProcessor)) continue;
+			ExpandingPreProcessor expander = (ExpandingPreProcessor) stage;
+			String name = stage.getClass().getSimpleName();
+			counters.merge(name + ".statements", expander.getExpandedStatements(), Long::sum);
+			counters.merge(name + ".expansions", expander.getExpansions(), Long::sum);
+			counters.merge(name + ".created", expander.getCreatedStatements(), Long::sum);
+			counters.merge(name + ".nodes", expander.getAddedNodes(), Long::sum);
+			counters.merge(name + ".unexpanded", expander.getUnexpandedStatements(), Long::sum);
+		}
+		return counters;
+	}
+
+	/**
+	 * @return The statements of the last processed AST that were too large
+	 * 		   to expand, or the statements that replaced them.
+	 */
+	public Set<AstNode> getUnexpanded() {
+		Set<AstNode> unexpanded = Collections.newSetFromMap(new IdentityHashMap<AstNode, Boolean>());
+		for(StatementPreProcessor stage : this.stages) {
+			if(stage instanceof ExpandingPreProcessor)
+				unexpanded.addAll(((ExpandingPreProcessor) stage).getUnexpanded());
+		}
+		return unexpanded;
+	}
+
+	/**
+	 * Sets the fixed position of each node from the fixed position of its
+	 * parent, which is visited first. The functions found are registered as
+	 * skipping no stage and collected by enclosing function.
+	 */
+	private void fixPositions(final AstRoot root) {
+
+		final Map<AstNode, Integer> positions = new IdentityHashMap<AstNode, Integer>();
+		this.functions.put(root, new ArrayList<FunctionNode>());
+
+		root.visit(new NodeVisitor() {
+			@Override
+			public boolean visit(AstNode node) {
+				node.setFixedPosition(absolutePosition(node, positions));
+				if(node instanceof FunctionNode) {
+					FunctionNode function = (FunctionNode) node;
+					skips.put(function, 0);
+					functions.put(function, new ArrayList<FunctionNode>());
+					AstNode enclosing = function.getEnclosingFunction();
+					functions.get(enclosing == null ? root : enclosing).add(function);
+					markHolders(function);
+				}
+				return true;
+			}
+		});
+
+	}
+
+	/**
+	 * Marks the nodes between the function and its enclosing function as
+	 * holding a function.
+	 */
+	private void markHolders(FunctionNode function) {
+		AstNode node = function.getParent();
+		while(node != null && !(node instanceof FunctionNode) && this.holdsFunctions.add(node))
+			node = node.getParent();
+	}
+
+	private static int absolutePosition(AstNode node, Map<AstNode, Integer> positions) {
+		Integer position = positions.get(node);
+		if(position != null) return position;
+		AstNode parent = node.getParent();
+		int absolute = parent == null ? node.getPosition()
+				: absolutePosition(parent, positions) + node.getPosition();
+		positions.put(node, absolute);
+		return absolute;
+	}
+
+	/**
+	 * Processes the bodies of the functions directly inside the node, then
+	 * the functions inside them.
+	 * @param skip The stages skipped by the enclosing function.
+	 */
+	private void processFunctions(AstNode node, int skip) {
+
+		for(FunctionNode function : this.getNestedFunctions(node)) {
+			Integer skipped = this.skips.get(function);
+			int functionSkip = skip | (skipped == null ? 0 : skipped);
+
+			if(function.getBody() instanceof Block) {
+				/* The statements of a cloned function that hold functions
+				 * must be known before they are processed. */
+				this.getNestedFunctions(function);
+				this.skip = functionSkip;
+				this.inFunction = true;
+				this.owner = function;
+				this.processStatementsSwitch(function.getBody(), functionSkip);
+			}
+
+			this.processFunctions(function, functionSkip);
+		}
+
+	}
+
+	/**
+	 * @return The functions in the node that are not inside another function
+	 * 		   of the node, as collected, or searched and marked if the node was
+	 * 		   cloned or its functions were replaced.
+	 */
+	private List<FunctionNode> getNestedFunctions(AstNode node) {
+		List<FunctionNode> nested = this.functions.get(node);
+		if(nested == null) {
+			nested = getFunctions(node);
+			for(FunctionNode function : nested) this.markHolders(function);
+			this.functions.put(node, nested);
+		}
+		return nested;
+	}
+
+	/**
+	 * @return The functions in the node that are not inside another function
+	 * 		   of the node.
+	 */
+	private static List<FunctionNode> getFunctions(final AstNode node) {
+		final List<FunctionNode> functions = new ArrayList<FunctionNode>();
+		node.visit(new NodeVisitor() {
+			@Override
+			public boolean visit(AstNode child) {
+				if(child != node && child instanceof FunctionNode) {
+					functions.add((FunctionNode) child);
+					return false;
+				}
+				return true;
+			}
+		});
+		return functions;
+	}
+
+	/**
+	 * Applies each stage, in order, to the statement and to the statements
+	 * returned by the previous stages. Sets {@code cloned} to the stages that
+	 * cloned the statement.
+	 *
+	 * @param node
+	 *            The statement to process.
+	 * @param cloned
+	 *            The stages that cloned the statement so far.
+	 * @return The new statement to replace the old statement, or null if the
+	 * 		   statement does not change.
+	 */
+	private AstNode processStatement(AstNode node, int cloned) {
+
+		AstNode result = null;
+		this.cloned = cloned;
+
+		/* Only a statement holding functions can be rewritten with clones of
+		 * its functions. */
+		boolean holdsFunctions = this.holdsFunctions.contains(node);
+
+		for(int i = 0; i < this.stages.length; i++) {
+			if((this.skip & (1 << i)) != 0) continue;
+
+			long start = System.nanoTime();
+			AstNode newStatement = this.stages[i].processStatement(node);
+			this.stageTimes[i] += System.nanoTime() - start;
+
+			if(newStatement != null) {
+				for(StatementPreProcessor stage : this.stages) {
+					if(stage instanceof ExpandingPreProcessor)
+						((ExpandingPreProcessor) stage).replaced(node, newStatement);
+				}
+				if(holdsFunctions && this.registerClones(newStatement, this.cloned | (1 << i)))
+					this.cloned |= 1 << i;
+				node = newStatement;
+				result = newStatement;
+			}
+		}
+
+		/* The functions of the replaced statement are no longer in the AST. */
+		if(holdsFunctions && result != null) this.functions.remove(this.owner);
+
+		return result;
+
+	}
+
+	/**
+	 * Registers the functions that the stage created in the statement, and
+	 * marks the nodes holding them.
+	 * @return True if the stage cloned functions inside a function body.
+	 */
+	private boolean registerClones(AstNode statement, int cloned) {
+
+		int skip = this.inFunction ? cloned : 0;
+		boolean found = false;
+
+		for(FunctionNode function : getFunctions(statement)) {
+			if(!this.skips.containsKey(function)) {
+				this.skips.put(function, skip);
+				this.markHolders(function);
+				found = true;
+			}
+		}
+
+		return found && this.inFunction;
+
+	}
+
+	/**
+	 * Processes each child statement, and replaces the statements with the
+	 * new statements, before processing the sub-statements.
+	 *
+	 * @param node
+	 *            The script, block or scope with child statements.
+	 */
+	private void processChildren(AstNode node, int cloned) {
+
+		/* Get the list of children. We can't directly iterate over the
+		 * children of the node because we also need to operate on them. */
+		List<AstNode> statements = new ArrayList<AstNode>();
+		for(Node child : node) {
+			statements.add((AstNode) child);
+		}
+
+		/* Process and replace the statements. */
+		int[] masks = new int[statements.size()];
+		for(int i = 0; i < statements.size(); i++) {
+			AstNode statement = statements.get(i);
+			AstNode newStatement = this.processStatement(statement, cloned);
+			masks[i] = this.cloned;
+			if(newStatement != null) {
+				node.replaceChild(statement, newStatement);
+				statements.set(i, newStatement);
+			}
+		}
+
+		/* Process the sub-statements. */
+		for(int i = 0; i < statements.size(); i++) {
+			this.processStatementsSwitch(statements.get(i), masks[i]);
+		}
+
+	}
+
+	/**
+	 * Processes a child statement that is not a scope, or processes the
+	 * statements of the scope.
+	 * @return The new statement to replace the child, or null.
+	 */
+	private AstNode processChild(AstNode child, int cloned) {
+
+		if(child instanceof Scope) {
+			this.processStatementsSwitch(child, cloned);
+			return null;
+		}
+
+		return this.processStatement(child, cloned);
+
+	}
+
+	private void processStatements(IfStatement node, int cloned) {
+
+		AstNode newStatement = this.processChild(node.getThenPart(), cloned);
+		if(newStatement != null) node.setThenPart(newStatement);
+
+		int elseCloned = cloned;
+		if(!(node.getElsePart() instanceof Scope)) {
+			newStatement = this.processStatement(node.getElsePart(), cloned);
+			elseCloned = this.cloned;
+			if(newStatement != null) node.setElsePart(newStatement);
+		}
+		else {
+			this.processStatementsSwitch(node.getElsePart(), cloned);
+		}
+
+		if(node.getElsePart() instanceof IfStatement) {
+			this.processStatementsSwitch(node.getElsePart(), elseCloned);
+		}
+
+	}
+
+	private void processStatements(SwitchCase node, int cloned) {
+
+		if(node.getStatements() == null)
+			return;
+
+		List<AstNode> statements = node.getStatements();
+		for(int i = 0; i < statements.size(); i++) {
+			AstNode newStatement = this.processStatement(statements.get(i), cloned);
+			if(newStatement != null)
+				statements.set(i, newStatement);
+		}
+
+	}
+
+	private void processStatements(TryStatement node, int cloned) {
+
+		AstNode newStatement = this.processChild(node.getTryBlock(), cloned);
+		if(newStatement != null) node.setTryBlock(newStatement);
+
+		newStatement = this.processChild(node.getFinallyBlock(), cloned);
+		if(newStatement != null) node.setFinallyBlock(newStatement);
+
+		for(AstNode statement : node.getCatchClauses()) {
+			this.processStatementsSwitch(statement, cloned);
+		}
+
+	}
+
+	/**
+	 * Calls the appropriate process method for the node type, as
+	 * {@link StatementPreProcessor} does.
+	 */
+	private void processStatementsSwitch(AstNode node, int cloned) {
+
+		AstNode newStatement;
+
+		if(node instanceof AstRoot || node instanceof Block) {
+			this.processChildren(node, cloned);
+		} else if(node instanceof IfStatement) {
+			this.processStatements((IfStatement) node, cloned);
+		} else if(node instanceof WhileLoop) {
+			newStatement = this.processChild(((WhileLoop) node).getBody(), cloned);
+			if(newStatement != null) ((WhileLoop) node).setBody(newStatement);
+		} else if(node instanceof DoLoop) {
+			newStatement = this.processChild(((DoLoop) node).getBody(), cloned);
+			if(newStatement != null) ((DoLoop) node).setBody(newStatement);
+		} else if(node instanceof ForLoop) {
+			newStatement = this.processChild(((ForLoop) node).getBody(), cloned);
+			if(newStatement != null) ((ForLoop) node).setBody(newStatement);
+		} else if(node instanceof ForInLoop) {
+			newStatement = this.processChild(((ForInLoop) node).getBody(), cloned);
+			if(newStatement != null) ((ForInLoop) node).setBody(newStatement);
+		} else if(node instanceof SwitchStatement) {
+			for(SwitchCase switchCase : ((SwitchStatement) node).getCases()) {
+				this.processStatementsSwitch(switchCase, cloned);
+			}
+		} else if(node instanceof SwitchCase) {
+			this.processStatements((SwitchCase) node, cloned);
+		} else if(node instanceof WithStatement) {
+			newStatement = this.processChild(((WithStatement) node).getStatement(), cloned);
+			if(newStatement != null) ((WithStatement) node).setStatement(newStatement);
+		} else if(node instanceof TryStatement) {
+			this.processStatements((TryStatement) node, cloned);
+		} else if(node instanceof CatchClause) {
+			this.processStatementsSwitch(((CatchClause) node).getBody(), cloned);
+		} else if(node instanceof Scope) {
+			this.processChildren(node, cloned);
+		}
+
+	}
+
+}
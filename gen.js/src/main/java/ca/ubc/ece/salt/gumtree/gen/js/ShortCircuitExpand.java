@@ -23,6 +23,7 @@ class ShortCircuitExpand implements NodeVisitor {
 	private AstNode condition;
 	private boolean expanded;
 	private boolean isTrueBranch;
+	private boolean probe;
 	
 	/**
 	 * Expands the first short circuit operator in the statement.
@@ -33,8 +34,34 @@ class ShortCircuitExpand implements NodeVisitor {
 	 */
 	public static Pair<AstNode, AstNode> expand(AstNode statement, AstNode condition, boolean isTrueBranch) {
 
-		ShortCircuitExpand expander = new ShortCircuitExpand(condition, isTrueBranch);
+		ShortCircuitExpand expander = new ShortCircuitExpand(condition, isTrueBranch, false);
+		if(!visit(statement, expander)) return null;
+
+		if(expander.expanded){
+			return Pair.of(statement, expander.condition);
+		}
 		
+		return null;
+
+	}
+	
+	/**
+	 * Checks if the statement has a short circuit to expand, without
+	 * changing the statement.
+	 * @param statement The statement to check.
+	 * @return True if {@link #expand} would expand the statement.
+	 */
+	public static boolean canExpand(AstNode statement) {
+		ShortCircuitExpand expander = new ShortCircuitExpand(null, true, true);
+		return visit(statement, expander) && expander.expanded;
+	}
+
+	/**
+	 * Visits the parts of the statement that can be expanded.
+	 * @return False if the statement cannot be expanded.
+	 */
+	private static boolean visit(AstNode statement, ShortCircuitExpand expander) {
+
 		/* For now, we only want to visit non-branching statements. Branching
 		 * statements already contain control flow conditions. */
 		if(statement instanceof ExpressionStatement)
@@ -45,20 +72,17 @@ class ShortCircuitExpand implements NodeVisitor {
 			statement.visit(expander);
 		else if(statement instanceof ThrowStatement)
 			statement.visit(expander);
-		else return null;
-		
-		if(expander.expanded){
-			return Pair.of(statement, expander.condition);
-		}
-		
-		return null;
+		else return false;
+
+		return true;
 
 	}
-	
-	private ShortCircuitExpand(AstNode condition, boolean isTrueBranch) {
+
+	private ShortCircuitExpand(AstNode condition, boolean isTrueBranch, boolean probe) {
 		this.expanded = false;
 		this.condition = condition;
 		this.isTrueBranch = isTrueBranch;
+		this.probe = probe;
 	}
 	
 	private void setCondition(AstNode testExpression) {
@@ -112,6 +136,12 @@ class ShortCircuitExpand implements NodeVisitor {
 				
 				if(operator == Token.AND || operator == Token.OR) {
 				
+                    /* Only report that the statement can be expanded. */
+                    if(this.probe) {
+                        this.expanded = true;
+                        return false;
+                    }
+
                     /* Expand the statement by pulling up. */
                     if((this.isTrueBranch && operator == Token.AND) || 
                        (!this.isTrueBranch && operator == Token.OR)) ie.setLeft(shortCircuit.getRight());
@@ -134,6 +164,12 @@ class ShortCircuitExpand implements NodeVisitor {
 				
 				if(operator == Token.AND || operator == Token.OR) {
 
+                    /* Only report that the statement can be expanded. */
+                    if(this.probe) {
+                        this.expanded = true;
+                        return false;
+                    }
+
                     /* Expand the statement by pulling up. */
                     if((this.isTrueBranch && operator == Token.AND) || 
                        (!this.isTrueBranch && operator == Token.OR)) ie.setRight(shortCircuit.getRight());
@@ -163,6 +199,12 @@ class ShortCircuitExpand implements NodeVisitor {
 				
 				if(operator == Token.AND || operator == Token.OR) {
 
+                    /* Only report that the statement can be expanded. */
+                    if(this.probe) {
+                        this.expanded = true;
+                        return false;
+                    }
+
                     /* ExpshortCircuit the statement by pulling up. */
                     if((this.isTrueBranch && operator == Token.AND) || 
                        (!this.isTrueBranch && operator == Token.OR)) ie.setInitializer(shortCircuit.getRight());
@@ -192,6 +234,12 @@ class ShortCircuitExpand implements NodeVisitor {
 				
 				if(operator == Token.AND || operator == Token.OR) {
 
+                    /* Only report that the statement can be expanded. */
+                    if(this.probe) {
+                        this.expanded = true;
+                        return false;
+                    }
+
                     /* ExpshortCircuit the statement by pulling up. */
                     if((this.isTrueBranch && operator == Token.AND) || 
                        (!this.isTrueBranch && operator == Token.OR)) pe.setExpression(shortCircuit.getRight());
@@ -221,6 +269,12 @@ class ShortCircuitExpand implements NodeVisitor {
 				
 				if(operator == Token.AND || operator == Token.OR) {
 
+                    /* Only report that the statement can be expanded. */
+                    if(this.probe) {
+                        this.expanded = true;
+                        return false;
+                    }
+
                     /* ExpshortCircuit the statement by pulling up. */
                     if((this.isTrueBranch && operator == Token.AND) || 
                        (!this.isTrueBranch && operator == Token.OR)) es.setExpression(shortCircuit.getRight());
@@ -250,6 +304,12 @@ class ShortCircuitExpand implements NodeVisitor {
 				
 				if(operator == Token.AND || operator == Token.OR) {
 
+                    /* Only report that the statement can be expanded. */
+                    if(this.probe) {
+                        this.expanded = true;
+                        return false;
+                    }
+
                     /* ExpshortCircuit the statement by pulling up. */
                     if((this.isTrueBranch && operator == Token.AND) || 
                        (!this.isTrueBranch && operator == Token.OR)) is.setReturnValue(shortCircuit.getRight());
@@ -279,6 +339,12 @@ class ShortCircuitExpand implements NodeVisitor {
 				
 				if(operator == Token.AND || operator == Token.OR) {
 
+                    /* Only report that the statement can be expanded. */
+                    if(this.probe) {
+                        this.expanded = true;
+                        return false;
+                    }
+
                     /* Expand the statement by pulling up. */
                     if((this.isTrueBranch && operator == Token.AND) || 
                        (!this.isTrueBranch && operator == Token.OR)) is.setExpression(shortCircuit.getRight());
@@ -19,53 +19,134 @@
 
 package com.github.gumtreediff.gen.js;
 
-import ca.ubc.ece.salt.gumtree.gen.js.ConditionalPreProcessor;
-import ca.ubc.ece.salt.gumtree.gen.js.FixPositionPreProcessor;
-import ca.ubc.ece.salt.gumtree.gen.js.ShortCircuitPreProcessor;
-import ca.ubc.ece.salt.gumtree.gen.js.VarPreProcessor;
+import ca.ubc.ece.salt.gumtree.gen.js.PreProcessingPipeline;
 
 import com.github.gumtreediff.gen.Register;
 import com.github.gumtreediff.gen.Registry;
 import com.github.gumtreediff.gen.TreeGenerator;
+import com.github.gumtreediff.tree.AstNodeTable;
 import com.github.gumtreediff.tree.TreeContext;
 
 import org.mozilla.javascript.CompilerEnvirons;
 import org.mozilla.javascript.Parser;
+import org.mozilla.javascript.ast.AstNode;
 import org.mozilla.javascript.ast.AstRoot;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 @Register(id = "js-rhino", accept = "\\.js$", priority = Registry.Priority.MAXIMUM)
 public class RhinoTreeGenerator extends TreeGenerator {
 
+    /**
+     * Metadata set to true on the statements that were too large to expand when pre-processing.
+     */
+    public static final String UNEXPANDED = "unexpanded";
+
+    private final PreProcessingPipeline preProcessor = PreProcessingPipeline.defaultPipeline();
+
+    private boolean detachAstNodes;
+
+    /**
+     * When set, the trees keep the index of their AST node in the table of their context instead of the node,
+     * so the AST can be dropped from the table, e.g. once it has been classified. A dropped table parses the
+     * source again when a tree asks for its AST node.
+     */
+    public void setDetachAstNodes(boolean detachAstNodes) {
+        this.detachAstNodes = detachAstNodes;
+    }
+
     public TreeContext generate(Reader r, boolean preProcess) throws IOException {
+        if (detachAstNodes)
+            return generate(readAll(r), preProcess);
+        AstRoot root = newParser().parse(r, null, 1);
+        return generate(root, preProcess, null);
+    }
+
+    /**
+     * The parser takes a string, made straight from the buffer, where the reader would be copied
+     * into a growing buffer first.
+     */
+    @Override
+    protected TreeContext generate(CharBuffer chars, boolean preProcess) throws IOException {
+        return generate(chars.toString(), preProcess);
+    }
+
+    private TreeContext generate(String source, boolean preProcess) {
+        AstRoot root = newParser().parse(source, null, 1);
+        return generate(root, preProcess, detachAstNodes ? source : null);
+    }
+
+    private static String readAll(Reader r) throws IOException {
+        StringBuilder b = new StringBuilder();
+        char[] buf = new char[8192];
+        try (Reader reader = r) {
+            int numRead;
+            while ((numRead = reader.read(buf)) != -1)
+                b.append(buf, 0, numRead);
+        }
+        return b.toString();
+    }
+
+    /**
+     * Parses and pre-processes the source again, and returns its AST nodes in the order they are visited when
+     * building the tree.
+     */
+    private static List<AstNode> parseAstNodes(String source, boolean preProcess) {
+        AstRoot root = newParser().parse(source, null, 1);
+        if (preProcess)
+            PreProcessingPipeline.defaultPipeline().process(root);
+        List<AstNode> nodes = new ArrayList<>();
+        nodes.add(root);
+        root.visitAll(node -> {
+            if (!(node instanceof AstRoot))
+                nodes.add(node);
+            return true;
+        });
+        return nodes;
+    }
+
+    private static Parser newParser() {
         CompilerEnvirons env = new CompilerEnvirons();
         env.setRecordingLocalJsDocComments(true);
         env.setAllowSharpComments(true);
         env.setRecordingComments(true);
-        Parser p = new Parser(env);
-        AstRoot root = p.parse(r, null, 1);
-        
-       if(preProcess) {
-    	   /* Fix the absolute positions of the nodes before changing the AST. */
-    	   FixPositionPreProcessor fixPosPreProcessor = new FixPositionPreProcessor();
-    	   fixPosPreProcessor.process(root);
-    	   
-    	   /* Expand variable initializers. */
-    	   VarPreProcessor varPreProcessor = new VarPreProcessor();
-    	   varPreProcessor.process(root);
-    	   
-    	   /* Expand the ternary operators. */
-    	   ConditionalPreProcessor conditionalPreProcessor = new ConditionalPreProcessor();
-    	   conditionalPreProcessor.process(root);
-    	   
-    	   /* Expand short circuit operators. */
-    	   ShortCircuitPreProcessor shortCircuitPreProcessor = new ShortCircuitPreProcessor();
-    	   shortCircuitPreProcessor.process(root);
-       }
-        
-        RhinoTreeVisitor visitor = new RhinoTreeVisitor(root);
+        return new Parser(env);
+    }
+
+    /**
+     * Returns the time spent in each pre-processing step by this generator, in nanoseconds.
+     */
+    public Map<String, Long> getPreProcessingTimes() {
+        return preProcessor.getTimes();
+    }
+
+    /**
+     * Returns the number of statements and nodes created by the pre-processing of this generator.
+     */
+    public Map<String, Long> getPreProcessingCounters() {
+        return preProcessor.getCounters();
+    }
+
+    private TreeContext generate(AstRoot root, boolean preProcess, String source) {
+        /* Fix the absolute positions, then expand variable initializers, ternary operators
+         * and short circuit operators, in a single traversal. */
+        if (preProcess)
+            preProcessor.process(root);
+
+        AstNodeTable astNodes = null;
+        if (source != null) {
+            astNodes = new AstNodeTable();
+            astNodes.setLoader(() -> parseAstNodes(source, preProcess));
+        }
+
+        RhinoTreeVisitor visitor = new RhinoTreeVisitor(root, astNodes);
+        if (preProcess)
+            visitor.setUnexpanded(preProcessor.getUnexpanded());
         root.visitAll(visitor);
         return visitor.getTree(root);
     }
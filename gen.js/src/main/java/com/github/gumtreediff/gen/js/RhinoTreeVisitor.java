@@ -20,25 +20,60 @@
 
 package com.github.gumtreediff.gen.js;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 
 import org.mozilla.javascript.Token;
 import org.mozilla.javascript.ast.*;
 
+import com.github.gumtreediff.tree.AstNodeTable;
 import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.MetadataTable;
 import com.github.gumtreediff.tree.TreeContext;
 
+/**
+ * Builds the tree of a Rhino AST visited in pre-order. The nodes being visited are kept on a stack, so the
+ * tree of the parent of a node is found by popping the nodes whose subtree is done, and its absolute position
+ * is the one of its parent plus its relative position.
+ */
 public class RhinoTreeVisitor implements NodeVisitor {
 
-    private Map<AstNode, ITree> trees;
+    private static final String[] TYPE_NAMES = new String[Token.LAST_TOKEN + 2];
+
+    private final List<AstNode> nodes = new ArrayList<>();
+    private final List<ITree> trees = new ArrayList<>();
     private TreeContext context;
+    private AstNodeTable astNodes;
+    private Set<AstNode> unexpanded = Collections.emptySet();
+    private MetadataTable.BooleanKey unexpandedKey;
 
     public RhinoTreeVisitor(AstRoot root) {
-        trees = new HashMap<>();
+        this(root, null);
+    }
+
+    /**
+     * Builds trees that keep the index of their AST node in the given table, in visit order, rather than the
+     * node itself, if the table is not null.
+     */
+    public RhinoTreeVisitor(AstRoot root, AstNodeTable astNodes) {
+        this.astNodes = astNodes;
         context = new TreeContext();
-        ITree tree = buildTree(root);
+        context.setAstNodes(astNodes);
+        ITree tree = buildTree(root, root.getPosition());
         context.setRoot(tree);
+        nodes.add(root);
+        trees.add(tree);
+    }
+
+    /**
+     * Sets the statements that were too large to expand, whose trees get the unexpanded metadata.
+     */
+    public void setUnexpanded(Set<AstNode> unexpanded) {
+        this.unexpanded = unexpanded;
+        if (!unexpanded.isEmpty())
+            unexpandedKey = context.registerBooleanMetadata(RhinoTreeGenerator.UNEXPANDED);
     }
 
     public TreeContext getTree(AstNode root) {
@@ -50,9 +85,13 @@ public class RhinoTreeVisitor implements NodeVisitor {
         if (node instanceof AstRoot)
             return true;
         else {
-            ITree t = buildTree(node);
-            ITree p = trees.get(node.getParent());
+            ITree p = popTo(node.getParent());
+            ITree t = buildTree(node, p.getPos() + node.getPosition());
             p.addChild(t);
+            if (!unexpanded.isEmpty() && unexpanded.contains(node))
+                unexpandedKey.set(t, true);
+            nodes.add(node);
+            trees.add(t);
 
             if (node instanceof Name) {
                 Name name = (Name) node;
@@ -72,13 +111,41 @@ public class RhinoTreeVisitor implements NodeVisitor {
         }
     }
 
-    private ITree buildTree(AstNode node)  {
-        ITree t = context.createTree(node.getType(), ITree.NO_LABEL, Token.typeToName(node.getType()));
-        t.setPos(node.getAbsolutePosition());
+    /**
+     * Pops the nodes above the given parent, which has been visited before its children, and returns its tree.
+     */
+    private ITree popTo(AstNode parent) {
+        int top = nodes.size() - 1;
+        while (top >= 0 && nodes.get(top) != parent)
+            top--;
+        if (top < 0)
+            throw new IllegalStateException("The parent of a node was not visited before it.");
+        for (int i = nodes.size() - 1; i > top; i--) {
+            nodes.remove(i);
+            trees.remove(i);
+        }
+        return trees.get(top);
+    }
+
+    private ITree buildTree(AstNode node, int pos)  {
+        ITree t = context.createTree(node.getType(), ITree.NO_LABEL, typeName(node.getType()));
+        t.setPos(pos);
         t.setLength(node.getLength());
-        t.setASTNode(node); // qhanam
-        trees.put(node, t);
+        if (astNodes == null)
+            t.setASTNode(node); // qhanam
+        else
+            t.setASTNode(astNodes, astNodes.add(node));
         return t;
     }
 
+    private static String typeName(int type) {
+        int i = type + 1;
+        if (i < 0 || i >= TYPE_NAMES.length)
+            return Token.typeToName(type);
+        String name = TYPE_NAMES[i];
+        if (name == null)
+            TYPE_NAMES[i] = name = Token.typeToName(type);
+        return name;
+    }
+
 }
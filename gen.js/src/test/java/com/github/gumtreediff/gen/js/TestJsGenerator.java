@@ -21,14 +21,24 @@
 package com.github.gumtreediff.gen.js;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.util.Map;
 
 import org.junit.Test;
+import org.mozilla.javascript.ast.AstNode;
 
+import ca.ubc.ece.salt.gumtree.gen.js.ExpandingPreProcessor;
+
+import com.github.gumtreediff.tree.AstNodeTable;
 import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
 
 public class TestJsGenerator {
 
@@ -53,4 +63,48 @@ public class TestJsGenerator {
         assertEquals(402, tree.getSize());
     }
 
+    @Test
+    public void testExpansionLimit() throws IOException {
+        String input = "x = (a ? 1 : 2) + (b ? 3 : 4);";
+        RhinoTreeGenerator generator = new RhinoTreeGenerator();
+        ITree tree = generator.generateFromString(input, true).getRoot();
+        Map<String, Long> counters = generator.getPreProcessingCounters();
+        assertEquals(Long.valueOf(1), counters.get("ConditionalPreProcessor.statements"));
+        assertEquals(Long.valueOf(4), counters.get("ConditionalPreProcessor.created"));
+        for (ITree t : tree.preOrder())
+            assertNull(t.getMetadata(RhinoTreeGenerator.UNEXPANDED));
+
+        int max = ExpandingPreProcessor.MAX_EXPANSIONS;
+        ExpandingPreProcessor.MAX_EXPANSIONS = 3;
+        try {
+            generator = new RhinoTreeGenerator();
+            tree = generator.generateFromString(input, true).getRoot();
+            counters = generator.getPreProcessingCounters();
+            assertEquals(Long.valueOf(1), counters.get("ConditionalPreProcessor.unexpanded"));
+            assertEquals(Long.valueOf(0), counters.get("ConditionalPreProcessor.created"));
+            assertTrue(tree.getChild(0).getMetadata(RhinoTreeGenerator.UNEXPANDED) == Boolean.TRUE);
+        } finally {
+            ExpandingPreProcessor.MAX_EXPANSIONS = max;
+        }
+    }
+
+    @Test
+    public void testDetachedAstNodes() throws IOException {
+        String input = "var a = 1, b = c ? 2 : 3;";
+        RhinoTreeGenerator generator = new RhinoTreeGenerator();
+        generator.setDetachAstNodes(true);
+        TreeContext context = generator.generateFromString(input, true);
+        AstNodeTable table = context.getAstNodes();
+        assertEquals(context.getRoot().getSize(), table.size());
+
+        ITree tree = context.getRoot().getTrees().get(5);
+        AstNode node = (AstNode) tree.getClassifiedASTNode();
+        table.drop();
+        assertFalse(table.isAttached());
+        AstNode reloaded = (AstNode) tree.getClassifiedASTNode();
+        assertNotSame(node, reloaded);
+        assertEquals(node.getType(), reloaded.getType());
+        assertEquals(node.toSource(), reloaded.toSource());
+    }
+
 }
@@ -0,0 +1,99 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.gen.js;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import org.junit.Test;
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Parser;
+import org.mozilla.javascript.ast.AstRoot;
+
+import ca.ubc.ece.salt.gumtree.gen.js.ConditionalPreProcessor;
+import ca.ubc.ece.salt.gumtree.gen.js.FixPositionPreProcessor;
+import ca.ubc.ece.salt.gumtree.gen.js.PreProcessingPipeline;
+import ca.ubc.ece.salt.gumtree.gen.js.ShortCircuitPreProcessor;
+import ca.ubc.ece.salt.gumtree.gen.js.VarPreProcessor;
+
+public class TestPreProcessingPipeline {
+
+    private static final String[] INPUTS = {
+        "var a = 1, b = x ? 2 : 3, c = y && z;",
+        "function f(a) { var b = a || 0, c; return a ? g(b) : h(c && b); }",
+        "x = a ? function() { var p = 1, q = 2; return p ? q : p; } : function() { return b || c; };",
+        "function outer() {\n"
+            + "  var g = a && function inner() { return x ? function() { return y || z; } : null; };\n"
+            + "  if (b ? c : d) { var e = 1, f = g(); } else { while (e || f) e--; }\n"
+            + "  return g;\n"
+            + "}",
+        "switch (k ? 1 : 2) { case 1: v = a || b; break; default: v = function() { var s, t = s ? 1 : 2; }; }",
+        "try { r = a ? b : c; } catch (e) { r = e && e.message; } finally { done = x || y; }",
+        "for (var i = 0, j = 1; i < n; i++) { o[i] = i ? f(function() { return i && j; }) : 0; }",
+    };
+
+    private static AstRoot parse(String source) {
+        CompilerEnvirons env = new CompilerEnvirons();
+        env.setRecordingLocalJsDocComments(true);
+        env.setAllowSharpComments(true);
+        env.setRecordingComments(true);
+        return new Parser(env).parse(source, null, 1);
+    }
+
+    /**
+     * Runs the pre-processors one after the other, as before they were fused, and the pipeline, on two
+     * parses of the source, and checks that the resulting ASTs are the same.
+     */
+    private static void assertSameAsSequential(String source) {
+        AstRoot expected = parse(source);
+        new FixPositionPreProcessor().process(expected);
+        new VarPreProcessor().process(expected);
+        new ConditionalPreProcessor().process(expected);
+        new ShortCircuitPreProcessor().process(expected);
+
+        AstRoot actual = parse(source);
+        PreProcessingPipeline.defaultPipeline().process(actual);
+
+        assertEquals(source, expected.toSource(), actual.toSource());
+        assertEquals(source, expected.debugPrint(), actual.debugPrint());
+    }
+
+    @Test
+    public void testSameAsSequential() {
+        for (String input : INPUTS)
+            assertSameAsSequential(input);
+    }
+
+    @Test
+    public void testComplexFileSameAsSequential() throws IOException {
+        StringBuilder b = new StringBuilder();
+        try (Reader r = new InputStreamReader(getClass().getResourceAsStream("/sample.js"))) {
+            char[] buf = new char[8192];
+            int numRead;
+            while ((numRead = r.read(buf)) != -1)
+                b.append(buf, 0, numRead);
+        }
+        assertSameAsSequential(b.toString());
+    }
+}
@@ -19,6 +19,7 @@
 
 package com.github.gumtreediff.gen.srcml;
 
+import com.github.gumtreediff.gen.ParserProcess;
 import com.github.gumtreediff.gen.TreeGenerator;
 import com.github.gumtreediff.io.LineReader;
 import com.github.gumtreediff.tree.ITree;
@@ -27,6 +28,7 @@ import com.github.gumtreediff.tree.TreeContext;
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.*;
 import java.io.*;
 import java.util.*;
@@ -35,10 +37,14 @@ public abstract class AbstractSrcmlTreeGenerator extends TreeGenerator {
 
     private static final String SRCML_CMD = System.getProperty("gumtree.srcml.path", "srcml");
 
+    private static final long TIMEOUT = Long.getLong("gumtree.srcml.timeout", 60000);
+
     private static final QName LINE = new  QName("http://www.srcML.org/srcML/position", "line", "pos");
 
     private static final QName COLUMN = new  QName("http://www.srcML.org/srcML/position", "column", "pos");
 
+    private static final QName FILENAME = new QName("filename");
+
     private LineReader lr;
 
     private Set<String> labeled = new HashSet<String>(
@@ -47,57 +53,153 @@ public abstract class AbstractSrcmlTreeGenerator extends TreeGenerator {
     @Override
     public TreeContext generate(Reader r) throws IOException {
         lr = new LineReader(r);
-        String xml = getXml(lr);
-        return getTreeContext(xml);
+        File f = writeTempFile(lr);
+        try {
+            ProcessBuilder b = new ProcessBuilder(getArguments(f.getAbsolutePath()));
+            b.directory(f.getParentFile());
+            return ParserProcess.run(b, TIMEOUT, this::getTreeContext);
+        } finally {
+            f.delete();
+        }
     }
 
     public TreeContext getTreeContext(String xml) {
-        XMLInputFactory fact = XMLInputFactory.newInstance();
-        TreeContext context = new TreeContext();
         try {
-            Stack<ITree> trees = new Stack<>();
-            XMLEventReader r = fact.createXMLEventReader(new StringReader(xml));
+            return getTreeContext(XMLInputFactory.newInstance().createXMLEventReader(new StringReader(xml)));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Builds the tree while the XML is read, so the output of srcML is never held in memory.
+     */
+    public TreeContext getTreeContext(InputStream xml) {
+        try {
+            return getTreeContext(XMLInputFactory.newInstance().createXMLEventReader(xml));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Generates the trees of several files with a single srcML invocation. srcML writes the units of the files
+     * in one archive, in the order of the files, which is parsed while srcML writes it. The positions are
+     * offsets in the files as they are. srcML is given the timeout of a file for each file of the archive.
+     */
+    public List<TreeContext> generateFromFiles(List<String> files) throws IOException {
+        List<TreeContext> contexts = new ArrayList<>();
+        if (files.isEmpty())
+            return contexts;
+        List<String> arguments = new ArrayList<>(Arrays.asList(getArguments()));
+        arguments.add("--archive");
+        arguments.addAll(files);
+        ParserProcess.run(new ProcessBuilder(arguments), TIMEOUT * files.size(), xml -> {
+            readArchive(xml, files, contexts);
+            return contexts;
+        });
+        if (contexts.size() != files.size())
+            throw new IOException(String.format("%d units for %d files in the srcML archive",
+                    contexts.size(), files.size()));
+        return contexts;
+    }
+
+    private void readArchive(InputStream xml, List<String> files, List<TreeContext> contexts) throws IOException {
+        try {
+            XMLEventReader r = XMLInputFactory.newInstance().createXMLEventReader(xml);
+            // The archive is a unit holding the unit of each file
+            while (r.hasNext() && !r.peek().isStartElement())
+                r.nextEvent();
+            r.nextEvent();
             while (r.hasNext()) {
-                XMLEvent ev = r.nextEvent();
+                XMLEvent ev = r.peek();
                 if (ev.isStartElement()) {
-                    StartElement s = ev.asStartElement();
-                    String typeLabel = s.getName().getLocalPart();
-                    if (typeLabel.equals("position"))
-                        setLength(trees.peek(), s);
-                    else {
-                        int type = typeLabel.hashCode();
-                        ITree t = context.createTree(type, "", typeLabel);
-
-                        if (trees.isEmpty()) {
-                            context.setRoot(t);
-                            t.setPos(0);
-                        } else {
-                            t.setParentAndUpdateChildren(trees.peek());
-                            setPos(t, s);
-                        }
-                        trees.push(t);
-                    }
-                } else if (ev.isEndElement()) {
-                    EndElement end = ev.asEndElement();
-                    if (!end.getName().getLocalPart().equals("position"))
-                        trees.pop();
-                } else if (ev.isCharacters()) {
-                    Characters chars = ev.asCharacters();
-                    if (!chars.isWhiteSpace()
-                            && trees.peek().getLabel().equals("")
-                            && labeled.contains(context.getTypeLabel(trees.peek().getType())))
-                        trees.peek().setLabel(chars.getData().trim());
-                }
+                    if (contexts.size() == files.size())
+                        throw new IOException("More units than files in the srcML archive");
+                    String file = files.get(contexts.size());
+                    Attribute filename = ev.asStartElement().getAttributeByName(FILENAME);
+                    if (filename == null || !filename.getValue().equals(file))
+                        throw new IOException(String.format("Unit %s found in the srcML archive instead of %s",
+                                filename == null ? "without filename" : filename.getValue(), file));
+                    lr = readLines(file);
+                    contexts.add(readUnit(r));
+                } else if (ev.isEndElement())
+                    break;
+                else
+                    r.nextEvent();
             }
-            fixPos(context);
-            context.validate();
-            return context;
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed srcML archive", e);
+        }
+    }
+
+    private static LineReader readLines(String file) throws IOException {
+        LineReader lines = new LineReader(new FileReader(file));
+        try (Reader r = lines) {
+            char[] buf = new char[8192];
+            while (r.read(buf, 0, buf.length) != -1)
+                continue;
+        }
+        return lines;
+    }
+
+    private TreeContext getTreeContext(XMLEventReader r) {
+        try {
+            return readUnit(r);
         } catch (Exception e) {
             e.printStackTrace();
         }
         return null;
     }
 
+    /**
+     * Builds the tree of the next unit, reading the events up to the end of the unit.
+     */
+    private TreeContext readUnit(XMLEventReader r) throws XMLStreamException {
+        TreeContext context = new TreeContext();
+        Stack<ITree> trees = new Stack<>();
+        while (r.hasNext()) {
+            XMLEvent ev = r.nextEvent();
+            if (ev.isStartElement()) {
+                StartElement s = ev.asStartElement();
+                String typeLabel = s.getName().getLocalPart();
+                if (typeLabel.equals("position"))
+                    setLength(trees.peek(), s);
+                else {
+                    int type = typeLabel.hashCode();
+                    ITree t = context.createTree(type, "", typeLabel);
+
+                    if (trees.isEmpty()) {
+                        context.setRoot(t);
+                        t.setPos(0);
+                    } else {
+                        t.setParentAndUpdateChildren(trees.peek());
+                        setPos(t, s);
+                    }
+                    trees.push(t);
+                }
+            } else if (ev.isEndElement()) {
+                EndElement end = ev.asEndElement();
+                if (!end.getName().getLocalPart().equals("position")) {
+                    trees.pop();
+                    if (trees.isEmpty())
+                        break;
+                }
+            } else if (ev.isCharacters()) {
+                Characters chars = ev.asCharacters();
+                if (!chars.isWhiteSpace()
+                        && trees.peek().getLabel().equals("")
+                        && labeled.contains(context.getTypeLabel(trees.peek().getType())))
+                    trees.peek().setLabel(chars.getData().trim());
+            }
+        }
+        fixPos(context);
+        context.validate();
+        return context;
+    }
+
     private void fixPos(TreeContext ctx) {
         for (ITree t : ctx.getRoot().postOrder()) {
             if (!t.isLeaf()) {
@@ -133,36 +235,34 @@ public abstract class AbstractSrcmlTreeGenerator extends TreeGenerator {
         }
     }
 
-    public String getXml(Reader r) throws IOException {
-        //FIXME this is not efficient but I am not sure how to speed up things here.
+    private static File writeTempFile(Reader r) throws IOException {
         File f = File.createTempFile("gumtree", "");
-        FileWriter w = new FileWriter(f);
-        BufferedReader br = new BufferedReader(r);
-        String line = br.readLine();
-        while (line != null) {
-            w.append(line);
-            w.append(System.lineSeparator());
-            line = br.readLine();
+        try (FileWriter w = new FileWriter(f); BufferedReader br = new BufferedReader(r)) {
+            String line = br.readLine();
+            while (line != null) {
+                w.append(line);
+                w.append(System.lineSeparator());
+                line = br.readLine();
+            }
         }
-        w.close();
-        br.close();
+        return f;
+    }
+
+    public String getXml(Reader r) throws IOException {
+        File f = writeTempFile(r);
         ProcessBuilder b = new ProcessBuilder(getArguments(f.getAbsolutePath()));
         b.directory(f.getParentFile());
         try {
-            Process p = b.start();
-            StringBuffer buf = new StringBuffer();
-            br = new BufferedReader(new InputStreamReader(p.getInputStream()));
-            // TODO Why do we need to read and bufferize everything, when we could/should only use generateFromStream
-            line = null;
-            while ((line = br.readLine()) != null)
-                buf.append(line + "\n");
-            p.waitFor();
-            if (p.exitValue() != 0) throw new RuntimeException();
+            String xml = ParserProcess.run(b, TIMEOUT, output -> {
+                StringBuffer buf = new StringBuffer();
+                BufferedReader br = new BufferedReader(new InputStreamReader(output));
+                String line;
+                while ((line = br.readLine()) != null)
+                    buf.append(line + "\n");
+                return buf.toString();
+            });
             r.close();
-            String xml = buf.toString();
             return xml;
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
         } finally {
             f.delete();
         }
@@ -170,7 +270,14 @@ public abstract class AbstractSrcmlTreeGenerator extends TreeGenerator {
 
     public abstract String getLanguage();
 
+    public String[] getArguments() {
+        return new String[]{SRCML_CMD, "-l", getLanguage(), "--position"};
+    }
+
     public String[] getArguments(String file) {
-        return new String[]{SRCML_CMD, "-l", getLanguage(), "--position", file};
+        String[] arguments = getArguments();
+        arguments = Arrays.copyOf(arguments, arguments.length + 1);
+        arguments[arguments.length - 1] = file;
+        return arguments;
     }
 }
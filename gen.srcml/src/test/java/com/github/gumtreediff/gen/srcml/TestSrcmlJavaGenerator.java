@@ -25,10 +25,38 @@ import com.github.gumtreediff.tree.TreeContext;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 
 public class TestSrcmlJavaGenerator {
 
+    /**
+     * Stands in for srcML, writing an archive with the units given by the script.
+     */
+    private static AbstractSrcmlTreeGenerator standIn(String script) {
+        return new SrcmlJavaTreeGenerator() {
+            @Override
+            public String[] getArguments() {
+                return new String[] {"sh", "-c", "shift; " + script, "srcml"};
+            }
+        };
+    }
+
+    private static List<String> files(String... contents) throws IOException {
+        List<String> files = new ArrayList<>();
+        for (String content : contents) {
+            File f = File.createTempFile("gumtree", ".java");
+            f.deleteOnExit();
+            Files.write(f.toPath(), content.getBytes(StandardCharsets.UTF_8));
+            files.add(f.getAbsolutePath());
+        }
+        return files;
+    }
+
     @Test
     public void testSimple() throws IOException {
         String input = "public class HelloWorld {\n"
@@ -41,4 +69,42 @@ public class TestSrcmlJavaGenerator {
         Assert.assertEquals(33, t.getSize());
     }
 
+    @Test
+    public void testFiles() throws IOException {
+        String hello = "public class HelloWorld {\n"
+                + "public static void main(String[] args) {\n"
+                + "System.out.println(\"Hello, World\");\n"
+                + "}\n"
+                + "}";
+        String empty = "class Empty {}\n";
+        List<String> files = files(hello, empty, hello);
+        List<TreeContext> contexts = new SrcmlJavaTreeGenerator().generateFromFiles(files);
+        Assert.assertEquals(3, contexts.size());
+        Assert.assertEquals(33, contexts.get(0).getRoot().getSize());
+        Assert.assertEquals(new SrcmlJavaTreeGenerator().generateFromString(empty).getRoot().getSize(),
+                contexts.get(1).getRoot().getSize());
+        Assert.assertTrue(contexts.get(0).getRoot().isIsomorphicTo(contexts.get(2).getRoot()));
+    }
+
+    @Test
+    public void testUnitFilenames() throws IOException {
+        List<String> files = files("class A {}\n", "class B {}\n");
+        String unit = "<unit filename=\"%s\"><class/></unit>";
+        List<TreeContext> contexts = standIn("printf '<unit>" + unit + unit + "</unit>' \"$1\" \"$2\"")
+                .generateFromFiles(files);
+        Assert.assertEquals(2, contexts.size());
+        // Units are paired with the files by their filename, not by their position alone
+        try {
+            standIn("printf '<unit>" + unit + unit + "</unit>' \"$2\" \"$1\"").generateFromFiles(files);
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("instead of " + files.get(0)));
+        }
+        try {
+            standIn("printf '<unit><unit><class/></unit></unit>'").generateFromFiles(files.subList(0, 1));
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("without filename"));
+        }
+    }
 }
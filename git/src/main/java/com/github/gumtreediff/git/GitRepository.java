@@ -0,0 +1,305 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.git;
+
+import com.github.gumtreediff.gen.Generators;
+import com.github.gumtreediff.gen.TreeGenerator;
+import com.github.gumtreediff.tree.TreeContext;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the modified files of a range of commits of a local git repository, and generates their trees
+ * straight from the blobs, without checking out anything. The trees are cached by blob id, so a version
+ * of a file shared by several commits is parsed once. Note that the cached tree contexts are shared,
+ * they must be deep copied before being modified.
+ */
+public class GitRepository implements AutoCloseable {
+
+    public static int CACHE_SIZE = Integer.parseInt(System.getProperty("gt.git.cache", "512"));
+
+    private final Git git;
+
+    private final Repository repository;
+
+    private Charset charset = Charset.defaultCharset();
+
+    private boolean detectRenames = false;
+
+    private final Map<String, TreeContext> trees = new LinkedHashMap<String, TreeContext>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TreeContext> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private int hits;
+
+    private int misses;
+
+    /**
+     * Opens the repository at the given path, either a working tree or a git directory.
+     */
+    public GitRepository(String path) throws IOException {
+        git = Git.open(new File(path));
+        repository = git.getRepository();
+    }
+
+    /**
+     * Charset used to decode the blobs, by default the platform one as when reading files.
+     */
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * When set, the renamed files, possibly modified, are paired as well.
+     */
+    public void setDetectRenames(boolean detectRenames) {
+        this.detectRenames = detectRenames;
+    }
+
+    /**
+     * Returns the commits reachable from to but not from from, oldest first, with their files modified
+     * with respect to their first parent. Only the regular files having a generator are kept. from can be
+     * null to start at the root commits. Both are resolved by git, e.g. "HEAD~10" or a branch name.
+     */
+    public List<Commit> getCommits(String from, String to) throws IOException {
+        List<Commit> commits = new ArrayList<>();
+        try (RevWalk walk = new RevWalk(repository)) {
+            walk.sort(RevSort.TOPO);
+            walk.sort(RevSort.REVERSE, true);
+            walk.markStart(walk.parseCommit(resolve(to)));
+            if (from != null)
+                walk.markUninteresting(walk.parseCommit(resolve(from)));
+            for (RevCommit commit : walk) {
+                RevCommit parent = commit.getParentCount() > 0 ? walk.parseCommit(commit.getParent(0)) : null;
+                commits.add(new Commit(commit, parent, getModifiedFiles(parent, commit)));
+            }
+        }
+        return commits;
+    }
+
+    private ObjectId resolve(String revision) throws IOException {
+        ObjectId id = repository.resolve(revision);
+        if (id == null)
+            throw new IOException("Unknown revision: " + revision);
+        return id;
+    }
+
+    private List<FilePair> getModifiedFiles(RevCommit parent, RevCommit commit) throws IOException {
+        List<DiffEntry> entries;
+        try (TreeWalk walk = new TreeWalk(repository)) {
+            walk.setRecursive(true);
+            walk.setFilter(TreeFilter.ANY_DIFF);
+            if (parent == null)
+                walk.addTree(new EmptyTreeIterator());
+            else
+                walk.addTree(parent.getTree());
+            walk.addTree(commit.getTree());
+            entries = DiffEntry.scan(walk);
+        }
+        if (detectRenames) {
+            RenameDetector detector = new RenameDetector(repository);
+            detector.addAll(entries);
+            entries = detector.compute();
+        }
+
+        List<FilePair> pairs = new ArrayList<>();
+        for (DiffEntry entry : entries) {
+            if (entry.getChangeType() != DiffEntry.ChangeType.MODIFY
+                    && entry.getChangeType() != DiffEntry.ChangeType.RENAME)
+                continue;
+            if (!isRegularFile(entry.getOldMode()) || !isRegularFile(entry.getNewMode()))
+                continue;
+            ObjectId oldId = entry.getOldId().toObjectId();
+            ObjectId newId = entry.getNewId().toObjectId();
+            if (oldId.equals(newId))
+                continue;
+            if (Generators.getInstance().getFactory(entry.getOldPath()) == null
+                    || Generators.getInstance().getFactory(entry.getNewPath()) == null)
+                continue;
+            pairs.add(new FilePair(entry.getOldPath(), oldId, entry.getNewPath(), newId));
+        }
+        return pairs;
+    }
+
+    private static boolean isRegularFile(FileMode mode) {
+        return mode == FileMode.REGULAR_FILE || mode == FileMode.EXECUTABLE_FILE;
+    }
+
+    /**
+     * Returns the tree of the given blob, generated by the generator associated to the given path. The
+     * tree is taken from the cache when the blob has already been parsed with the same generator.
+     */
+    public TreeContext getTree(ObjectId blob, String path, boolean preProcess) throws IOException {
+        TreeGenerator generator = Generators.getInstance().get(path);
+        if (generator == null)
+            throw new UnsupportedOperationException("No generator found for file: " + path);
+        String key = blob.name() + ":" + generator.getClass().getName() + ":" + preProcess;
+        synchronized (trees) {
+            TreeContext tree = trees.get(key);
+            if (tree != null) {
+                hits++;
+                return tree;
+            }
+            misses++;
+        }
+        TreeContext tree;
+        try (Reader r = new InputStreamReader(repository.open(blob, Constants.OBJ_BLOB).openStream(), charset)) {
+            tree = generator.generateFromReader(r, preProcess);
+        }
+        synchronized (trees) {
+            trees.put(key, tree);
+        }
+        return tree;
+    }
+
+    /**
+     * Returns the number of trees taken from the cache.
+     */
+    public int getCacheHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of trees generated.
+     */
+    public int getCacheMisses() {
+        return misses;
+    }
+
+    @Override
+    public void close() {
+        git.close();
+    }
+
+    public class Commit {
+
+        private final String id;
+
+        private final String parentId;
+
+        private final String message;
+
+        private final List<FilePair> modifiedFiles;
+
+        private Commit(RevCommit commit, RevCommit parent, List<FilePair> modifiedFiles) {
+            this.id = commit.name();
+            this.parentId = parent == null ? null : parent.name();
+            this.message = commit.getFullMessage();
+            this.modifiedFiles = Collections.unmodifiableList(modifiedFiles);
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Returns the id of the first parent, or null for a root commit.
+         */
+        public String getParentId() {
+            return parentId;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public List<FilePair> getModifiedFiles() {
+            return modifiedFiles;
+        }
+
+        @Override
+        public String toString() {
+            return id;
+        }
+    }
+
+    public class FilePair {
+
+        private final String srcPath;
+
+        private final ObjectId srcBlob;
+
+        private final String dstPath;
+
+        private final ObjectId dstBlob;
+
+        private FilePair(String srcPath, ObjectId srcBlob, String dstPath, ObjectId dstBlob) {
+            this.srcPath = srcPath;
+            this.srcBlob = srcBlob;
+            this.dstPath = dstPath;
+            this.dstBlob = dstBlob;
+        }
+
+        public String getSrcPath() {
+            return srcPath;
+        }
+
+        public ObjectId getSrcBlob() {
+            return srcBlob;
+        }
+
+        public String getDstPath() {
+            return dstPath;
+        }
+
+        public ObjectId getDstBlob() {
+            return dstBlob;
+        }
+
+        public TreeContext getSrcTree(boolean preProcess) throws IOException {
+            return getTree(srcBlob, srcPath, preProcess);
+        }
+
+        public TreeContext getDstTree(boolean preProcess) throws IOException {
+            return getTree(dstBlob, dstPath, preProcess);
+        }
+
+        @Override
+        public String toString() {
+            return srcPath.equals(dstPath) ? srcPath : srcPath + " -> " + dstPath;
+        }
+    }
+}
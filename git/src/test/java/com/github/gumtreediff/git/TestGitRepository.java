@@ -0,0 +1,116 @@
+/*
+ * This file is part of GumTree.
+ *
+ * GumTree is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * GumTree is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with GumTree.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Copyright 2011-2015 Jean-Rémy Falleri <jr.falleri@gmail.com>
+ * Copyright 2011-2015 Floréal Morandat <florealm@gmail.com>
+ */
+
+package com.github.gumtreediff.git;
+
+import com.github.gumtreediff.gen.Generators;
+import com.github.gumtreediff.gen.Register;
+import com.github.gumtreediff.gen.TreeGenerator;
+import com.github.gumtreediff.tree.ITree;
+import com.github.gumtreediff.tree.TreeContext;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestGitRepository {
+
+    @Register(id = "test-lines", accept = "\\.lines$")
+    public static class LinesTreeGenerator extends TreeGenerator {
+
+        @Override
+        protected TreeContext generate(Reader r, boolean preProcess) throws IOException {
+            TreeContext ctx = new TreeContext();
+            ITree root = ctx.createTree(0, ITree.NO_LABEL, null);
+            BufferedReader reader = new BufferedReader(r);
+            for (String line = reader.readLine(); line != null; line = reader.readLine())
+                root.addChild(ctx.createTree(1, line, null));
+            ctx.setRoot(root);
+            return ctx;
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void installGenerator() {
+        Generators.getInstance().install(LinesTreeGenerator.class,
+                LinesTreeGenerator.class.getAnnotation(Register.class));
+    }
+
+    private static void commit(Git git, String file, String content) throws IOException, GitAPIException {
+        File f = new File(git.getRepository().getWorkTree(), file);
+        Files.write(f.toPath(), content.getBytes());
+        git.add().addFilepattern(file).call();
+        git.commit().setMessage(file).call();
+    }
+
+    @Test
+    public void testCommits() throws IOException, GitAPIException {
+        File dir = folder.newFolder();
+        try (Git git = Git.init().setDirectory(dir).call()) {
+            commit(git, "a.lines", "a\nb\n");
+            commit(git, "other.txt", "not parsed");
+            commit(git, "a.lines", "a\nc\n");
+            commit(git, "b.lines", "x\n");
+            commit(git, "b.lines", "a\nb\n");
+            commit(git, "other.txt", "still not parsed");
+        }
+
+        try (GitRepository repository = new GitRepository(dir.getPath())) {
+            List<GitRepository.Commit> commits = repository.getCommits(null, "HEAD");
+            assertEquals(6, commits.size());
+            assertNull(commits.get(0).getParentId());
+            assertEquals("a.lines", commits.get(0).getMessage());
+            assertTrue(commits.get(0).getModifiedFiles().isEmpty());
+            assertTrue(commits.get(1).getModifiedFiles().isEmpty());
+            assertEquals(1, commits.get(2).getModifiedFiles().size());
+            assertEquals(1, commits.get(4).getModifiedFiles().size());
+            assertTrue(commits.get(5).getModifiedFiles().isEmpty());
+
+            GitRepository.FilePair pair = commits.get(2).getModifiedFiles().get(0);
+            assertEquals("a.lines", pair.getSrcPath());
+            assertEquals("b", pair.getSrcTree(false).getRoot().getChild(1).getLabel());
+            assertEquals("c", pair.getDstTree(false).getRoot().getChild(1).getLabel());
+
+            // The new content of b.lines is the old content of a.lines
+            pair = commits.get(4).getModifiedFiles().get(0);
+            assertSame(commits.get(2).getModifiedFiles().get(0).getSrcTree(false), pair.getDstTree(false));
+            assertEquals(2, repository.getCacheMisses());
+            assertEquals(2, repository.getCacheHits());
+
+            commits = repository.getCommits("HEAD~3", "HEAD");
+            assertEquals(3, commits.size());
+            assertEquals(commits.get(0).getParentId(), repository.getCommits(null, "HEAD~3").get(2).getId());
+        }
+    }
+}